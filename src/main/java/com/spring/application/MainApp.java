@@ -2,6 +2,7 @@ package com.spring.application;
 
 import com.spring.application.annotations.LogExecutionTime;
 import com.spring.application.model.Test;
+import com.spring.application.utils.AsyncLocalDatabase;
 import com.spring.application.utils.DateUtils;
 import com.spring.application.utils.LocalDatabase;
 import com.spring.application.utils.StringUtils;
@@ -11,9 +12,11 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @SpringBootApplication
@@ -22,6 +25,7 @@ import java.util.stream.Collectors;
 public class MainApp implements CommandLineRunner {
 
     private final LocalDatabase localDatabase;
+    private final AsyncLocalDatabase asyncLocalDatabase;
 
     public static void main(String[] args) {
         SpringApplication.run(MainApp.class, args);
@@ -48,54 +52,46 @@ public class MainApp implements CommandLineRunner {
             }
             localDatabase.insert(testList);
 
-            int threadCount = 8;
-            List<Thread> threads = new ArrayList<>();
+            int taskCount = 8;
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
             long start = System.currentTimeMillis();
 
-            for (int t = 0; t < threadCount; t++) {
-                Thread thread = new Thread(() -> {
-                    try {
-                        // Query
-                        List<Test> evenTests = localDatabase.query(Test.class, test -> test.getId() % 2 == 0);
-                        Thread.sleep(10 + (int) (Math.random() * 91)); // Pause 10-100ms
-
+            for (int t = 0; t < taskCount; t++) {
+                CompletableFuture<Void> task = asyncLocalDatabase.query(Test.class, test -> test.getId() % 2 == 0)
                         // Insert
-                        Test newTest = new Test();
-                        newTest.setId((int) (Math.random() * 100000) + 10001);
-                        newTest.setNom("Threaded");
-                        newTest.setNaissance(DateUtils.now());
-                        newTest.setActive(true);
-                        localDatabase.insert(newTest);
-                        Thread.sleep(10 + (int) (Math.random() * 91));
-
+                        .thenComposeAsync(evenTests -> {
+                            Test newTest = new Test();
+                            newTest.setId((int) (Math.random() * 100000) + 10001);
+                            newTest.setNom("Threaded");
+                            newTest.setNaissance(DateUtils.now());
+                            newTest.setActive(true);
+                            return asyncLocalDatabase.insert(newTest).thenApply(inserted -> evenTests);
+                        }, pause())
                         // Update
-                        if (!evenTests.isEmpty()) {
+                        .thenComposeAsync(evenTests -> {
+                            if (evenTests.isEmpty()) {
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
                             Test toUpdate = evenTests.getFirst();
                             toUpdate.setNom("Updated by thread");
-                            localDatabase.update(toUpdate);
-                        }
-                        Thread.sleep(10 + (int) (Math.random() * 91));
-
+                            return asyncLocalDatabase.update(toUpdate);
+                        }, pause())
                         // Delete
-                        localDatabase.delete(Test.class, test -> test.getId() % 100 == 0);
-                    } catch (IOException | InterruptedException e) {
-                        log.error("Erreur dans le thread: " + e.getMessage());
-                        Thread.currentThread().interrupt();
-                    }
-                });
-                threads.add(thread);
-                thread.start();
+                        .thenComposeAsync(updated -> asyncLocalDatabase.delete(Test.class, test -> test.getId() % 100 == 0), pause())
+                        .exceptionally(e -> {
+                            log.error("Erreur dans la tâche: " + e.getMessage());
+                            return null;
+                        });
+                tasks.add(task);
             }
 
-            for (Thread thread : threads) {
-                thread.join();
-            }
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
 
             long end = System.currentTimeMillis();
             log.info("Test concurrent terminé en " + (end - start) + " ms");
 
             // Vérification finale
-            long count = localDatabase.query(Test.class, t -> true).size();
+            long count = localDatabase.count(Test.class);
             log.info("Nombre d'enregistrements finaux: " + count);
 
         } catch (Exception e) {
@@ -103,4 +99,11 @@ public class MainApp implements CommandLineRunner {
         }
     }
 
+    /**
+     * Pause of 10 to 100 ms between the steps of a task
+     */
+    private static Executor pause() {
+        return CompletableFuture.delayedExecutor(10 + (int) (Math.random() * 91), TimeUnit.MILLISECONDS);
+    }
+
 }
@@ -0,0 +1,21 @@
+package com.spring.application.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Partitioned {
+
+    /**
+     * Number of partitions of the table, each stored in its own files behind its own lock
+     */
+    int count();
+
+    /**
+     * Column whose value selects the partition of a row, one of the id columns, or empty for all the id columns
+     */
+    String column() default "";
+}
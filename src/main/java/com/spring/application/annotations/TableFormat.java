@@ -0,0 +1,21 @@
+package com.spring.application.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TableFormat {
+
+    /**
+     * Format of the table file: csv or columnar
+     */
+    String value();
+
+    /**
+     * Compression of the blocks of a columnar table: none or deflate, empty for the default one
+     */
+    String compression() default "";
+}
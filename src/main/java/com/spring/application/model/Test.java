@@ -1,5 +1,6 @@
 package com.spring.application.model;
 
+import com.spring.application.annotations.Indexed;
 import com.spring.application.annotations.Mail;
 import com.spring.application.annotations.Phone;
 import jakarta.persistence.Column;
@@ -26,6 +27,7 @@ public class Test {
     private LocalDateTime naissance;
 
     @NotEmpty
+    @Indexed
     @Column(name = "NOM")
     private String nom;
 
@@ -37,6 +39,7 @@ public class Test {
     @Column(name = "PHONE")
     private String phone;
 
+    @Indexed
     @Column(name = "ACTIVE")
     private boolean active;
 }
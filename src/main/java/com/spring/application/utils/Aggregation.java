@@ -0,0 +1,330 @@
+package com.spring.application.utils;
+
+import java.util.*;
+
+/**
+ * Aggregates computed over the rows of a LocalDatabase table, grouped by the values of some columns
+ * The aggregates are computed on the raw values of the columns, without mapping the rows to entities
+ * Example: Aggregation.groupBy("NOM").count().sum("ID").max("NAISSANCE")
+ * Every group is returned as a map holding the values of the grouped columns and the aggregates, named after the
+ * function and the column: COUNT, SUM(ID), AVG(ID), MIN(ID), MAX(ID)
+ * Null values are ignored, the sum, average, minimum and maximum of a group without values are null
+ */
+public class Aggregation {
+
+    enum Function {
+        COUNT, SUM, AVG, MIN, MAX
+    }
+
+    record Aggregate(Function function, String column) {
+
+        String label() {
+            return function == Function.COUNT ? function.name() : function.name() + "(" + column + ")";
+        }
+    }
+
+    private final List<String> groupBy;
+    private final List<Aggregate> aggregates = new ArrayList<>();
+
+    private Aggregation(List<String> groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * Start an aggregation of the rows grouped by the values of some columns
+     *
+     * @param columns The names of the grouped columns
+     * @return The aggregation, without aggregate
+     */
+    public static Aggregation groupBy(String... columns) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("Columns cannot be null or empty, use all instead");
+        }
+        for (String column : columns) {
+            if (StringUtils.isEmpty(column)) {
+                throw new IllegalArgumentException("Column cannot be null or empty");
+            }
+        }
+        return new Aggregation(List.of(columns));
+    }
+
+    /**
+     * Start an aggregation of all the rows as a single group
+     *
+     * @return The aggregation, without aggregate
+     */
+    public static Aggregation all() {
+        return new Aggregation(List.of());
+    }
+
+    public Aggregation count() {
+        return add(Function.COUNT, null);
+    }
+
+    public Aggregation sum(String column) {
+        return add(Function.SUM, column);
+    }
+
+    public Aggregation avg(String column) {
+        return add(Function.AVG, column);
+    }
+
+    public Aggregation min(String column) {
+        return add(Function.MIN, column);
+    }
+
+    public Aggregation max(String column) {
+        return add(Function.MAX, column);
+    }
+
+    /**
+     * Check the columns of the aggregation against the columns of a table
+     *
+     * @param types The type of every column of the table
+     * @return The plan of the aggregation
+     */
+    Plan resolve(Map<String, Class<?>> types) {
+        if (aggregates.isEmpty() && groupBy.isEmpty()) {
+            throw new IllegalStateException("No aggregate given");
+        }
+        List<String> columns = new ArrayList<>(groupBy);
+        int[] valueIndexes = new int[aggregates.size()];
+        boolean[] integral = new boolean[aggregates.size()];
+        for (int i = 0; i < aggregates.size(); i++) {
+            Aggregate aggregate = aggregates.get(i);
+            if (aggregate.function() == Function.COUNT) {
+                valueIndexes[i] = -1;
+                continue;
+            }
+            Class<?> type = types.get(aggregate.column());
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown column " + aggregate.column());
+            }
+            boolean numeric = type == int.class || type == Integer.class || type == long.class || type == Long.class
+                    || type == double.class || type == Double.class;
+            if ((aggregate.function() == Function.SUM || aggregate.function() == Function.AVG) && !numeric) {
+                throw new IllegalArgumentException("Column " + aggregate.column() + " of type " + type.getSimpleName() + " cannot be summed");
+            }
+            integral[i] = type != double.class && type != Double.class;
+            if (!columns.contains(aggregate.column())) {
+                columns.add(aggregate.column());
+            }
+            valueIndexes[i] = columns.indexOf(aggregate.column());
+        }
+        for (String column : groupBy) {
+            if (!types.containsKey(column)) {
+                throw new IllegalArgumentException("Unknown column " + column);
+            }
+        }
+        return new Plan(groupBy, List.copyOf(aggregates), List.copyOf(columns), valueIndexes, integral);
+    }
+
+    private Aggregation add(Function function, String column) {
+        if (function != Function.COUNT && StringUtils.isEmpty(column)) {
+            throw new IllegalArgumentException("Column cannot be null or empty");
+        }
+        aggregates.add(new Aggregate(function, column));
+        return this;
+    }
+
+    /**
+     * Aggregation checked against the columns of a table
+     *
+     * @param groupBy      The grouped columns, the first columns read
+     * @param aggregates   The aggregates
+     * @param columns      The columns to read from every row
+     * @param valueIndexes The index in the columns of the value of every aggregate, -1 for a count
+     * @param integral     true for the aggregates summing integers
+     */
+    record Plan(List<String> groupBy, List<Aggregate> aggregates, List<String> columns, int[] valueIndexes, boolean[] integral) {
+
+        Groups newGroups() {
+            return new Groups(this);
+        }
+    }
+
+    /**
+     * Accumulators of the groups of a part of a table, filled by a single thread then merged
+     */
+    static final class Groups {
+
+        private final Plan plan;
+        private final Map<List<Object>, Group> groups = new HashMap<>();
+
+        private Groups(Plan plan) {
+            this.plan = plan;
+            if (plan.groupBy().isEmpty()) {
+                groups.put(List.of(), new Group(plan.aggregates().size()));
+            }
+        }
+
+        /**
+         * Add a row to its group
+         *
+         * @param values The values of the columns of the plan, the array is kept
+         */
+        void add(Object[] values) {
+            Group group = plan.groupBy().isEmpty()
+                    ? groups.get(List.of())
+                    : groups.computeIfAbsent(Arrays.asList(values).subList(0, plan.groupBy().size()), key -> new Group(plan.aggregates().size()));
+            group.rows++;
+            for (int i = 0; i < plan.aggregates().size(); i++) {
+                int index = plan.valueIndexes()[i];
+                Object value = index < 0 ? null : values[index];
+                if (value == null) continue;
+                group.counts[i]++;
+                switch (plan.aggregates().get(i).function()) {
+                    case SUM, AVG -> {
+                        if (plan.integral()[i]) {
+                            group.longSums[i] += ((Number) value).longValue();
+                        } else {
+                            group.doubleSums[i] += ((Number) value).doubleValue();
+                        }
+                    }
+                    case MIN -> {
+                        if (group.extremes[i] == null || Criteria.compare(value, group.extremes[i]) < 0) group.extremes[i] = value;
+                    }
+                    case MAX -> {
+                        if (group.extremes[i] == null || Criteria.compare(value, group.extremes[i]) > 0) group.extremes[i] = value;
+                    }
+                    case COUNT -> {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remove a row from its group, the aggregates are maintained without reading the other rows of the group
+         * The group is left unchanged when the row cannot be removed
+         *
+         * @param values The values of the columns of the plan
+         * @return false if the row holds the minimum or the maximum of its group, the groups must then be computed again
+         */
+        boolean remove(Object[] values) {
+            List<Object> key = plan.groupBy().isEmpty() ? List.of() : Arrays.asList(values).subList(0, plan.groupBy().size());
+            Group group = groups.get(key);
+            if (group == null) return false;
+            for (int i = 0; i < plan.aggregates().size(); i++) {
+                int index = plan.valueIndexes()[i];
+                Object value = index < 0 ? null : values[index];
+                Function function = plan.aggregates().get(i).function();
+                if (value != null && (function == Function.MIN || function == Function.MAX)
+                        && (group.extremes[i] == null || Criteria.compare(value, group.extremes[i]) == 0)) {
+                    return false;
+                }
+            }
+            group.rows--;
+            for (int i = 0; i < plan.aggregates().size(); i++) {
+                int index = plan.valueIndexes()[i];
+                Object value = index < 0 ? null : values[index];
+                if (value == null) continue;
+                group.counts[i]--;
+                if (plan.aggregates().get(i).function() == Function.SUM || plan.aggregates().get(i).function() == Function.AVG) {
+                    if (plan.integral()[i]) {
+                        group.longSums[i] -= ((Number) value).longValue();
+                    } else {
+                        group.doubleSums[i] -= ((Number) value).doubleValue();
+                    }
+                }
+            }
+            if (group.rows == 0 && !plan.groupBy().isEmpty()) {
+                groups.remove(key);
+            }
+            return true;
+        }
+
+        /**
+         * Add the groups of another part of the table
+         *
+         * @param other The groups of the other part
+         */
+        void merge(Groups other) {
+            other.groups.forEach((key, group) -> {
+                Group target = groups.get(key);
+                if (target == null) {
+                    groups.put(key, group);
+                } else {
+                    target.merge(group, plan);
+                }
+            });
+        }
+
+        /**
+         * Get the aggregates of every group, ordered by the values of the grouped columns
+         *
+         * @return The groups
+         */
+        List<Map<String, Object>> results() {
+            List<Map.Entry<List<Object>, Group>> entries = new ArrayList<>(groups.entrySet());
+            entries.sort((a, b) -> compareKeys(a.getKey(), b.getKey()));
+            List<Map<String, Object>> results = new ArrayList<>(entries.size());
+            for (Map.Entry<List<Object>, Group> entry : entries) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                for (int i = 0; i < plan.groupBy().size(); i++) {
+                    result.put(plan.groupBy().get(i), entry.getKey().get(i));
+                }
+                Group group = entry.getValue();
+                for (int i = 0; i < plan.aggregates().size(); i++) {
+                    Aggregate aggregate = plan.aggregates().get(i);
+                    boolean empty = group.counts[i] == 0;
+                    Object sum = plan.integral()[i] ? (Object) group.longSums[i] : (Object) group.doubleSums[i];
+                    result.put(aggregate.label(), switch (aggregate.function()) {
+                        case COUNT -> group.rows;
+                        case SUM -> empty ? null : sum;
+                        case AVG -> empty ? null : (plan.integral()[i] ? (double) group.longSums[i] : group.doubleSums[i]) / group.counts[i];
+                        case MIN, MAX -> group.extremes[i];
+                    });
+                }
+                results.add(result);
+            }
+            return results;
+        }
+
+        private static int compareKeys(List<Object> a, List<Object> b) {
+            for (int i = 0; i < a.size(); i++) {
+                Object left = a.get(i);
+                Object right = b.get(i);
+                if (left == null || right == null) {
+                    if (left != right) return left == null ? -1 : 1;
+                    continue;
+                }
+                int compared = Criteria.compare(left, right);
+                if (compared != 0) return compared;
+            }
+            return 0;
+        }
+    }
+
+    private static final class Group {
+
+        private long rows;
+        private final long[] counts;
+        private final long[] longSums;
+        private final double[] doubleSums;
+        private final Object[] extremes;
+
+        private Group(int aggregates) {
+            counts = new long[aggregates];
+            longSums = new long[aggregates];
+            doubleSums = new double[aggregates];
+            extremes = new Object[aggregates];
+        }
+
+        private void merge(Group other, Plan plan) {
+            rows += other.rows;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+                longSums[i] += other.longSums[i];
+                doubleSums[i] += other.doubleSums[i];
+                Object value = other.extremes[i];
+                if (value == null) continue;
+                Function function = plan.aggregates().get(i).function();
+                if (extremes[i] == null
+                        || (function == Function.MIN && Criteria.compare(value, extremes[i]) < 0)
+                        || (function == Function.MAX && Criteria.compare(value, extremes[i]) > 0)) {
+                    extremes[i] = value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.spring.application.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking facade of the LocalDatabase, every call runs on a virtual thread and completes a future
+ * The calls of a table run at most max-concurrent-io at a time, the other ones wait for a permit without holding a
+ * platform thread
+ * The futures complete exceptionally with the exceptions of the LocalDatabase, IOException included
+ */
+@Service
+@RequiredArgsConstructor
+public class AsyncLocalDatabase {
+
+    @Value("${localdatabase.async.max-concurrent-io:4}")
+    private int maxConcurrentIo = 4;
+    private final LocalDatabase localDatabase;
+    private final ConcurrentHashMap<Class<?>, Semaphore> permits = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @FunctionalInterface
+    private interface Call<R> {
+        R call() throws IOException;
+    }
+
+    public <T> CompletableFuture<List<T>> query(Class<T> entity) {
+        return submit(entity, () -> localDatabase.query(entity));
+    }
+
+    public <T> CompletableFuture<List<T>> query(Class<T> entity, Predicate<T> where) {
+        return submit(entity, () -> localDatabase.query(entity, where));
+    }
+
+    public <T> CompletableFuture<List<T>> query(Class<T> entity, Predicate<T> where, Comparator<T> order) {
+        return submit(entity, () -> localDatabase.query(entity, where, order));
+    }
+
+    public <T> CompletableFuture<List<T>> query(Class<T> entity, Criteria criteria) {
+        return submit(entity, () -> localDatabase.query(entity, criteria));
+    }
+
+    public <T> CompletableFuture<Optional<T>> findById(Class<T> entity, Object... ids) {
+        return submit(entity, () -> localDatabase.findById(entity, ids));
+    }
+
+    public <T> CompletableFuture<Long> count(Class<T> entity) {
+        return submit(entity, () -> localDatabase.count(entity));
+    }
+
+    public <T> CompletableFuture<Long> count(Class<T> entity, Criteria criteria) {
+        return submit(entity, () -> localDatabase.count(entity, criteria));
+    }
+
+    public <T> CompletableFuture<Void> insert(T entity) {
+        return insert(List.of(entity));
+    }
+
+    public <T> CompletableFuture<Void> insert(List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submit(entities.getFirst().getClass(), () -> {
+            localDatabase.insert(entities);
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<Void> update(T entity) {
+        return update(List.of(entity));
+    }
+
+    public <T> CompletableFuture<Void> update(List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submit(entities.getFirst().getClass(), () -> {
+            localDatabase.update(entities);
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<Void> delete(T entity) {
+        return delete(List.of(entity));
+    }
+
+    public <T> CompletableFuture<Void> delete(List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submit(entities.getFirst().getClass(), () -> {
+            localDatabase.delete(entities);
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<Void> delete(Class<T> entity, Predicate<T> where) {
+        return submit(entity, () -> {
+            localDatabase.delete(entity, where);
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <R> CompletableFuture<R> submit(Class<?> entity, Call<R> call) {
+        Semaphore semaphore = permits.computeIfAbsent(entity, key -> {
+            if (maxConcurrentIo < 1) {
+                throw new IllegalArgumentException("Max concurrent I/O must be positive");
+            }
+            return new Semaphore(maxConcurrentIo, true);
+        });
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(new InterruptedIOException("Interrupted while waiting for the table of " + entity.getSimpleName()));
+            }
+            try {
+                return call.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                semaphore.release();
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,19 @@
+package com.spring.application.utils;
+
+/**
+ * Change of a row of a LocalDatabase table, see LocalDatabase.changes
+ * The rows are shared by every subscriber and must not be changed
+ *
+ * @param sequence The position of the change among the changes of every table, increasing from 1
+ * @param table    The name of the table
+ * @param type     The kind of change
+ * @param before   The row before the change, null for an insert
+ * @param after    The row after the change, null for a delete
+ * @param <T>      The entity stored in the table
+ */
+public record ChangeEvent<T>(long sequence, String table, Type type, T before, T after) {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+}
@@ -0,0 +1,403 @@
+package com.spring.application.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Ordered change events of the tables of a LocalDatabase, published to in-process subscribers
+ * The writers publish the changes of a table while holding its write lock, with sequence numbers shared by every table
+ * The last changes are kept in a bounded tail: every subscriber reads it at its own pace, as requested, and a new
+ * subscriber can replay the changes following a sequence number
+ * A subscriber whose next change has left the tail is failed, writers never wait for the subscribers
+ * The changes are also applied to the materialized views of their table, before the write lock is released
+ */
+final class ChangeLog implements Closeable {
+
+    record Change(String table, ChangeEvent.Type type, Object before, Object after) {
+    }
+
+    private final int capacity;
+    private final ChangeEvent<?>[] tail;
+    private final Lock lock = new ReentrantLock();
+    private final Set<Subscription<?>> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<MaterializedView<?>>> views = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-database-changes");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long sequence;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity The number of changes kept in the tail, 0 to capture the changes of the tables having views only
+     */
+    ChangeLog(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Change tail size cannot be negative");
+        }
+        this.capacity = capacity;
+        this.tail = new ChangeEvent<?>[capacity];
+    }
+
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Check if the changes of a table are captured, for the subscribers or for the views of the table
+     *
+     * @param table The name of the table
+     * @return true if the changes are captured
+     */
+    boolean isCaptured(String table) {
+        return capacity > 0 || views.containsKey(table);
+    }
+
+    /**
+     * Apply the changes of a table to a view from now on, callers must hold the write lock of every partition of the table
+     *
+     * @param table The name of the table
+     * @param view  The view
+     */
+    void register(String table, MaterializedView<?> view) {
+        views.computeIfAbsent(table, key -> new CopyOnWriteArrayList<>()).add(view);
+    }
+
+    /**
+     * Stop applying the changes of a table to a view
+     *
+     * @param table The name of the table
+     * @param view  The view
+     */
+    void unregister(String table, MaterializedView<?> view) {
+        views.computeIfPresent(table, (key, list) -> {
+            list.remove(view);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Start capturing the changes of a write of a table, callers must hold the write lock of the table
+     *
+     * @param storage The written table or partition
+     * @param table   The name of the table in the events
+     * @return The capture, doing nothing if the changes are not captured
+     */
+    <T> Capture<T> capture(TableStorage<T> storage, String table) {
+        return new Capture<>(storage, table);
+    }
+
+    /**
+     * Subscribe to the changes of a table
+     *
+     * @param table      The name of the table
+     * @param after      The sequence number after which the changes are delivered
+     * @param subscriber The subscriber
+     */
+    <T> void subscribe(String table, long after, Flow.Subscriber<? super ChangeEvent<T>> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!isEnabled()) {
+            throw new IllegalStateException("Change capture is disabled, set localdatabase.changes.tail-size");
+        }
+        Subscription<T> subscription = new Subscription<>(table, after + 1, subscriber);
+        subscriptions.add(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Get the sequence number of the last change
+     *
+     * @return The sequence number, 0 if no change has been published
+     */
+    long sequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Complete the subscribers once they have received the published changes
+     */
+    @Override
+    public void close() {
+        closed = true;
+        subscriptions.forEach(Subscription::signal);
+        executor.shutdown();
+    }
+
+    private void publish(String table, List<Change> changes, long skipped) {
+        if (changes.isEmpty() && skipped == 0) return;
+        if (skipped == 0) {
+            views.getOrDefault(table, List.of()).forEach(view -> view.apply(changes));
+        }
+        if (capacity == 0) return;
+        lock.lock();
+        try {
+            // The skipped changes take their sequence numbers, they are behind the tail once the others are added
+            sequence += skipped;
+            for (Change change : changes) {
+                sequence++;
+                tail[(int) (sequence % capacity)] = new ChangeEvent<>(sequence, change.table(), change.type(), change.before(), change.after());
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriptions.forEach(Subscription::signal);
+    }
+
+    /**
+     * Changes of a write of a table, published once the new version of the table has been published
+     *
+     * @param <T> The entity stored in the table
+     */
+    final class Capture<T> {
+
+        private final TableStorage<T> storage;
+        private final String table;
+        private final boolean captured;
+        private final Map<String, T> before = new HashMap<>();
+        private final List<T> matching = new ArrayList<>();
+        private final List<Change> changes = new ArrayList<>();
+        private long skipped;
+
+        private Capture(TableStorage<T> storage, String table) {
+            this.storage = storage;
+            this.table = table;
+            this.captured = isCaptured(table);
+        }
+
+        /**
+         * Read the rows of some ids before they are written
+         *
+         * @param hashIds The hash of the id columns of the rows
+         * @return This capture
+         */
+        Capture<T> before(Collection<String> hashIds) throws IOException {
+            if (!captured || hashIds.isEmpty()) return this;
+            try (TableSnapshot snapshot = storage.snapshot()) {
+                for (String hashId : hashIds) {
+                    storage.read(snapshot, hashId).ifPresent(row -> before.put(hashId, row));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Read the rows matching a predicate before they are deleted
+         *
+         * @param where The predicate, null for every row
+         * @return This capture
+         */
+        Capture<T> before(Predicate<T> where) throws IOException {
+            if (!captured) return this;
+            try (TableSnapshot snapshot = storage.snapshot()) {
+                for (T row : storage.read(snapshot)) {
+                    if (where == null || where.test(row)) {
+                        matching.add(row);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Record inserted rows
+         *
+         * @param rows The rows
+         */
+        void inserted(List<T> rows) {
+            if (!captured) return;
+            rows.forEach(row -> changes.add(new Change(table, ChangeEvent.Type.INSERT, null, storage.copy(row))));
+        }
+
+        /**
+         * Record inserted rows which are not kept, recorded before the last inserted rows
+         * The skipped changes are counted by the sequence numbers but are never delivered: a subscriber expecting
+         * them is failed as if they had left the tail, and the views of the table do not receive any change of the
+         * write, callers must compute them again from the table
+         *
+         * @param count The number of rows
+         */
+        void skipped(long count) {
+            if (!captured) return;
+            skipped += count;
+        }
+
+        /**
+         * Record written and deleted ids, the rows read before the write tell the updates from the inserts
+         *
+         * @param rows    The written rows by hash of their id columns
+         * @param hashIds The hash of the id columns of the deleted rows
+         */
+        void written(Map<String, T> rows, Collection<String> hashIds) {
+            if (!captured) return;
+            rows.forEach((hashId, row) -> {
+                T previous = before.get(hashId);
+                changes.add(new Change(table, previous == null ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE, previous, storage.copy(row)));
+            });
+            for (String hashId : hashIds) {
+                T previous = before.get(hashId);
+                if (previous != null) {
+                    changes.add(new Change(table, ChangeEvent.Type.DELETE, previous, null));
+                }
+            }
+        }
+
+        /**
+         * Record the deletion of the rows read by before(where)
+         */
+        void deleted() {
+            if (!captured) return;
+            matching.forEach(row -> changes.add(new Change(table, ChangeEvent.Type.DELETE, row, null)));
+        }
+
+        /**
+         * Publish the recorded changes, nothing is published if the write failed before recording them
+         */
+        void publish() {
+            if (!captured) return;
+            ChangeLog.this.publish(table, changes, skipped);
+            changes.clear();
+            skipped = 0;
+        }
+    }
+
+    /**
+     * Subscription reading the tail from its own position, the changes are delivered by a single task at a time
+     *
+     * @param <T> The entity stored in the table
+     */
+    private final class Subscription<T> implements Flow.Subscription {
+
+        private final String table;
+        private final Flow.Subscriber<? super ChangeEvent<T>> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private long next;
+        private boolean started;
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        private Subscription(String table, long next, Flow.Subscriber<? super ChangeEvent<T>> subscriber) {
+            this.table = table;
+            this.next = next;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("The number of requested changes must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void start() {
+            run();
+        }
+
+        private void signal() {
+            if (pending.getAndIncrement() == 0) {
+                run();
+            }
+        }
+
+        private void run() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The change log is closed and its last tasks have completed the subscribers
+                cancel();
+            }
+        }
+
+        private void drain() {
+            if (!started) {
+                started = true;
+                subscriber.onSubscribe(this);
+            }
+            int missed = 1;
+            do {
+                while (!cancelled) {
+                    if (failure != null) {
+                        terminate(failure);
+                        break;
+                    }
+                    long requested = demand.get();
+                    List<ChangeEvent<T>> events = requested > 0 ? read(requested) : List.of();
+                    if (events == null) {
+                        terminate(new IllegalStateException("The changes of the table " + table + " following " + (next - 1) + " have left the tail"));
+                        break;
+                    }
+                    if (events.isEmpty()) {
+                        if (closed && next > sequence()) {
+                            cancel();
+                            subscriber.onComplete();
+                        }
+                        break;
+                    }
+                    demand.addAndGet(-events.size());
+                    for (ChangeEvent<T> event : events) {
+                        if (cancelled) break;
+                        subscriber.onNext(event);
+                    }
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Read the next changes of the table from the tail
+         *
+         * @param max The maximum number of changes
+         * @return The changes, null if the next ones have left the tail
+         */
+        @SuppressWarnings("unchecked")
+        private List<ChangeEvent<T>> read(long max) {
+            List<ChangeEvent<T>> events = new ArrayList<>();
+            lock.lock();
+            try {
+                if (next <= sequence - capacity) return null;
+                while (next <= sequence && events.size() < max) {
+                    ChangeEvent<?> event = tail[(int) (next % capacity)];
+                    next++;
+                    if (event.table().equals(table)) {
+                        events.add((ChangeEvent<T>) event);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            return events;
+        }
+
+        private void terminate(Throwable error) {
+            cancel();
+            subscriber.onError(error);
+        }
+    }
+}
@@ -0,0 +1,751 @@
+package com.spring.application.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Table stored in a single binary columnar file (TABLE.col)
+ * The file starts with the schema of the table, the names and types of the columns, followed by blocks of rows
+ * Within a block the values are stored column by column, each column being a null bitmap followed by fixed-width
+ * ints, doubles, booleans, epoch days or epoch seconds, or by offsets and UTF-8 bytes for strings
+ * A scan maps only the columns it needs and never parses text
+ * Inserts append new blocks, updates and deletes rewrite the file
+ * The position of a row encodes the offset of its block in the high bits and its index in the block in the low bits
+ * The columns of the blocks can be compressed with Deflate, each column of each block on its own, so that the blocks
+ * are inflated in parallel by the scans and a read by id inflates the columns of a single block
+ *
+ * @param <T> The entity stored in the table
+ */
+class ColumnarTableStorage<T> extends TableStorage<T> {
+
+    static final String EXTENSION = ".col";
+    private static final int MAGIC = 0x4C444243;
+    private static final int COMPRESSED_MAGIC = 0x4C44425A;
+    private static final int ROW_BITS = 16;
+    private static final long ROW_MASK = (1L << ROW_BITS) - 1;
+    private static final int BLOCK_ROWS = 4096;
+
+    /**
+     * Type of the values of a column, the ordinal is written in the files
+     */
+    enum Type {
+        INT(4), DOUBLE(8), BOOLEAN(1), DATE(8), DATETIME(8), STRING(-1);
+
+        private final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+
+        static Type of(String column, Class<?> type) {
+            if (type == int.class || type == Integer.class) return INT;
+            if (type == double.class || type == Double.class) return DOUBLE;
+            if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+            if (type == LocalDate.class) return DATE;
+            if (type == LocalDateTime.class) return DATETIME;
+            if (type == String.class) return STRING;
+            throw new IllegalArgumentException("Column " + column + " of type " + type.getSimpleName() + " cannot be stored in a columnar table");
+        }
+    }
+
+    private record Schema(List<String> columns, List<Type> types, boolean compressed, long dataStart, EntityMapper.Property[] properties) {
+    }
+
+    /**
+     * @param rawLengths The lengths of the inflated columns, null if the block is not compressed
+     */
+    private record Block(long offset, int rows, long[] positions, int[] lengths, int[] rawLengths) {
+
+        long end() {
+            return positions.length == 0 ? offset + 4 : positions[positions.length - 1] + lengths[lengths.length - 1];
+        }
+    }
+
+    private record Row(long pointer, Object[] values) {
+    }
+
+    private final EntityMapper<T> mapper;
+    private final boolean compressed;
+    private Schema schema;
+
+    /**
+     * @param compressed true to compress the blocks of the table if it is created, an existing table keeps the
+     *                   compression of its file
+     */
+    ColumnarTableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner, boolean compressed) {
+        super(entity, tableName, folder, wal, scanner, EXTENSION);
+        this.mapper = EntityMapper.of(entity);
+        this.compressed = compressed;
+
+        // Reject the entities having columns which cannot be stored
+        columnTypes.forEach(Type::of);
+    }
+
+    @Override
+    byte[] emptyTable() throws IOException {
+        List<String> columns = new ArrayList<>(columnTypes.keySet());
+        List<Type> types = columns.stream().map(column -> Type.of(column, columnTypes.get(column))).toList();
+        return encodeSchema(columns, types, compressed);
+    }
+
+    @Override
+    List<T> read(TableSnapshot snapshot) throws IOException {
+        FileChannel channel = snapshot.channel(tablePath);
+        Schema current = readSchema(channel);
+        return scanner.map(readRows(channel, snapshot.size(tablePath)), row -> decodeRow(current, row.values()));
+    }
+
+    @Override
+    List<T> scan(TableSnapshot snapshot, List<Criteria.Condition> conditions, Predicate<T> where) throws IOException {
+        // The blocks are scanned in parallel, each one reading only the columns it needs
+        FileChannel channel = snapshot.channel(tablePath);
+        Schema current = readSchema(channel);
+        List<T> result = new ArrayList<>();
+        scanner.invokeAll(blocks(channel, current, snapshot.size(tablePath)), block -> {
+            List<T> rows = scan(channel, current, block, conditions);
+            if (where != null) rows.removeIf(where.negate());
+            return rows;
+        }).forEach(result::addAll);
+        return result;
+    }
+
+    @Override
+    Aggregation.Groups aggregate(TableSnapshot snapshot, List<Criteria.Condition> conditions, Aggregation.Plan plan) throws IOException {
+        // Every block reads the columns of the conditions and of the aggregation only
+        FileChannel channel = snapshot.channel(tablePath);
+        Schema current = readSchema(channel);
+        int[] indexes = plan.columns().stream().mapToInt(current.columns()::indexOf).toArray();
+        Aggregation.Groups result = plan.newGroups();
+        scanner.invokeAll(blocks(channel, current, snapshot.size(tablePath)), block -> {
+            Object[][] columns = new Object[current.columns().size()][];
+            boolean[] matches = matches(channel, current, block, conditions, columns);
+            for (int index : indexes) {
+                if (index >= 0 && columns[index] == null) {
+                    columns[index] = decode(readChunk(channel, block, index), current.types().get(index), block.rows());
+                }
+            }
+            Aggregation.Groups groups = plan.newGroups();
+            for (int row = 0; row < block.rows(); row++) {
+                if (!matches[row]) continue;
+                Object[] values = new Object[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    values[i] = indexes[i] < 0 ? null : columns[indexes[i]][row];
+                }
+                groups.add(values);
+            }
+            return groups;
+        }).forEach(result::merge);
+        return result;
+    }
+
+    @Override
+    Stream<T> stream(TableSnapshot snapshot) throws IOException {
+        return stream(snapshot, List.of());
+    }
+
+    @Override
+    Stream<T> stream(TableSnapshot snapshot, List<Criteria.Condition> conditions) throws IOException {
+        // Blocks appended after the version are beyond its size and a rewrite replaces the file without changing the opened one
+        FileChannel channel = snapshot.channel(tablePath);
+        long size = snapshot.size(tablePath);
+        Schema current = readSchema(channel);
+        return Stream.iterate(nextBlock(channel, current, current.dataStart(), size), Objects::nonNull,
+                        block -> nextBlock(channel, current, block.end(), size))
+                .flatMap(block -> {
+                    try {
+                        return scan(channel, current, block, conditions).stream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    Optional<T> read(TableSnapshot snapshot, String hashId) throws IOException {
+        Long pointer = snapshot.primaryKeys().get(hashId);
+        if (pointer == null) return Optional.empty();
+
+        FileChannel channel = snapshot.channel(tablePath);
+        Schema current = readSchema(channel);
+        int row = (int) (pointer & ROW_MASK);
+        Block block = readBlock(channel, current, pointer >>> ROW_BITS);
+        Object[] values = new Object[current.columns().size()];
+        for (int column = 0; column < values.length; column++) {
+            if (columnTypes.containsKey(current.columns().get(column))) {
+                values[column] = decode(readChunk(channel, block, column), current.types().get(column), block.rows(), row);
+            }
+        }
+        return Optional.of(decodeRow(current, values));
+    }
+
+    @Override
+    void insert(List<T> entities) throws IOException {
+        // Check unity constraint based on ID columns
+        List<String> idToInsert = idColumns.isEmpty() ? List.of() : entities.stream().map(this::hashId).toList();
+        if (!idColumns.isEmpty()) {
+            checkUniqueness(idToInsert);
+        }
+
+        // Append the rows as new blocks
+        Schema current = schema();
+        long start = wal.size(tablePath);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        List<Long> pointers = writeBlocks(content, start, current, entities.stream().map(row -> encodeRow(current, row)).toList());
+        wal.append(tablePath, content.toByteArray());
+
+        // Register the new rows in the primary key index
+        if (!idColumns.isEmpty()) {
+            Map<String, Long> entries = new LinkedHashMap<>();
+            Map<String, T> rows = new LinkedHashMap<>();
+            for (int i = 0; i < idToInsert.size(); i++) {
+                entries.put(idToInsert.get(i), pointers.get(i));
+                rows.put(idToInsert.get(i), entities.get(i));
+            }
+            index.append(entries, version());
+            updateIndexes(rows, List.of());
+        }
+    }
+
+    @Override
+    protected EncodedRows encodeRows(Path target, List<T> rows, long start) throws IOException {
+        // Every block is encoded and compressed on its own, the positions are then shifted by the offset of the block
+        Schema current = schema();
+        List<List<T>> blocks = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += BLOCK_ROWS) {
+            blocks.add(rows.subList(from, Math.min(rows.size(), from + BLOCK_ROWS)));
+        }
+        List<EncodedRows> encoded = scanner.invokeAll(blocks, block -> {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            List<Long> pointers = writeBlocks(content, 0, current, block.stream().map(row -> encodeRow(current, row)).toList());
+            return new EncodedRows(List.of(content.toByteArray()), pointers);
+        });
+        List<byte[]> parts = new ArrayList<>(encoded.size());
+        List<Long> pointers = new ArrayList<>(rows.size());
+        long position = start;
+        for (EncodedRows block : encoded) {
+            long shift = pointer(position, 0);
+            block.pointers().forEach(pointer -> pointers.add(shift + pointer));
+            parts.addAll(block.parts());
+            position += block.parts().get(0).length;
+        }
+        return new EncodedRows(parts, pointers);
+    }
+
+    @Override
+    long export(TableSnapshot snapshot, OutputStream out) throws IOException {
+        List<String> header = List.copyOf(columnTypes.keySet());
+        long count = 0;
+        try (Stream<T> rows = stream(snapshot)) {
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writeLine(out, encodeLine(iterator.next(), header));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    void write(Map<String, T> rows, Set<String> hashIds) throws IOException {
+        // Split the rows between existing rows and new rows
+        PrimaryKeyIndex primaryKeys = loadIndex();
+        Schema current = schema();
+        Map<Long, Object[]> replacements = new HashMap<>();
+        List<T> toInsert = new ArrayList<>();
+        rows.forEach((hashId, row) -> {
+            Long pointer = primaryKeys.get(hashId);
+            if (pointer == null) {
+                toInsert.add(row);
+            } else {
+                replacements.put(pointer, encodeRow(current, row));
+            }
+        });
+        Set<Long> pointersToDelete = hashIds.stream()
+                .map(primaryKeys::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        // Only new rows, they are appended to the file
+        if (replacements.isEmpty() && pointersToDelete.isEmpty()) {
+            if (!toInsert.isEmpty()) {
+                insert(toInsert);
+            }
+            return;
+        }
+
+        // Copy the remaining values without mapping them to entities, replace the existing rows and append the new ones
+        List<Row> existing = readRows();
+        Map<Long, String> idsByPointer = primaryKeys.byOffset();
+        List<Object[]> rowsToWrite = new ArrayList<>(existing.size() + toInsert.size());
+        List<String> hashIdsToWrite = new ArrayList<>(existing.size() + toInsert.size());
+        for (Row row : existing) {
+            if (!pointersToDelete.contains(row.pointer())) {
+                rowsToWrite.add(replacements.getOrDefault(row.pointer(), row.values()));
+                hashIdsToWrite.add(idsByPointer.get(row.pointer()));
+            }
+        }
+        for (T entity : toInsert) {
+            rowsToWrite.add(encodeRow(current, entity));
+            hashIdsToWrite.add(hashId(entity));
+        }
+        rewrite(current, rowsToWrite, hashIdsToWrite);
+        updateIndexes(rows, hashIds);
+    }
+
+    @Override
+    void delete(Predicate<T> where) throws IOException {
+        List<Row> rows = readRows();
+
+        // If no rows, nothing to delete
+        if (rows.isEmpty()) return;
+
+        Schema current = schema();
+        List<T> objects = scanner.map(rows, row -> decodeRow(current, row.values()));
+        List<Integer> rowsToKeep = where == null ? List.of() : IntStream.range(0, rows.size()).filter(i -> !where.test(objects.get(i))).boxed().toList();
+
+        // No rows to delete
+        if (rowsToKeep.size() == rows.size()) {
+            return;
+        }
+
+        // Rewrite the file with the remaining rows
+        rewrite(current,
+                rowsToKeep.stream().map(i -> rows.get(i).values()).toList(),
+                idColumns.isEmpty() ? null : rowsToKeep.stream().map(i -> hashId(objects.get(i))).toList());
+        if (!secondaryIndexes.isEmpty()) {
+            Set<Integer> kept = new HashSet<>(rowsToKeep);
+            updateIndexes(Map.of(), IntStream.range(0, rows.size()).filter(i -> !kept.contains(i)).mapToObj(i -> hashId(objects.get(i))).toList());
+        }
+    }
+
+    @Override
+    void clear() throws IOException {
+        super.clear();
+        schema = null;
+    }
+
+    @Override
+    Object storedValue(T row, String column) {
+        Type type = Type.of(column, columnTypes.get(column));
+        try {
+            return decode(ByteBuffer.wrap(encode(Collections.singletonList(value(row, column)), type)), type, 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    protected String version() throws IOException {
+        return version(tablePath);
+    }
+
+    @Override
+    protected Map<String, Long> buildIndex() throws IOException {
+        // Only the id columns are read
+        Map<String, Long> entries = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(tablePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Schema current = readSchema(channel);
+            List<Object[]> ids = new ArrayList<>();
+            for (Block block = nextBlock(channel, current, current.dataStart(), size); block != null; block = nextBlock(channel, current, block.end(), size)) {
+                ids.clear();
+                for (String idColumn : idColumns) {
+                    int column = current.columns().indexOf(idColumn);
+                    ids.add(column < 0 ? new Object[block.rows()] : decode(readChunk(channel, block, column), current.types().get(column), block.rows()));
+                }
+                for (int row = 0; row < block.rows(); row++) {
+                    int i = row;
+                    entries.put(hashId(ids.stream().map(values -> values[i]).toArray()), pointer(block.offset(), row));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Decode the rows of a block matching conditions
+     * The columns of the conditions are read first, the other columns only if some rows match
+     *
+     * @param channel    The table file
+     * @param schema     The schema of the file
+     * @param block      The block
+     * @param conditions The conditions
+     * @return The matching rows
+     */
+    private List<T> scan(FileChannel channel, Schema schema, Block block, List<Criteria.Condition> conditions) throws IOException {
+        Object[][] columns = new Object[schema.columns().size()][];
+        boolean[] matches = matches(channel, schema, block, conditions, columns);
+
+        List<T> result = new ArrayList<>();
+        for (int row = 0; row < block.rows(); row++) {
+            if (!matches[row]) continue;
+            Object[] values = new Object[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                if (columns[column] == null && columnTypes.containsKey(schema.columns().get(column))) {
+                    columns[column] = decode(readChunk(channel, block, column), schema.types().get(column), block.rows());
+                }
+                values[column] = columns[column] == null ? null : columns[column][row];
+            }
+            result.add(decodeRow(schema, values));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate conditions on the rows of a block, reading the columns of the conditions only
+     *
+     * @param channel    The table file
+     * @param schema     The schema of the file
+     * @param block      The block
+     * @param conditions The conditions
+     * @param columns    The decoded columns of the block by index, filled with the columns read
+     * @return true for every row matching the conditions
+     */
+    private boolean[] matches(FileChannel channel, Schema schema, Block block, List<Criteria.Condition> conditions, Object[][] columns) throws IOException {
+        boolean[] matches = new boolean[block.rows()];
+        Arrays.fill(matches, true);
+        for (Criteria.Condition condition : conditions) {
+            int column = schema.columns().indexOf(condition.column());
+            Object[] values = column < 0 ? new Object[block.rows()] : columns[column];
+            if (values == null) {
+                values = decode(readChunk(channel, block, column), schema.types().get(column), block.rows());
+                columns[column] = values;
+            }
+            for (int row = 0; row < block.rows(); row++) {
+                matches[row] = matches[row] && condition.test(values[row]);
+            }
+        }
+        return matches;
+    }
+
+    private List<Block> blocks(FileChannel channel, Schema schema, long size) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        for (Block block = nextBlock(channel, schema, schema.dataStart(), size); block != null; block = nextBlock(channel, schema, block.end(), size)) {
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private List<Row> readRows() throws IOException {
+        try (FileChannel channel = FileChannel.open(tablePath, StandardOpenOption.READ)) {
+            return readRows(channel, channel.size());
+        }
+    }
+
+    private List<Row> readRows(FileChannel channel, long size) throws IOException {
+        // The blocks are read and inflated in parallel
+        List<Row> rows = new ArrayList<>();
+        Schema current = readSchema(channel);
+        scanner.invokeAll(blocks(channel, current, size), block -> {
+            Object[][] columns = new Object[current.columns().size()][];
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = decode(readChunk(channel, block, column), current.types().get(column), block.rows());
+            }
+            List<Row> blockRows = new ArrayList<>(block.rows());
+            for (int row = 0; row < block.rows(); row++) {
+                Object[] values = new Object[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    values[column] = columns[column][row];
+                }
+                blockRows.add(new Row(pointer(block.offset(), row), values));
+            }
+            return blockRows;
+        }).forEach(rows::addAll);
+        return rows;
+    }
+
+    private void rewrite(Schema schema, List<Object[]> rows, List<String> hashIds) throws IOException {
+        // Write the new content in a temporary file, then replace the table file atomically
+        Path temporary = wal.temporary(tablePath);
+        byte[] header = encodeSchema(schema.columns(), schema.types(), schema.compressed());
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        List<Long> pointers = writeBlocks(blocks, header.length, schema, rows);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            out.write(header);
+            blocks.writeTo(out);
+        }
+        wal.replace(tablePath, temporary);
+
+        // Positions have changed, the primary key index is rebuilt from the written rows
+        if (hashIds != null) {
+            Map<String, Long> entries = new LinkedHashMap<>();
+            for (int i = 0; i < hashIds.size(); i++) {
+                entries.put(hashIds.get(i), pointers.get(i));
+            }
+            index.rewrite(entries, version());
+        }
+    }
+
+    private Schema schema() throws IOException {
+        if (schema == null) {
+            try (FileChannel channel = FileChannel.open(tablePath, StandardOpenOption.READ)) {
+                schema = readSchema(channel);
+            }
+        }
+        return schema;
+    }
+
+    private Object[] encodeRow(Schema schema, T row) {
+        return schema.columns().stream().map(column -> value(row, column)).toArray();
+    }
+
+    private T decodeRow(Schema schema, Object[] values) {
+        T row = mapper.newInstance();
+        for (int column = 0; column < values.length; column++) {
+            EntityMapper.Property property = schema.properties()[column];
+            if (values[column] != null && property != null && property.setter() != null) {
+                property.set(row, ObjectUtils.convertValue(values[column], property.type()));
+            }
+        }
+        return row;
+    }
+
+    private static long pointer(long blockOffset, int row) {
+        return (blockOffset << ROW_BITS) | row;
+    }
+
+    private static byte[] encodeSchema(List<String> columns, List<Type> types, boolean compressed) throws IOException {
+        ByteArrayOutputStream schema = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(schema);
+        out.writeShort(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            out.writeUTF(columns.get(i));
+            out.writeByte(types.get(i).ordinal());
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(content);
+        header.writeInt(compressed ? COMPRESSED_MAGIC : MAGIC);
+        header.writeInt(schema.size());
+        schema.writeTo(header);
+        return content.toByteArray();
+    }
+
+    private Schema readSchema(FileChannel channel) throws IOException {
+        ByteBuffer start = readBytes(channel, 0, 8);
+        if (start.getInt(0) != MAGIC && start.getInt(0) != COMPRESSED_MAGIC) {
+            throw new IOException("Table " + tableName + " is not a columnar table");
+        }
+        int length = start.getInt(4);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBytes(channel, 8, length).array()))) {
+            int count = in.readUnsignedShort();
+            List<String> columns = new ArrayList<>(count);
+            List<Type> types = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                columns.add(in.readUTF());
+                types.add(Type.values()[in.readUnsignedByte()]);
+            }
+            // The fields of the columns are resolved once per file, the columns without field are ignored
+            EntityMapper.Property[] properties = columns.stream().map(mapper::property).toArray(EntityMapper.Property[]::new);
+            return new Schema(List.copyOf(columns), List.copyOf(types), start.getInt(0) == COMPRESSED_MAGIC, 8L + length, properties);
+        }
+    }
+
+    private static List<Long> writeBlocks(ByteArrayOutputStream content, long start, Schema schema, List<Object[]> rows) throws IOException {
+        List<Long> pointers = new ArrayList<>(rows.size());
+        DataOutputStream out = new DataOutputStream(content);
+        for (int from = 0; from < rows.size(); from += BLOCK_ROWS) {
+            List<Object[]> blockRows = rows.subList(from, Math.min(rows.size(), from + BLOCK_ROWS));
+            long blockOffset = start + content.size();
+            List<byte[]> chunks = new ArrayList<>(schema.columns().size());
+            for (int column = 0; column < schema.columns().size(); column++) {
+                int i = column;
+                chunks.add(encode(blockRows.stream().map(values -> values[i]).toList(), schema.types().get(column)));
+            }
+            List<byte[]> stored = schema.compressed() ? chunks.stream().map(ColumnarTableStorage::deflate).toList() : chunks;
+            out.writeInt(blockRows.size());
+            for (byte[] chunk : stored) {
+                out.writeInt(chunk.length);
+            }
+            if (schema.compressed()) {
+                for (byte[] chunk : chunks) {
+                    out.writeInt(chunk.length);
+                }
+            }
+            for (byte[] chunk : stored) {
+                out.write(chunk);
+            }
+            for (int row = 0; row < blockRows.size(); row++) {
+                pointers.add(pointer(blockOffset, row));
+            }
+        }
+        out.flush();
+        return pointers;
+    }
+
+    private static Block nextBlock(FileChannel channel, Schema schema, long offset, long size) {
+        if (offset >= size) return null;
+        try {
+            return readBlock(channel, schema, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Block readBlock(FileChannel channel, Schema schema, long offset) throws IOException {
+        // A compressed block has the lengths of the inflated columns after the lengths of the stored ones
+        int columns = schema.columns().size();
+        int lengthsCount = schema.compressed() ? 2 * columns : columns;
+        ByteBuffer header = readBytes(channel, offset, 4 + 4 * lengthsCount);
+        int rows = header.getInt(0);
+        long[] positions = new long[columns];
+        int[] lengths = new int[columns];
+        int[] rawLengths = schema.compressed() ? new int[columns] : null;
+        long position = offset + 4 + 4L * lengthsCount;
+        for (int column = 0; column < columns; column++) {
+            positions[column] = position;
+            lengths[column] = header.getInt(4 + 4 * column);
+            if (rawLengths != null) {
+                rawLengths[column] = header.getInt(4 + 4 * (columns + column));
+            }
+            position += lengths[column];
+        }
+        return new Block(offset, rows, positions, lengths, rawLengths);
+    }
+
+    private static ByteBuffer readChunk(FileChannel channel, Block block, int column) throws IOException {
+        // The values are decoded in place from the mapped file, or from the inflated column
+        if (block.rawLengths() == null) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, block.positions()[column], block.lengths()[column]);
+        }
+        ByteBuffer input = readBytes(channel, block.positions()[column], block.lengths()[column]);
+        byte[] output = new byte[block.rawLengths()[column]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input.array());
+            int length = 0;
+            while (length < output.length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != output.length) {
+                throw new IOException("Corrupted block at offset " + block.offset() + " of the table file");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block at offset " + block.offset() + " of the table file", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    private static byte[] deflate(byte[] chunk) {
+        // Favor the speed, the repeated values of a column compress well at the lowest level
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(chunk);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, chunk.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the table file");
+            }
+        }
+        return buffer;
+    }
+
+    private static byte[] encode(List<Object> values, Type type) throws IOException {
+        int rows = values.size();
+        byte[] nulls = new byte[(rows + 7) / 8];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(data);
+        List<byte[]> strings = type == Type.STRING ? new ArrayList<>(rows) : null;
+        for (int row = 0; row < rows; row++) {
+            Object value = values.get(row);
+            if (value == null) {
+                nulls[row >> 3] |= (byte) (1 << (row & 7));
+            }
+            switch (type) {
+                case INT -> out.writeInt(value == null ? 0 : NumberUtils.toInt(value));
+                case DOUBLE -> out.writeDouble(value == null ? 0 : NumberUtils.toDouble(value));
+                case BOOLEAN -> out.writeBoolean(value != null && (Boolean) value);
+                case DATE -> out.writeLong(value == null ? 0 : ((LocalDate) value).toEpochDay());
+                case DATETIME -> out.writeLong(value == null ? 0 : ((LocalDateTime) value).toEpochSecond(ZoneOffset.UTC));
+                case STRING -> strings.add(value == null ? new byte[0] : StringUtils.toString(value).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        // Strings are stored as the offsets of their end in the data, followed by the data
+        if (strings != null) {
+            int end = 0;
+            out.writeInt(end);
+            for (byte[] string : strings) {
+                end += string.length;
+                out.writeInt(end);
+            }
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+        }
+        out.flush();
+
+        byte[] chunk = new byte[nulls.length + data.size()];
+        System.arraycopy(nulls, 0, chunk, 0, nulls.length);
+        System.arraycopy(data.toByteArray(), 0, chunk, nulls.length, data.size());
+        return chunk;
+    }
+
+    private static Object[] decode(ByteBuffer chunk, Type type, int rows) {
+        Object[] values = new Object[rows];
+        for (int row = 0; row < rows; row++) {
+            values[row] = decode(chunk, type, rows, row);
+        }
+        return values;
+    }
+
+    private static Object decode(ByteBuffer chunk, Type type, int rows, int row) {
+        if ((chunk.get(row >> 3) & (1 << (row & 7))) != 0) return null;
+        int data = (rows + 7) / 8;
+        return switch (type) {
+            case INT -> chunk.getInt(data + type.width * row);
+            case DOUBLE -> chunk.getDouble(data + type.width * row);
+            case BOOLEAN -> chunk.get(data + type.width * row) != 0;
+            case DATE -> LocalDate.ofEpochDay(chunk.getLong(data + type.width * row));
+            case DATETIME -> LocalDateTime.ofEpochSecond(chunk.getLong(data + type.width * row), 0, ZoneOffset.UTC);
+            case STRING -> {
+                int start = chunk.getInt(data + 4 * row);
+                byte[] bytes = new byte[chunk.getInt(data + 4 * (row + 1)) - start];
+                chunk.get(data + 4 * (rows + 1) + start, bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
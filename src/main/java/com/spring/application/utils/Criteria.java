@@ -0,0 +1,227 @@
+package com.spring.application.utils;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Conditions on the columns of a LocalDatabase table, all of them must match
+ * Unlike a Predicate, the conditions can be evaluated on the raw values of the columns before a row is mapped
+ * to an entity, and can be answered with the primary key index or the secondary indexes
+ * Example: Criteria.where("ACTIVE").eq(true).and("ID").between(1, 500)
+ * A null value never matches a condition, except isNull
+ */
+public class Criteria {
+
+    enum Operator {
+        EQ, NE, GT, GTE, LT, LTE, BETWEEN, IN, NULL
+    }
+
+    record Condition(String column, Operator operator, List<Object> values) {
+
+        /**
+         * Check if a value of the column matches the condition
+         *
+         * @param value The value
+         * @return true if the value matches
+         */
+        boolean test(Object value) {
+            if (operator == Operator.NULL) return value == null;
+            if (value == null) return false;
+            return switch (operator) {
+                case EQ -> compare(value, values.getFirst()) == 0;
+                case NE -> compare(value, values.getFirst()) != 0;
+                case GT -> compare(value, values.getFirst()) > 0;
+                case GTE -> compare(value, values.getFirst()) >= 0;
+                case LT -> compare(value, values.getFirst()) < 0;
+                case LTE -> compare(value, values.getFirst()) <= 0;
+                case BETWEEN -> compare(value, values.getFirst()) >= 0 && compare(value, values.getLast()) <= 0;
+                case IN -> values.stream().anyMatch(other -> compare(value, other) == 0);
+                case NULL -> false;
+            };
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private String column;
+
+    private Criteria(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Start a criteria with a condition on a column
+     *
+     * @param column The name of the column
+     * @return The criteria, waiting for the condition of the column
+     */
+    public static Criteria where(String column) {
+        if (StringUtils.isEmpty(column)) {
+            throw new IllegalArgumentException("Column cannot be null or empty");
+        }
+        return new Criteria(column);
+    }
+
+    /**
+     * Add a condition on another column
+     *
+     * @param column The name of the column
+     * @return The criteria, waiting for the condition of the column
+     */
+    public Criteria and(String column) {
+        if (this.column != null) {
+            throw new IllegalStateException("No condition given for the column " + this.column);
+        }
+        if (StringUtils.isEmpty(column)) {
+            throw new IllegalArgumentException("Column cannot be null or empty");
+        }
+        this.column = column;
+        return this;
+    }
+
+    public Criteria eq(Object value) {
+        return add(Operator.EQ, value);
+    }
+
+    public Criteria ne(Object value) {
+        return add(Operator.NE, value);
+    }
+
+    public Criteria gt(Object value) {
+        return add(Operator.GT, value);
+    }
+
+    public Criteria gte(Object value) {
+        return add(Operator.GTE, value);
+    }
+
+    public Criteria lt(Object value) {
+        return add(Operator.LT, value);
+    }
+
+    public Criteria lte(Object value) {
+        return add(Operator.LTE, value);
+    }
+
+    public Criteria between(Object from, Object to) {
+        return add(Operator.BETWEEN, from, to);
+    }
+
+    public Criteria in(Object... values) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("Values cannot be null or empty");
+        }
+        return add(Operator.IN, values);
+    }
+
+    public Criteria isNull() {
+        return add(Operator.NULL);
+    }
+
+    /**
+     * Get the conditions with their values converted to the types of the columns
+     * Numbers are converted to the numeric type of their column, a fractional or out of range value of an integer
+     * column is rejected
+     *
+     * @param types The type of every column of the table
+     * @return The conditions
+     * @throws IllegalArgumentException if a column is unknown or a value cannot be converted to the type of its column
+     */
+    List<Condition> resolve(Map<String, Class<?>> types) {
+        if (column != null) {
+            throw new IllegalStateException("No condition given for the column " + column);
+        }
+        List<Condition> resolved = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            Class<?> type = types.get(condition.column());
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown column " + condition.column());
+            }
+            resolved.add(new Condition(condition.column(), condition.operator(),
+                    condition.values().stream().map(value -> convert(value, type)).toList()));
+        }
+        return resolved;
+    }
+
+    /**
+     * Compile conditions into a predicate on the raw values of a CSV line, only the columns of the conditions are parsed
+     *
+     * @param conditions The resolved conditions
+     * @param header     The columns of the table file
+     * @param parsers    The parser of the raw values of every column
+     * @return The predicate on the cells of a line, given by index and null if the line has fewer cells
+     */
+    static Predicate<IntFunction<String>> compile(List<Condition> conditions, List<String> header, Map<String, Function<String, Object>> parsers) {
+        Predicate<IntFunction<String>> result = cells -> true;
+        for (Condition condition : conditions) {
+            int index = header.indexOf(condition.column());
+            Function<String, Object> parser = parsers.get(condition.column());
+            result = result.and(cells -> {
+                String cell = index < 0 ? null : cells.apply(index);
+                return condition.test(cell == null ? null : parser.apply(cell));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Compile conditions into a predicate on entities
+     *
+     * @param conditions The resolved conditions
+     * @param getter     The getter of the value of a column of an entity
+     * @return The predicate
+     */
+    static <T> Predicate<T> compile(List<Condition> conditions, BiFunction<T, String, Object> getter) {
+        return row -> conditions.stream().allMatch(condition -> condition.test(getter.apply(row, condition.column())));
+    }
+
+    private Criteria add(Operator operator, Object... values) {
+        if (column == null) {
+            throw new IllegalStateException("A column must be given before a condition");
+        }
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Value cannot be null, use isNull instead");
+            }
+        }
+        conditions.add(new Condition(column, operator, List.of(values)));
+        column = null;
+        return this;
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        Class<?> boxed = box(type);
+        if (boxed.isInstance(value)) return value;
+        if (value instanceof Number number) {
+            if (boxed == Double.class) return number.doubleValue();
+            try {
+                // A fractional or out of range value is rejected rather than truncated to another value of the column
+                if (boxed == Integer.class) return new BigDecimal(number.toString()).intValueExact();
+                if (boxed == Long.class) return new BigDecimal(number.toString()).longValueExact();
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Value " + value + " is not an integer of a column of type " + type.getSimpleName());
+            }
+        }
+        throw new IllegalArgumentException("Value " + value + " cannot be compared with a column of type " + type.getSimpleName());
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) return type;
+        if (type == int.class) return Integer.class;
+        if (type == double.class) return Double.class;
+        if (type == long.class) return Long.class;
+        if (type == boolean.class) return Boolean.class;
+        return type;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object value, Object other) {
+        if (!(value instanceof Comparable comparable)) {
+            return Objects.equals(value, other) ? 0 : 1;
+        }
+        return comparable.compareTo(other);
+    }
+}
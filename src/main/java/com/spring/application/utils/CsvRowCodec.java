@@ -0,0 +1,165 @@
+package com.spring.application.utils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Codec of the rows of a table stored as CSV lines, compiled once from the fields of the entity
+ * Every cell is parsed as the type of its field, without guessing the type and without intermediate map
+ * The lines are the same as the ones of StringUtils.parseCSVLine and StringUtils.encodeCSVLine
+ *
+ * @param <T> The entity stored in the table
+ */
+class CsvRowCodec<T> {
+
+    private static final String FAKE_DELIMITER = "#FAKE_DELIMITER#";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(DateUtils.YMDHMS);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(DateUtils.YMD);
+
+    private record Slot(EntityMapper.Property property, Function<String, Object> parser) {
+    }
+
+    private final EntityMapper<T> mapper;
+    private final String delimiter;
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final Map<List<String>, Slot[]> layouts = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> builder = ThreadLocal.withInitial(StringBuilder::new);
+
+    CsvRowCodec(Class<T> entity, String delimiter) {
+        this.mapper = EntityMapper.of(entity);
+        this.delimiter = delimiter;
+        // Same keys as ObjectUtils.mapToObject
+        for (EntityMapper.Property property : mapper.properties()) {
+            slots.putIfAbsent(property.key(), new Slot(property, parser(property.key(), property.type())));
+        }
+    }
+
+    /**
+     * Decode a line into a new entity
+     * Empty cells and cells of columns without field or with a field which cannot be written are ignored
+     *
+     * @param line   The CSV line
+     * @param header The columns of the line
+     * @return The entity
+     */
+    T decode(String line, List<String> header) {
+        Slot[] layout = layouts.computeIfAbsent(header, columns -> columns.stream().map(slots::get).toArray(Slot[]::new));
+        T row = mapper.newInstance();
+        int start = 0;
+        for (int i = 0; i < layout.length && start <= line.length(); i++) {
+            int end = line.indexOf(delimiter, start);
+            if (end < 0) end = line.length();
+            Slot slot = layout[i];
+            if (slot != null && slot.property().setter() != null) {
+                String cell = line.substring(start, end).trim();
+                if (!cell.isEmpty()) {
+                    slot.property().set(row, slot.parser().apply(cell));
+                }
+            }
+            start = end + delimiter.length();
+        }
+        return row;
+    }
+
+    /**
+     * Encode the columns of an entity as a CSV line
+     *
+     * @param row    The entity
+     * @param header The columns to write
+     * @return The CSV line
+     */
+    String encode(T row, List<String> header) {
+        StringBuilder line = builder.get();
+        line.setLength(0);
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) line.append(delimiter);
+            Slot slot = slots.get(header.get(i));
+            append(line, slot == null ? null : slot.property().get(row));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Get the parser of the cells of a column, giving the value the field of the entity would hold
+     *
+     * @param column The column
+     * @return The parser, an empty cell giving the default value of the field
+     */
+    Function<String, Object> parser(String column) {
+        Slot slot = slots.get(column);
+        if (slot == null) return cell -> null;
+        Object empty = defaultValue(slot.property().type());
+        return cell -> {
+            String value = cell.trim();
+            return value.isEmpty() ? empty : slot.parser().apply(value);
+        };
+    }
+
+    /**
+     * Encode a single value as a CSV cell
+     *
+     * @param value The value
+     * @return The cell
+     */
+    String encodeValue(Object value) {
+        StringBuilder cell = new StringBuilder();
+        append(cell, value);
+        return cell.toString();
+    }
+
+    private void append(StringBuilder line, Object value) {
+        if (value instanceof LocalDateTime localDateTime) {
+            line.append(DATE_TIME_FORMAT.format(localDateTime));
+        } else if (value instanceof LocalDate localDate) {
+            line.append(DATE_FORMAT.format(localDate.atStartOfDay()));
+        } else if (value instanceof Integer || value instanceof Double) {
+            line.append(value);
+        } else if (value instanceof Boolean boolValue) {
+            line.append(boolValue ? "true" : "false");
+        } else {
+            String text = StringUtils.toString(value);
+            line.append('"').append(text.contains(delimiter) ? text.replace(delimiter, FAKE_DELIMITER) : text).append('"');
+        }
+    }
+
+    private Function<String, Object> parser(String column, Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return cell -> NumberUtils.toInt(unquote(cell));
+        } else if (type == double.class || type == Double.class) {
+            return cell -> NumberUtils.toDouble(unquote(cell));
+        } else if (type == boolean.class || type == Boolean.class) {
+            return cell -> Boolean.parseBoolean(unquote(cell));
+        } else if (type == LocalDateTime.class) {
+            // Null dates are written as empty quoted values
+            return cell -> unquote(cell).isEmpty() ? null : LocalDateTime.parse(unquote(cell), DATE_TIME_FORMAT);
+        } else if (type == LocalDate.class) {
+            return cell -> unquote(cell).isEmpty() ? null : LocalDate.parse(unquote(cell), DATE_FORMAT);
+        } else if (type == String.class) {
+            return cell -> unquote(cell).replace(FAKE_DELIMITER, delimiter);
+        }
+
+        // Other types keep the guessed value when the field can hold it
+        return cell -> {
+            Object value = StringUtils.parseCSVLine(cell, List.of(column), delimiter).get(column);
+            if (value != null && !type.isInstance(value)) {
+                throw new IllegalArgumentException("Unsupported target type: " + type.getName());
+            }
+            return value;
+        };
+    }
+
+    private static String unquote(String cell) {
+        return cell.length() >= 2 && cell.startsWith("\"") && cell.endsWith("\"") ? cell.substring(1, cell.length() - 1) : cell;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == int.class) return 0;
+        if (type == double.class) return 0.0;
+        if (type == boolean.class) return false;
+        return null;
+    }
+}
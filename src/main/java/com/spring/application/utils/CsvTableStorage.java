@@ -0,0 +1,190 @@
+package com.spring.application.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Table stored in a single CSV file
+ * Inserts are appended to the file, updates and deletes rewrite it
+ *
+ * @param <T> The entity stored in the table
+ */
+class CsvTableStorage<T> extends TextTableStorage<T> {
+
+    CsvTableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner) {
+        super(entity, tableName, folder, wal, scanner);
+    }
+
+    @Override
+    List<T> read(TableSnapshot snapshot) throws IOException {
+        if (snapshot.size(tablePath) == 0) return List.of();
+        return scan(snapshot, List.of(), null);
+    }
+
+    @Override
+    TextFiles textFiles(TableSnapshot snapshot) throws IOException {
+        FileChannel channel = snapshot.channel(tablePath);
+        List<String> header = List.of(readLine(channel, 0).split(DELIMITER));
+        return new TextFiles(header, List.of(new TextFile(channel, snapshot.size(tablePath), line -> line.offset() == 0 ? null : line)));
+    }
+
+    @Override
+    Optional<T> read(TableSnapshot snapshot, String hashId) throws IOException {
+        Long offset = snapshot.primaryKeys().get(hashId);
+        if (offset == null) return Optional.empty();
+        FileChannel channel = snapshot.channel(tablePath);
+        return Optional.of(decodeLine(readLine(channel, offset), List.of(readLine(channel, 0).split(DELIMITER))));
+    }
+
+    @Override
+    void insert(List<T> entities) throws IOException {
+        // Check unity constraint based on ID columns
+        List<String> idToInsert = idColumns.isEmpty() ? List.of() : entities.stream().map(this::hashId).toList();
+        if (!idColumns.isEmpty()) {
+            checkUniqueness(idToInsert);
+        }
+
+        // Transform entity to CSV line
+        List<String> header = header();
+        List<String> linesToInsert = entities.stream().map(entity -> encodeLine(entity, header)).toList();
+
+        // Write lines into table
+        long start = wal.size(tablePath);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        List<Long> offsets = writeLines(content, start, linesToInsert);
+        wal.append(tablePath, content.toByteArray());
+
+        // Register the new rows in the primary key index
+        if (!idColumns.isEmpty()) {
+            Map<String, Long> entries = new LinkedHashMap<>();
+            Map<String, T> rows = new LinkedHashMap<>();
+            for (int i = 0; i < idToInsert.size(); i++) {
+                entries.put(idToInsert.get(i), offsets.get(i));
+                rows.put(idToInsert.get(i), entities.get(i));
+            }
+            index.append(entries, version());
+            updateIndexes(rows, List.of());
+        }
+    }
+
+    @Override
+    void write(Map<String, T> rows, Set<String> hashIds) throws IOException {
+        // Split the rows between existing rows and new rows
+        PrimaryKeyIndex primaryKeys = loadIndex();
+        List<String> header = header();
+        Map<Long, String> replacements = new HashMap<>();
+        List<T> toInsert = new ArrayList<>();
+        rows.forEach((hashId, row) -> {
+            Long offset = primaryKeys.get(hashId);
+            if (offset == null) {
+                toInsert.add(row);
+            } else {
+                replacements.put(offset, encodeLine(row, header));
+            }
+        });
+        Set<Long> offsetsToDelete = hashIds.stream()
+                .map(primaryKeys::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        // Only new rows, they are appended to the file
+        if (replacements.isEmpty() && offsetsToDelete.isEmpty()) {
+            if (!toInsert.isEmpty()) {
+                insert(toInsert);
+            }
+            return;
+        }
+
+        // Copy the remaining lines without decoding them, replace the existing lines in place and append the new ones
+        List<RawLine> lines = readRawLines(tablePath);
+        Map<Long, String> idsByOffset = primaryKeys.byOffset();
+        List<String> linesToWrite = new ArrayList<>(lines.size() + toInsert.size());
+        List<String> hashIdsToWrite = new ArrayList<>(lines.size() + toInsert.size());
+        for (RawLine line : lines.subList(1, lines.size())) {
+            if (!offsetsToDelete.contains(line.offset())) {
+                linesToWrite.add(replacements.getOrDefault(line.offset(), line.text()));
+                hashIdsToWrite.add(idsByOffset.get(line.offset()));
+            }
+        }
+        for (T entity : toInsert) {
+            linesToWrite.add(encodeLine(entity, header));
+            hashIdsToWrite.add(hashId(entity));
+        }
+        rewrite(lines.getFirst().text(), linesToWrite, hashIdsToWrite);
+        updateIndexes(rows, hashIds);
+    }
+
+    @Override
+    void delete(Predicate<T> where) throws IOException {
+        List<RawLine> lines = readRawLines(tablePath);
+
+        // If no lines, nothing to delete
+        if (lines.size() <= 1) return;
+
+        List<String> header = List.of(lines.getFirst().text().split(DELIMITER));
+        List<RawLine> rows = lines.subList(1, lines.size());
+        List<T> objects = scanner.map(rows, line -> decodeLine(line.text(), header));
+        List<Integer> linesToKeep = where == null ? List.of() : IntStream.range(0, rows.size()).filter(i -> !where.test(objects.get(i))).boxed().toList();
+
+        // No lines to delete
+        if (linesToKeep.size() == rows.size()) {
+            return;
+        }
+
+        // Rewrite the file with the remaining lines
+        rewrite(lines.getFirst().text(),
+                linesToKeep.stream().map(i -> rows.get(i).text()).toList(),
+                idColumns.isEmpty() ? null : linesToKeep.stream().map(i -> hashId(objects.get(i))).toList());
+        if (!secondaryIndexes.isEmpty()) {
+            Set<Integer> kept = new HashSet<>(linesToKeep);
+            updateIndexes(Map.of(), IntStream.range(0, rows.size()).filter(i -> !kept.contains(i)).mapToObj(i -> hashId(objects.get(i))).toList());
+        }
+    }
+
+    @Override
+    protected String version() throws IOException {
+        return version(tablePath);
+    }
+
+    @Override
+    protected Map<String, Long> buildIndex() throws IOException {
+        List<RawLine> lines = readRawLines(tablePath);
+        List<String> header = lines.isEmpty() ? List.of() : List.of(lines.getFirst().text().split(DELIMITER));
+        Map<String, Long> entries = new LinkedHashMap<>();
+        lines.stream().skip(1).forEach(line -> entries.put(hashId(decodeLine(line.text(), header)), line.offset()));
+        return entries;
+    }
+
+    private void rewrite(String header, List<String> lines, List<String> hashIds) throws IOException {
+        // Write the new content in a temporary file, then replace the table file atomically
+        Path temporary = wal.temporary(tablePath);
+        List<Long> offsets = new ArrayList<>(lines.size());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            long position = writeLine(out, header);
+            for (String line : lines) {
+                offsets.add(position);
+                position += writeLine(out, line);
+            }
+        }
+        wal.replace(tablePath, temporary);
+
+        // Offsets have changed, the primary key index is rebuilt from the written lines
+        if (hashIds != null) {
+            Map<String, Long> entries = new LinkedHashMap<>();
+            for (int i = 0; i < hashIds.size(); i++) {
+                entries.put(hashIds.get(i), offsets.get(i));
+            }
+            index.rewrite(entries, version());
+        }
+    }
+}
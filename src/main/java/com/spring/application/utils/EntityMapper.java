@@ -0,0 +1,188 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.Column;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Accessors of the fields of an entity class, built once per class with method handles
+ * Reading or writing a field afterward does not use reflection
+ * The fields are found by column name for the fields annotated with @Column, by field name otherwise
+ *
+ * @param <T> The entity class
+ */
+final class EntityMapper<T> {
+
+    private static final ClassValue<EntityMapper<?>> MAPPERS = new ClassValue<>() {
+        @Override
+        protected EntityMapper<?> computeValue(Class<?> type) {
+            return new EntityMapper<>(type);
+        }
+    };
+
+    /**
+     * Accessors of a field
+     *
+     * @param key    The column name, or the field name if the field is not a column
+     * @param type   The type of the field
+     * @param column true if the field is annotated with @Column
+     * @param getter The getter, taking the entity as Object and returning the value as Object
+     * @param setter The setter, taking the entity and the value as Object, null for fields which cannot be written
+     */
+    record Property(String key, Class<?> type, boolean column, MethodHandle getter, MethodHandle setter) {
+
+        Object get(Object row) {
+            try {
+                return (Object) getter.invokeExact(row);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Unable to read the field " + key, e);
+            }
+        }
+
+        void set(Object row, Object value) {
+            if (setter == null) {
+                throw new IllegalStateException("The field " + key + " cannot be written");
+            }
+            try {
+                setter.invokeExact(row, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Unable to write the field " + key, e);
+            }
+        }
+    }
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final List<Property> properties;
+    private final Map<String, Property> byKey = new HashMap<>();
+
+    private EntityMapper(Class<T> type) {
+        this.type = type;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            MethodHandle noArgs;
+            try {
+                noArgs = lookup.findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException e) {
+                noArgs = null;
+            }
+            this.constructor = noArgs;
+
+            List<Property> list = new ArrayList<>();
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                boolean column = field.isAnnotationPresent(Column.class);
+                String key = column ? field.getAnnotation(Column.class).name() : field.getName();
+                MethodHandle getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                MethodHandle setter = setter(lookup, field);
+                Property property = new Property(key, field.getType(), column, getter, setter);
+                list.add(property);
+                byKey.putIfAbsent(key, property);
+            }
+            this.properties = List.copyOf(list);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access the fields of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Get the setter of a field
+     * Final fields are written as the reflective mapping did, except the fields of records and hidden classes
+     *
+     * @param lookup The lookup of the class
+     * @param field  The field
+     * @return The setter or null if the field cannot be written
+     */
+    private static MethodHandle setter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        MethodType type = MethodType.methodType(void.class, Object.class, Object.class);
+        if (!Modifier.isFinal(field.getModifiers())) {
+            return lookup.unreflectSetter(field).asType(type);
+        }
+        try {
+            field.setAccessible(true);
+            return lookup.unreflectSetter(field).asType(type);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the mapper of a class, built on first use
+     *
+     * @param type The class
+     * @return The mapper
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMapper<T> of(Class<T> type) {
+        return (EntityMapper<T>) MAPPERS.get(type);
+    }
+
+    /**
+     * Create an instance with the constructor without arguments
+     *
+     * @return The instance
+     */
+    @SuppressWarnings("unchecked")
+    T newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException(type.getName() + " has no constructor without arguments");
+        }
+        try {
+            return (T) (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create an instance of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Get the non-static fields in declaration order
+     *
+     * @return The properties
+     */
+    List<Property> properties() {
+        return properties;
+    }
+
+    /**
+     * Get a field by column name, or by field name if it is not a column
+     *
+     * @param key The key
+     * @return The property or null if none matches
+     */
+    Property property(String key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * Get the value of a column of an entity
+     *
+     * @param row    The entity
+     * @param column The column name
+     * @return The value or null if the entity has no such column
+     */
+    Object getColumn(Object row, String column) {
+        Property property = byKey.get(column);
+        return property == null || !property.column() ? null : property.get(row);
+    }
+
+    /**
+     * Copy an entity, the values of the fields are shared
+     *
+     * @param row The entity to copy
+     * @return A new instance holding the same values
+     */
+    T copy(T row) {
+        T copy = newInstance();
+        for (Property property : properties) {
+            if (property.setter() != null) {
+                property.set(copy, property.get(row));
+            }
+        }
+        return copy;
+    }
+}
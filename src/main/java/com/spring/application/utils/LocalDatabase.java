@@ -1,27 +1,42 @@
 package com.spring.application.utils;
 
+import com.spring.application.annotations.Partitioned;
+import com.spring.application.annotations.TableFormat;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.Column;
-import jakarta.persistence.Id;
 import jakarta.persistence.NonUniqueResultException;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.Table;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -32,12 +47,90 @@ public class LocalDatabase {
 
     @Value("${spring.datasource.url}")
     private String databaseFolder;
+    @Value("${localdatabase.storage:csv}")
+    private String storageMode = "csv";
+    @Value("${localdatabase.format:csv}")
+    private String tableFormat = "csv";
+    @Value("${localdatabase.compression:none}")
+    private String compression = "none";
+    @Value("${localdatabase.log.segment-size:16777216}")
+    private long segmentSize = 16777216;
+    @Value("${localdatabase.compaction.garbage-ratio:0.5}")
+    private double garbageRatio = 0.5;
+    @Value("${localdatabase.write-batching:false}")
+    private boolean writeBatching = false;
+    @Value("${localdatabase.cache.max-bytes:67108864}")
+    private long cacheMaxBytes = 67108864;
+    @Value("${localdatabase.wal.sync:os}")
+    private String walSync = "os";
+    @Value("${localdatabase.wal.group-commit-ms:10}")
+    private long groupCommitMillis = 10;
+    @Value("${localdatabase.wal.checkpoint-size:67108864}")
+    private long checkpointSize = 67108864;
+    @Value("${localdatabase.partition.folders:}")
+    private String partitionFolders = "";
+    @Value("${localdatabase.scan.parallelism:0}")
+    private int scanParallelism = 0;
+    @Value("${localdatabase.scan.chunk-size:4194304}")
+    private long scanChunkSize = 4194304;
+    @Value("${localdatabase.changes.tail-size:0}")
+    private int changesTailSize = 0;
     private static final ConcurrentHashMap<String, ReadWriteLock> tableLocks = new ConcurrentHashMap<>();
+    private static final Map<Path, SharedLog> writeAheadLogs = new HashMap<>();
+    private static final Lock writeAheadLogsLock = new ReentrantLock();
+    private static final int LOAD_CHUNK_ROWS = 65536;
+    private static final int CSV_BUFFER_SIZE = 1 << 16;
+    private static final int WARM_UP_SAMPLE = 10000;
+    private final ConcurrentHashMap<String, TableStorage<?>> storages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<TableStorage<?>>> partitions = new ConcurrentHashMap<>();
+    // Storages are created under a lock rather than a monitor, their write-ahead log may be replayed meanwhile
+    private final Lock storagesLock = new ReentrantLock();
+    private final ConcurrentHashMap<String, WriteQueue<?>> writeQueues = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MaterializedView<?>> views = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, WriteAheadLog> logs = new ConcurrentHashMap<>();
+    // The components created on first use are guarded by a lock rather than a monitor, virtual threads wait on it
+    private final Lock componentsLock = new ReentrantLock();
+    private RowCache rowCache;
+    private volatile boolean recovered;
+    private TableScanner scanner;
+    private ChangeLog changeLog;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "local-database-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService partitionExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-database-partition");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public LocalDatabase(String databaseFolder) {
         this.databaseFolder = databaseFolder;
     }
 
+    @FunctionalInterface
+    private interface PartitionTask<T, R> {
+        R run(TableStorage<T> partition) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LockedTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Write-ahead log of a folder shared by the instances using the folder, closed by the last one
+     */
+    private static final class SharedLog {
+        private final WriteAheadLog wal;
+        private int references;
+
+        private SharedLog(WriteAheadLog wal) {
+            this.wal = wal;
+        }
+    }
+
     public <T> void create(Class<T> entity) throws IOException {
         String tableName = getTableName(entity);
         List<String> columns = getColumns(entity);
@@ -48,19 +141,26 @@ public class LocalDatabase {
             throw new IllegalArgumentException("Columns cannot be null or empty");
         }
 
-        Path filePath = getTablePath(tableName);
-        if (Files.exists(filePath)) {
+        if (exists(tableName)) {
             throw new IOException("Table " + tableName + " already exists in the database folder: " + databaseFolder);
         }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW)) {
-            writer.write(String.join(";", columns));
-            writer.newLine();
+        Partitioned partitioned = entity.getAnnotation(Partitioned.class);
+        for (int i = 0; partitioned != null && i < partitioned.count(); i++) {
+            Files.createDirectories(getPartitionFolder(i));
+        }
+
+        // The storage writes the empty table file in its own format, every partition has its own file
+        for (TableStorage<T> storage : getPartitions(entity)) {
+            Path temporary = storage.wal.temporary(storage.tablePath);
+            Files.write(temporary, storage.emptyTable(), StandardOpenOption.CREATE_NEW);
+            storage.clear();
+            storage.wal.replace(storage.tablePath, temporary);
         }
     }
 
     public <T> List<T> query(Class<T> entity) throws IOException {
-        return query(entity, null);
+        return query(entity, (Predicate<T>) null);
     }
 
     public <T> List<T> query(Class<T> entity, Predicate<T> where) throws IOException {
@@ -73,29 +173,292 @@ public class LocalDatabase {
         validateDatabaseFolder();
         validateTable(tableName);
 
-        ReadWriteLock lock = tableLocks.computeIfAbsent(tableName, k -> new ReentrantReadWriteLock());
-        lock.readLock().lock();
-        List<T> result = new ArrayList<>();
-        try {
-            Path filePath = getTablePath(tableName);
-            List<T> lines = getLines(filePath, entity);
-            if (lines.isEmpty()) return List.of();
-
-            result = lines.stream()
-                    .parallel()
-                    .filter(obj -> where == null || where.test(obj))
-                    .sorted((a, b) -> {
-                        if (order == null) {
-                            return 0;
-                        }
-                        return order.compare(a, b);
-                    }).collect(Collectors.toList());
-        } finally {
-            lock.readLock().unlock();
+        return merge(fanOut(getPartitions(entity), storage -> {
+            try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                return query(storage, snapshot, where, order);
+            }
+        }), order);
+    }
+
+    public <T> List<T> query(Class<T> entity, Predicate<T> where, Comparator<T> order, int offset, int limit) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative");
+        }
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+
+        // Cached rows are read when the version is cached, otherwise the rows are decoded lazily up to the page
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        TableStorage<T> storage = partitions.getFirst();
+        boolean cached = getRowCache().isEnabled();
+        try (Stream<T> rows = open(partitions, cached)) {
+            Stream<T> matching = rows.filter(obj -> where == null || where.test(obj));
+
+            // Without order the scan stops at the limit, otherwise only the first offset + limit rows are kept
+            List<T> page = order == null
+                    ? matching.skip(offset).limit(limit).toList()
+                    : first(matching, order, (long) offset + limit).stream().skip(offset).toList();
+            return page.stream()
+                    .map(obj -> cached ? storage.copy(obj) : obj)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
+
+    public <T> List<T> query(Class<T> entity, Criteria criteria) throws IOException {
+        return query(entity, criteria, null);
+    }
+
+    public <T> List<T> query(Class<T> entity, Criteria criteria, Comparator<T> order) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+        if (criteria == null) {
+            throw new IllegalArgumentException("Criteria cannot be null");
+        }
+
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        List<Criteria.Condition> conditions = criteria.resolve(partitions.getFirst().columnTypes);
+        Predicate<T> matches = Criteria.compile(conditions, partitions.getFirst()::value);
+        return merge(fanOut(partitions, storage -> query(storage, conditions, matches, order)), order);
+    }
+
+    public <T> long count(Class<T> entity) throws IOException {
+        return count(entity, null);
+    }
+
+    public <T> long count(Class<T> entity, Criteria criteria) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+
+        // Every row of a version has an entry in the primary key index, the table is not read
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        if (criteria == null && !partitions.getFirst().getIdColumns().isEmpty()) {
+            long count = 0;
+            for (long rows : fanOut(partitions, storage -> {
+                try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                    return (long) snapshot.primaryKeys().size();
+                }
+            })) {
+                count += rows;
+            }
+            return count;
+        }
+        List<Map<String, Object>> total = aggregate(entity, criteria, Aggregation.all().count());
+        return (long) total.getFirst().get("COUNT");
+    }
+
+    public <T> List<Map<String, Object>> aggregate(Class<T> entity, Aggregation aggregation) throws IOException {
+        return aggregate(entity, null, aggregation);
+    }
+
+    /**
+     * Compute aggregates over the rows of a table matching a criteria
+     * The aggregates are computed in a single pass over the raw values of the columns, without mapping the rows to
+     * entities, in parallel by chunks of the table files
+     *
+     * @param entity      The entity stored in the table
+     * @param criteria    The conditions on the rows, null for all the rows
+     * @param aggregation The grouped columns and the aggregates
+     * @return The values of the grouped columns and of the aggregates of every group, ordered by grouped columns
+     */
+    public <T> List<Map<String, Object>> aggregate(Class<T> entity, Criteria criteria, Aggregation aggregation) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+        if (aggregation == null) {
+            throw new IllegalArgumentException("Aggregation cannot be null");
+        }
+
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        List<Criteria.Condition> conditions = criteria == null ? List.of() : criteria.resolve(partitions.getFirst().columnTypes);
+        Aggregation.Plan plan = aggregation.resolve(partitions.getFirst().columnTypes);
+        Aggregation.Groups result = plan.newGroups();
+        fanOut(partitions, storage -> {
+            try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                return storage.aggregate(snapshot, conditions, plan);
+            }
+        }).forEach(result::merge);
+        return result.results();
+    }
+
+    /**
+     * Create a view holding the rows of a table matching a predicate in memory, updated by every write of the table
+     * Views are not persisted, they are created again when the application starts
+     *
+     * @param name   The name of the view
+     * @param entity The entity stored in the table, which must have id columns
+     * @param where  The predicate, null for every row
+     */
+    public <T> void createView(String name, Class<T> entity, Predicate<T> where) throws IOException {
+        List<TableStorage<T>> partitions = viewPartitions(name, entity);
+        if (partitions.getFirst().getIdColumns().isEmpty()) {
+            throw new IllegalArgumentException("Entity must have at least one ID column to be used in a row view");
+        }
+
+        // The rows are read under the write locks of the table, the view receives every later write
+        withWriteLocks(partitions, () -> register(new MaterializedView.Rows<>(name, entity, where, partitions.getFirst()::hashId, viewRows(partitions, where))));
+    }
+
+    public <T> void createView(String name, Class<T> entity, Aggregation aggregation) throws IOException {
+        createView(name, entity, null, aggregation);
+    }
+
+    /**
+     * Create a view holding the aggregates of the rows of a table matching a criteria in memory, updated by every
+     * write of the table
+     * Counts, sums and averages are updated from the written rows, a minimum or a maximum is computed again from the
+     * table at the next read when the row holding it is updated or deleted
+     * Views are not persisted, they are created again when the application starts
+     *
+     * @param name        The name of the view
+     * @param entity      The entity stored in the table
+     * @param criteria    The conditions on the rows, null for all the rows
+     * @param aggregation The grouped columns and the aggregates
+     */
+    public <T> void createView(String name, Class<T> entity, Criteria criteria, Aggregation aggregation) throws IOException {
+        List<TableStorage<T>> partitions = viewPartitions(name, entity);
+        if (aggregation == null) {
+            throw new IllegalArgumentException("Aggregation cannot be null");
+        }
+        TableStorage<T> first = partitions.getFirst();
+        List<Criteria.Condition> conditions = criteria == null ? List.of() : criteria.resolve(first.columnTypes);
+        Aggregation.Plan plan = aggregation.resolve(first.columnTypes);
+        withWriteLocks(partitions, () -> register(new MaterializedView.Aggregates<>(name, entity, conditions, plan, first, aggregate(partitions, conditions, plan))));
+    }
+
+    /**
+     * Read the rows of a view created by createView(name, entity, where), without reading the table
+     *
+     * @param name   The name of the view
+     * @param entity The entity stored in the table
+     * @return The rows of the view, which are shared and must not be changed
+     */
+    public <T> List<T> queryView(String name, Class<T> entity) {
+        MaterializedView<?> view = views.get(name);
+        if (!(view instanceof MaterializedView.Rows<?> rows) || view.entity != entity) {
+            throw new IllegalArgumentException("No row view " + name + " of the table " + getTableName(entity));
+        }
+        @SuppressWarnings("unchecked")
+        List<T> result = (List<T>) rows.rows();
         return result;
     }
 
+    /**
+     * Read the aggregates of a view created by createView(name, entity, criteria, aggregation)
+     * The table is read only if a minimum or a maximum has to be computed again
+     *
+     * @param name The name of the view
+     * @return The values of the grouped columns and of the aggregates of every group, ordered by grouped columns
+     */
+    public List<Map<String, Object>> aggregateView(String name) throws IOException {
+        MaterializedView<?> view = views.get(name);
+        if (!(view instanceof MaterializedView.Aggregates<?> aggregates)) {
+            throw new IllegalArgumentException("No aggregate view " + name);
+        }
+        return aggregateView(aggregates);
+    }
+
+    /**
+     * Drop a view, its table is not changed
+     *
+     * @param name The name of the view
+     */
+    public void dropView(String name) {
+        MaterializedView<?> view = views.remove(name);
+        if (view != null) {
+            getChangeLog().unregister(getTableName(view.entity), view);
+        }
+    }
+
+    public <T> List<T> findBy(Class<T> entity, String column, Object value) throws IOException {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        return findByIndex(entity, column, value, value);
+    }
+
+    public <T> List<T> findBetween(Class<T> entity, String column, Object from, Object to) throws IOException {
+        return findByIndex(entity, column, from, to);
+    }
+
+    private <T> List<T> findByIndex(Class<T> entity, String column, Object from, Object to) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+        if (!getColumns(entity).contains(column)) {
+            throw new IllegalArgumentException("Column " + column + " does not exist in the table " + tableName);
+        }
+
+        return merge(fanOut(getPartitions(entity), storage -> {
+            try (TableSnapshot snapshot = snapshot(storage, List.of(column))) {
+                Set<String> hashIds = storage.lookup(snapshot, column, from, to);
+                if (hashIds == null) {
+                    // Column without index, or index changed since the version was taken, the version is scanned
+                    return query(storage, snapshot, obj -> SecondaryIndex.between(storage.value(obj, column), from, to), null);
+                }
+                List<T> result = new ArrayList<>();
+                for (String hashId : hashIds) {
+                    storage.read(snapshot, hashId).ifPresent(result::add);
+                }
+                return result;
+            }
+        }), null);
+    }
+
+    public <T> Stream<T> stream(Class<T> entity) throws IOException {
+        return stream(entity, null);
+    }
+
+    public <T> Stream<T> stream(Class<T> entity, Predicate<T> where) throws IOException {
+        String tableName = getTableName(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+
+        // The stream reads the versions of the table taken when it was opened and must be closed to release them
+        Stream<T> rows = open(getPartitions(entity), false);
+        return where == null ? rows : rows.filter(where);
+    }
+
+    public <T> void forEach(Class<T> entity, Predicate<T> where, Consumer<T> action) throws IOException {
+        try (Stream<T> rows = stream(entity, where)) {
+            rows.forEach(action);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public <T> Optional<T> findById(Class<T> entity, Object... ids) throws IOException {
+        String tableName = getTableName(entity);
+        List<String> idColumns = getIdColumns(entity);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+        if (idColumns.isEmpty()) {
+            throw new IllegalArgumentException("Entity must have at least one ID column to perform a lookup by id");
+        }
+        if (ids == null || ids.length != idColumns.size()) {
+            throw new IllegalArgumentException("Table " + tableName + " expects " + idColumns.size() + " id value(s)");
+        }
+
+        TableStorage<T> storage = partitionById(getPartitions(entity), ids);
+        try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+            return storage.read(snapshot, TableStorage.hashId(ids));
+        }
+    }
+
     public <T> void insert(T entity) throws IOException {
         insert(List.of(entity));
     }
@@ -110,36 +473,138 @@ public class LocalDatabase {
         validateDatabaseFolder();
         validateTable(tableName);
 
-        ReadWriteLock lock = tableLocks.computeIfAbsent(tableName, k -> new ReentrantReadWriteLock());
-        lock.writeLock().lock();
-        try {
-            // Check unity constraint based on ID columns
-            List<String> idColumns = getIdColumns(first.getClass());
-            if (!idColumns.isEmpty()) {
-                Set<String> existingIdValues = query(first.getClass(), null).stream().map(entity -> getHashId(entity, idColumns)).collect(Collectors.toSet());
-                List<String> idToInsert = entities.stream().map(entity -> getHashId(entity, idColumns)).toList();
-                if (idToInsert.stream().distinct().count() != idToInsert.size() || existingIdValues.stream().anyMatch(idToInsert::contains)) {
-                    throw new NonUniqueResultException("Some entities already exist in the table " + tableName + " and were not inserted.");
-                }
+        // Every partition is written under its own lock, the partitions are written in parallel
+        Map<TableStorage<T>, List<T>> groups = group(getPartitions(safeCast(first.getClass())), entities);
+        fanOut(List.copyOf(groups.keySet()), storage -> {
+            List<T> rows = groups.get(storage);
+            if (writeBatching && !storage.getIdColumns().isEmpty()) {
+                getWriteQueue(storage).execute(WriteQueue.Kind.INSERT, rows);
+                return null;
             }
 
-            // Transform entity to CSV line
-            Path filePath = getTablePath(tableName);
-            List<String> header = getHeader(filePath);
-            List<String> linesToInsert = entities.stream().map(entity -> {
-                LinkedHashMap<String, Object> toWrite;
-                toWrite = new LinkedHashMap<>();
-                for (String col : header) {
-                    toWrite.put(col, getValue(entity, col));
-                }
-                return StringUtils.encodeCSVLine(toWrite, ";");
-            }).toList();
+            ReadWriteLock lock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock());
+            lock.writeLock().lock();
+            ChangeLog.Capture<T> capture = getChangeLog().capture(storage, tableName);
+            try {
+                storage.insert(rows);
+                capture.inserted(rows);
+            } finally {
+                storage.changed();
+                capture.publish();
+                lock.writeLock().unlock();
+            }
+            return null;
+        });
+    }
 
-            // Write lines into table
-            Files.write(filePath, linesToInsert, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-        } finally {
-            lock.writeLock().unlock();
+    /**
+     * Load new rows in bulk, see load(entity, iterator)
+     *
+     * @param entity The entity stored in the table
+     * @param rows   The rows, consumed once
+     * @return The number of loaded rows
+     */
+    public <T> long load(Class<T> entity, Stream<T> rows) throws IOException {
+        return load(entity, rows.iterator());
+    }
+
+    /**
+     * Load new rows in bulk, much faster than insert for a large number of rows
+     * The rows are read by chunks, encoded in parallel and appended to a copy of the table files, which replaces them
+     * once every row is written: the rows are written once, outside the write-ahead log, and a load is written as a
+     * whole or not at all
+     * The ids are checked once every row is written, none of them may exist in the table
+     * The table is locked for writes during the whole load, the readers keep reading the previous version
+     * The files of the partitions are replaced with a single commit record of the write-ahead log, which only covers
+     * its folder: a table whose partitions are stored in several partition folders cannot be loaded
+     * The loaded rows are kept in memory for the change events up to a chunk of rows, past it only the last rows the
+     * tail of changes can hold are published and the views of the table are computed again from the table
+     *
+     * @param entity The entity stored in the table
+     * @param rows   The rows, consumed once
+     * @return The number of loaded rows
+     * @throws IllegalArgumentException if the partitions of the table are stored in several folders
+     */
+    public <T> long load(Class<T> entity, Iterator<T> rows) throws IOException {
+        validateDatabaseFolder();
+        validateTable(getTableName(entity));
+
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        if (partitions.stream().anyMatch(storage -> storage.wal != partitions.getFirst().wal)) {
+            throw new IllegalArgumentException("Table " + getTableName(entity) + " has partitions stored in several folders and cannot be loaded");
+        }
+        long[] count = {0};
+        withWriteLocks(partitions, () -> count[0] = load(partitions, rows));
+        return count[0];
+    }
+
+    /**
+     * Load new rows in bulk from CSV text, as written by export
+     * The first line is the header, holding the column names
+     *
+     * @param entity The entity stored in the table
+     * @param in     The CSV text, read as UTF-8 and not closed
+     * @return The number of loaded rows
+     */
+    public <T> long load(Class<T> entity, InputStream in) throws IOException {
+        validateDatabaseFolder();
+        validateTable(getTableName(entity));
+
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        TableStorage<T> storage = partitions.getFirst();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+        String first = reader.readLine();
+        if (first == null) return 0;
+        List<String> header = List.of(first.split(TableStorage.DELIMITER));
+        try {
+            return load(entity, reader.lines().filter(line -> !line.isEmpty()).map(line -> storage.decodeLine(line, header)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the rows of a table as CSV text, the first line being the header holding the column names
+     * The rows are read lazily from the versions of the partitions and written through a buffer, tables stored as text
+     * copy their lines without decoding them
+     *
+     * @param entity The entity stored in the table
+     * @param out    The output, flushed and not closed
+     * @return The number of written rows
+     */
+    public <T> long export(Class<T> entity, OutputStream out) throws IOException {
+        validateDatabaseFolder();
+        validateTable(getTableName(entity));
+
+        List<TableStorage<T>> partitions = getPartitions(entity);
+        OutputStream buffered = new BufferedOutputStream(out, CSV_BUFFER_SIZE);
+        TableStorage.writeLine(buffered, String.join(TableStorage.DELIMITER, partitions.getFirst().columnTypes.keySet()));
+        long count = 0;
+        for (TableStorage<T> storage : partitions) {
+            try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                count += storage.export(snapshot, buffered);
+            }
         }
+        buffered.flush();
+        return count;
+    }
+
+    /**
+     * Prepare a table for its first queries, usually at start
+     * The primary key and secondary indexes of every partition are loaded and a version is published, the rows are
+     * read into the row cache when their decoded size, estimated from a sample of them, fits in it, otherwise only
+     * the sample is decoded
+     * The sampled rows are encoded again, so that both directions of the row codec are compiled before the first
+     * requests
+     *
+     * @param entity The entity stored in the table
+     * @return The number of decoded rows
+     */
+    public <T> long warmUp(Class<T> entity) throws IOException {
+        validateDatabaseFolder();
+        validateTable(getTableName(entity));
+
+        return fanOut(getPartitions(entity), this::warmUp).stream().mapToLong(Long::longValue).sum();
     }
 
     public <T> void delete(T entity) throws IOException {
@@ -152,16 +617,37 @@ public class LocalDatabase {
         }
         T first = entities.getFirst();
         List<String> idColumns = getIdColumns(first.getClass());
-        List<String> hashIds = idColumns.isEmpty() ? List.of() :
-                entities.stream()
-                        .map(entity -> getHashId(entity, idColumns))
-                        .distinct()
-                        .toList();
-        delete(first.getClass(), obj -> {
-            if (idColumns.isEmpty()) {
-                return entities.stream().anyMatch(e -> e.equals(obj));
-            }
-            return hashIds.contains(getHashId(obj, idColumns));
+        if (idColumns.isEmpty()) {
+            delete(first.getClass(), obj -> entities.stream().anyMatch(e -> e.equals(obj)));
+            return;
+        }
+        String tableName = getTableName(first);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+
+        Map<TableStorage<T>, List<T>> groups = group(getPartitions(safeCast(first.getClass())), entities);
+        fanOut(List.copyOf(groups.keySet()), storage -> {
+            List<T> rows = groups.get(storage);
+            if (writeBatching) {
+                getWriteQueue(storage).execute(WriteQueue.Kind.DELETE, rows);
+                return null;
+            }
+
+            ReadWriteLock lock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock());
+            lock.writeLock().lock();
+            ChangeLog.Capture<T> capture = getChangeLog().capture(storage, tableName);
+            try {
+                Set<String> hashIds = rows.stream().map(storage::hashId).collect(Collectors.toSet());
+                capture.before(hashIds);
+                storage.delete(hashIds);
+                capture.written(Map.of(), hashIds);
+            } finally {
+                storage.changed();
+                capture.publish();
+                lock.writeLock().unlock();
+            }
+            return null;
         });
     }
 
@@ -171,31 +657,21 @@ public class LocalDatabase {
         validateDatabaseFolder();
         validateTable(tableName);
 
-        ReadWriteLock lock = tableLocks.computeIfAbsent(tableName, k -> new ReentrantReadWriteLock());
-        lock.writeLock().lock();
-        try {
-            Path filePath = getTablePath(tableName);
-            List<T> lines = getLines(filePath, entity);
-
-            // If no lines, nothing to delete
-            if (lines.isEmpty()) return;
-
-            List<T> linesToKeep = where == null ? List.of() : lines.stream().parallel().filter(obj -> !where.test(obj)).toList();
-
-            // No lines to delete
-            if (linesToKeep.size() == lines.size()) {
-                return;
+        fanOut(getPartitions(entity), storage -> {
+            ReadWriteLock lock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock());
+            lock.writeLock().lock();
+            ChangeLog.Capture<T> capture = getChangeLog().capture(storage, tableName);
+            try {
+                capture.before(where);
+                storage.delete(where);
+                capture.deleted();
+            } finally {
+                storage.changed();
+                capture.publish();
+                lock.writeLock().unlock();
             }
-
-            // Truncate the file except the header
-            List<String> header = getHeader(filePath);
-            Files.write(filePath, List.of(String.join(";", header)), StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
-
-            // Write remaining lines
-            insert(linesToKeep);
-        } finally {
-            lock.writeLock().unlock();
-        }
+            return null;
+        });
     }
 
     public <T> void update(T entity) throws IOException {
@@ -215,22 +691,723 @@ public class LocalDatabase {
         if (idColumns.isEmpty()) {
             throw new IllegalArgumentException("Entity must have at least one ID column to perform an update");
         }
-        ReadWriteLock lock = tableLocks.computeIfAbsent(getTableName(first), k -> new ReentrantReadWriteLock());
-        lock.writeLock().lock();
-        try {
-            delete(entities);
-            insert(entities);
-        } finally {
-            lock.writeLock().unlock();
+        String tableName = getTableName(first);
+
+        validateDatabaseFolder();
+        validateTable(tableName);
+
+        List<TableStorage<T>> partitions = getPartitions(safeCast(first.getClass()));
+        List<String> idToUpdate = entities.stream().map(partitions.getFirst()::hashId).toList();
+        if (new HashSet<>(idToUpdate).size() != idToUpdate.size()) {
+            throw new NonUniqueResultException("Some entities are duplicated and were not updated in the table " + tableName + ".");
         }
+
+        Map<TableStorage<T>, List<T>> groups = group(partitions, entities);
+        fanOut(List.copyOf(groups.keySet()), storage -> {
+            List<T> rows = groups.get(storage);
+            if (writeBatching) {
+                getWriteQueue(storage).execute(WriteQueue.Kind.UPDATE, rows);
+                return null;
+            }
+
+            ReadWriteLock lock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock());
+            lock.writeLock().lock();
+            ChangeLog.Capture<T> capture = getChangeLog().capture(storage, tableName);
+            try {
+                Map<String, T> written = new LinkedHashMap<>();
+                rows.forEach(row -> written.put(storage.hashId(row), row));
+                capture.before(written.keySet());
+                storage.update(rows);
+                capture.written(written, Set.of());
+            } finally {
+                storage.changed();
+                capture.publish();
+                lock.writeLock().unlock();
+            }
+            return null;
+        });
     }
 
     public <T> void update(List<T> entities, Predicate<T> where) throws IOException {
         if (entities == null || entities.isEmpty()) {
             return;
         }
-        delete(safeCast(entities.getFirst().getClass()), where);
-        insert(entities);
+        Class<T> entity = safeCast(entities.getFirst().getClass());
+        if (getIdColumns(entity).isEmpty()) {
+            delete(entity, where);
+            insert(entities);
+            return;
+        }
+
+        // The delete and the insert are written together or not at all
+        transaction(tx -> {
+            tx.delete(entity, where);
+            tx.insert(entities);
+        });
+    }
+
+    /**
+     * Run a unit of work over one or several tables and commit its writes
+     * The writes are held until the work returns, then written with a single write of every table and a single
+     * commit record of the write-ahead log, so that they are all applied or none of them
+     * A commit record only covers the folder of its log: the tables written by a transaction must be stored in the
+     * same folder, a transaction writing partitions stored in several partition folders is rejected
+     * Nothing is written if the work throws an exception or rolls the transaction back
+     *
+     * @param work The work, reading and writing through the transaction
+     * @throws jakarta.persistence.OptimisticLockException if a row read or written by the transaction has been
+     *                                                     changed by another writer since it was first read
+     * @throws IllegalArgumentException                    if the written tables are stored in several folders
+     */
+    public void transaction(Transaction.Work work) throws IOException {
+        validateDatabaseFolder();
+        Transaction tx = new Transaction(this);
+        try {
+            work.run(tx);
+            if (!tx.isRolledBack()) {
+                commit(tx);
+            }
+        } finally {
+            tx.close();
+        }
+    }
+
+    private void commit(Transaction tx) throws IOException {
+        List<Transaction.TableChanges<?>> tables = List.copyOf(tx.tables());
+        List<Transaction.TableChanges<?>> written = tables.stream().filter(Transaction.TableChanges::isWritten).toList();
+        if (written.isEmpty()) return;
+        WriteAheadLog wal = written.getFirst().storage.wal;
+        if (written.stream().anyMatch(table -> table.storage.wal != wal)) {
+            throw new IllegalArgumentException("A transaction cannot write tables stored in several folders: "
+                    + written.stream().map(table -> table.storage.tableName).collect(Collectors.joining(", ")));
+        }
+
+        // Every table of the transaction is locked, in the order of their names so that transactions cannot deadlock
+        List<Lock> locks = new ArrayList<>();
+        List<ChangeLog.Capture<?>> captures = new ArrayList<>();
+        boolean writing = false;
+        try {
+            for (Transaction.TableChanges<?> table : tables) {
+                Lock lock = tableLocks.computeIfAbsent(table.storage.tableName, k -> new ReentrantReadWriteLock()).writeLock();
+                lock.lock();
+                locks.add(lock);
+            }
+            for (Transaction.TableChanges<?> table : tables) {
+                validate(table);
+            }
+
+            // The rows written by the transaction are read before the write for the change events
+            for (Transaction.TableChanges<?> table : written) {
+                captures.add(capture(table));
+            }
+
+            // The tables are written in a single batch of the write-ahead log, the readers keep the previous versions
+            writing = true;
+            wal.beginBatch();
+            try {
+                for (Transaction.TableChanges<?> table : written) {
+                    write(table);
+                }
+                wal.commitBatch();
+                for (Transaction.TableChanges<?> table : written) {
+                    table.storage.committed();
+                }
+                for (int i = 0; i < written.size(); i++) {
+                    written(captures.get(i), written.get(i));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Nothing is aborted once the batch has been committed, even by a failed commit
+                wal.abortBatch();
+                for (Transaction.TableChanges<?> table : written) {
+                    table.storage.discard();
+                }
+                throw e;
+            }
+        } finally {
+            if (writing) {
+                for (Transaction.TableChanges<?> table : written) {
+                    table.storage.changed();
+                }
+                captures.forEach(ChangeLog.Capture::publish);
+            }
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    private <T> void validate(Transaction.TableChanges<T> table) throws IOException {
+        TableStorage<T> storage = table.storage;
+        if (table.snapshot.stamp().equals(storage.stamp())) return;
+        if (table.scanned) {
+            throw new OptimisticLockException("The table " + storage.tableName + " has been changed since it was read by the transaction");
+        }
+
+        // The rows read or written must be the same as in the version read by the transaction
+        Set<String> hashIds = new HashSet<>(table.read);
+        hashIds.addAll(table.rows.keySet());
+        hashIds.addAll(table.deleted);
+        try (TableSnapshot current = storage.snapshot()) {
+            for (String hashId : hashIds) {
+                Optional<T> before = storage.read(table.snapshot, hashId);
+                Optional<T> now = storage.read(current, hashId);
+                if (before.isPresent() != now.isPresent() || (before.isPresent() && !storage.sameRow(before.get(), now.get()))) {
+                    throw new OptimisticLockException("A row of the table " + storage.tableName + " has been changed since it was read by the transaction");
+                }
+            }
+        }
+    }
+
+    private <T> List<TableStorage<T>> viewPartitions(String name, Class<T> entity) throws IOException {
+        validateDatabaseFolder();
+        validateTable(getTableName(entity));
+        if (StringUtils.isEmpty(name)) {
+            throw new IllegalArgumentException("View name cannot be null or empty");
+        }
+        if (views.containsKey(name)) {
+            throw new IllegalArgumentException("View " + name + " already exists");
+        }
+        return getPartitions(entity);
+    }
+
+    private <T> void register(MaterializedView<T> view) {
+        if (views.putIfAbsent(view.name, view) != null) {
+            throw new IllegalArgumentException("View " + view.name + " already exists");
+        }
+        getChangeLog().register(getTableName(view.entity), view);
+    }
+
+    /**
+     * Read the rows of the partitions of a table matching the predicate of a view, callers must hold the write lock of
+     * every partition
+     */
+    private <T> List<T> viewRows(List<TableStorage<T>> partitions, Predicate<T> where) throws IOException {
+        List<T> rows = new ArrayList<>();
+        for (TableStorage<T> storage : partitions) {
+            try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                rows.addAll(query(storage, snapshot, where, null));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Compute the views of a table again from the table, after a write whose changes were not applied to them
+     * Callers must hold the write lock of every partition
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void refreshViews(List<TableStorage<T>> partitions) throws IOException {
+        Class<T> entity = partitions.getFirst().entity;
+        for (MaterializedView<?> view : views.values()) {
+            if (view.entity != entity) continue;
+            if (view instanceof MaterializedView.Rows<?> rows) {
+                MaterializedView.Rows<T> typed = (MaterializedView.Rows<T>) rows;
+                typed.refresh(viewRows(partitions, typed.where()));
+            } else if (view instanceof MaterializedView.Aggregates<?> aggregates) {
+                aggregates.refresh(aggregate(partitions, aggregates.conditions(), aggregates.plan()));
+            }
+        }
+    }
+
+    private <T> List<Map<String, Object>> aggregateView(MaterializedView.Aggregates<T> view) throws IOException {
+        List<Map<String, Object>> results = view.results();
+        while (results == null) {
+            // A minimum or a maximum has been removed, the groups are computed again without concurrent writes
+            List<TableStorage<T>> partitions = getPartitions(view.entity);
+            withWriteLocks(partitions, () -> {
+                if (view.isStale()) {
+                    view.refresh(aggregate(partitions, view.conditions(), view.plan()));
+                }
+            });
+            results = view.results();
+        }
+        return results;
+    }
+
+    /**
+     * Aggregate the partitions of a table on the calling thread, which may hold their write locks
+     */
+    private <T> Aggregation.Groups aggregate(List<TableStorage<T>> partitions, List<Criteria.Condition> conditions, Aggregation.Plan plan) throws IOException {
+        Aggregation.Groups result = plan.newGroups();
+        for (TableStorage<T> storage : partitions) {
+            try (TableSnapshot snapshot = snapshot(storage, List.of())) {
+                result.merge(storage.aggregate(snapshot, conditions, plan));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Run a task holding the write lock of every partition of a table, taken in the order of their names
+     */
+    private <T> void withWriteLocks(List<TableStorage<T>> partitions, LockedTask task) throws IOException {
+        List<Lock> locks = partitions.stream()
+                .map(storage -> storage.tableName)
+                .sorted()
+                .map(name -> tableLocks.computeIfAbsent(name, k -> new ReentrantReadWriteLock()).writeLock())
+                .toList();
+        locks.forEach(Lock::lock);
+        try {
+            task.run();
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Load rows into the partitions of a table, callers must hold the write lock of every partition
+     */
+    private <T> long load(List<TableStorage<T>> partitions, Iterator<T> rows) throws IOException {
+        String tableName = getTableName(partitions.getFirst().entity);
+        boolean captured = getChangeLog().isCaptured(tableName);
+        Map<TableStorage<T>, TableStorage<T>.BulkLoad> loads = new LinkedHashMap<>();
+        Map<TableStorage<T>, List<T>> chunks = new HashMap<>();
+        Deque<T> loaded = new ArrayDeque<>();
+        ChangeLog.Capture<T> capture = getChangeLog().capture(partitions.getFirst(), tableName);
+        long count = 0;
+        long skipped = 0;
+        boolean committed = false;
+        try {
+            for (TableStorage<T> storage : partitions) {
+                loads.put(storage, storage.load());
+            }
+
+            // The rows are routed to their partition and written by chunks
+            while (rows.hasNext()) {
+                T row = rows.next();
+                TableStorage<T> storage = partition(partitions, row);
+                List<T> chunk = chunks.computeIfAbsent(storage, k -> new ArrayList<>());
+                chunk.add(row);
+                count++;
+                if (captured) {
+                    loaded.add(row);
+                    // Past a chunk the views are computed again from the table, only the rows the tail can hold are kept
+                    while (loaded.size() > (skipped > 0 ? changesTailSize : Math.max(LOAD_CHUNK_ROWS, changesTailSize))) {
+                        loaded.poll();
+                        skipped++;
+                    }
+                }
+                if (chunk.size() == LOAD_CHUNK_ROWS) {
+                    loads.get(storage).write(chunk);
+                    chunks.remove(storage);
+                }
+            }
+            for (Map.Entry<TableStorage<T>, List<T>> chunk : chunks.entrySet()) {
+                loads.get(chunk.getKey()).write(chunk.getValue());
+            }
+
+            // The ids of every partition are checked before any file is replaced, the files are replaced together
+            List<WriteAheadLog.Change> replaces = new ArrayList<>();
+            for (TableStorage<T>.BulkLoad load : loads.values()) {
+                if (load.rows() > 0) {
+                    replaces.add(load.prepare());
+                }
+            }
+            if (!replaces.isEmpty()) {
+                committed = true;
+                partitions.getFirst().wal.commit(replaces);
+            }
+            for (TableStorage<T>.BulkLoad load : loads.values()) {
+                if (load.rows() > 0) {
+                    load.committed();
+                }
+            }
+            capture.skipped(skipped);
+            capture.inserted(List.copyOf(loaded));
+        } catch (IOException | RuntimeException e) {
+            if (committed) {
+                for (TableStorage<T> storage : partitions) {
+                    storage.discard();
+                }
+            }
+            throw e;
+        } finally {
+            TableStorage.closeAll(List.copyOf(loads.values()));
+            if (committed) {
+                partitions.forEach(TableStorage::changed);
+                capture.publish();
+            }
+        }
+        if (skipped > 0) {
+            // The views did not receive the changes, they are read from the published version of the table
+            refreshViews(partitions);
+        }
+        return count;
+    }
+
+    private static <T> void write(Transaction.TableChanges<T> table) throws IOException {
+        table.storage.write(table.rows, table.deleted);
+    }
+
+    private <T> ChangeLog.Capture<T> capture(Transaction.TableChanges<T> table) throws IOException {
+        Set<String> hashIds = new HashSet<>(table.rows.keySet());
+        hashIds.addAll(table.deleted);
+        return getChangeLog().capture(table.storage, getTableName(table.storage.entity)).before(hashIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void written(ChangeLog.Capture<?> capture, Transaction.TableChanges<T> table) {
+        ((ChangeLog.Capture<T>) capture).written(table.rows, table.deleted);
+    }
+
+    <T> List<TableStorage<T>> partitions(Class<T> entity) throws IOException {
+        validateTable(getTableName(entity));
+        return getPartitions(entity);
+    }
+
+    <T> TableSnapshot snapshot(TableStorage<T> storage) throws IOException {
+        return snapshot(storage, List.of());
+    }
+
+    /**
+     * Get the changes of a table written from now on, see changes(entity, after)
+     *
+     * @param entity The entity stored in the table
+     * @return The publisher of the changes
+     */
+    public <T> Flow.Publisher<ChangeEvent<T>> changes(Class<T> entity) {
+        String tableName = getTableName(entity);
+        ChangeLog changes = getChangeLog();
+        if (!changes.isEnabled()) {
+            throw new IllegalStateException("Change capture is disabled, set localdatabase.changes.tail-size");
+        }
+        return subscriber -> changes.subscribe(tableName, changes.sequence(), subscriber);
+    }
+
+    /**
+     * Get the changes of a table as ordered events, written by inserts, updates, deletes and transactions
+     * Every subscriber receives the changes following a sequence number, as many as it requests, replaying the ones
+     * still kept in the tail of the change log (localdatabase.changes.tail-size)
+     * A subscriber whose next change has left the tail receives an IllegalStateException and should read the table
+     * again before subscribing from the last sequence number
+     *
+     * @param entity The entity stored in the table
+     * @param after  The sequence number of the last change already received, 0 for every change kept
+     * @return The publisher of the changes
+     * @throws IllegalStateException if the changes are not captured
+     */
+    public <T> Flow.Publisher<ChangeEvent<T>> changes(Class<T> entity, long after) {
+        String tableName = getTableName(entity);
+        ChangeLog changes = getChangeLog();
+        if (!changes.isEnabled()) {
+            throw new IllegalStateException("Change capture is disabled, set localdatabase.changes.tail-size");
+        }
+        return subscriber -> changes.subscribe(tableName, after, subscriber);
+    }
+
+    /**
+     * Get the sequence number of the last change written to the tables
+     *
+     * @return The sequence number, 0 if no change has been captured
+     */
+    public long getChangeSequence() {
+        return getChangeLog().sequence();
+    }
+
+    public long getCacheHits() {
+        return getRowCache().getHits();
+    }
+
+    public long getCacheMisses() {
+        return getRowCache().getMisses();
+    }
+
+    /**
+     * Take a version of a table to read it without the lock of the table
+     * Readers take the last version published by the writers and never wait for a running write
+     * The lock is only taken to publish a version when none is, when secondary indexes must be loaded, or when the
+     * table files have been changed by another instance, which is checked only if no write is running
+     *
+     * @param storage The storage of the table
+     * @param columns The columns whose secondary indexes will be used
+     * @return The version, to be closed once read
+     */
+    private <T> TableSnapshot snapshot(TableStorage<T> storage, Collection<String> columns) throws IOException {
+        Lock readLock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock()).readLock();
+        boolean loadIndexes = columns.stream().anyMatch(storage::needsIndex);
+        TableSnapshot snapshot = loadIndexes ? null : storage.acquire();
+        if (snapshot != null && !readLock.tryLock()) {
+            return snapshot;
+        }
+        if (snapshot == null) {
+            readLock.lock();
+        }
+        try {
+            if (snapshot != null && snapshot.stamp().equals(storage.stamp())) {
+                return snapshot;
+            }
+            if (snapshot != null) {
+                snapshot.close();
+                snapshot = null;
+            }
+            for (String column : columns) {
+                storage.loadIndex(column);
+            }
+            return storage.publish();
+        } catch (IOException | RuntimeException e) {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+            throw e;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private <T> long warmUp(TableStorage<T> storage) throws IOException {
+        List<String> header = List.copyOf(storage.columnTypes.keySet());
+        try (TableSnapshot snapshot = snapshot(storage, storage.secondaryIndexes.keySet())) {
+            List<T> rows;
+            try (Stream<T> sample = storage.stream(snapshot)) {
+                rows = sample.limit(WARM_UP_SAMPLE + 1).toList();
+            }
+            long encoded = 0;
+            for (T row : rows) {
+                encoded += storage.encodeLine(row, header).length() + TableStorage.LINE_SEPARATOR.length();
+            }
+            if (rows.size() > WARM_UP_SAMPLE) {
+                // The number of rows is given by the primary key, otherwise extrapolated from the size of the files
+                long count = storage.getIdColumns().isEmpty() ? snapshot.size() * rows.size() / encoded : snapshot.primaryKeys().size();
+                if (getRowCache().fits(storage.decodedSize(rows, count))) {
+                    rows = read(storage, snapshot);
+                }
+            } else if (getRowCache().isEnabled()) {
+                rows = read(storage, snapshot);
+            }
+            return rows.size();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private <T> List<T> query(TableStorage<T> storage, TableSnapshot snapshot, Predicate<T> where, Comparator<T> order) throws IOException {
+        // Cached rows are shared, the matching rows are copied before being returned
+        List<T> result = getRowCache().isEnabled()
+                ? getScanner().map(read(storage, snapshot), obj -> where == null || where.test(obj) ? storage.copy(obj) : null)
+                : storage.scan(snapshot, List.of(), where);
+
+        // The rows are only sorted when an order is asked for
+        if (order != null) {
+            result.sort(order);
+        }
+        return result;
+    }
+
+    private <T> List<T> query(TableStorage<T> storage, List<Criteria.Condition> conditions, Predicate<T> matches, Comparator<T> order) throws IOException {
+        try (TableSnapshot snapshot = snapshot(storage, conditions.stream().map(Criteria.Condition::column).toList())) {
+            List<T> result = new ArrayList<>();
+
+            // Candidates found with an index are read by id, the other conditions are checked on the entities
+            Set<String> candidates = storage.candidates(snapshot, conditions);
+            List<T> cached = candidates == null ? readCached(storage, snapshot) : null;
+            if (candidates != null) {
+                for (String hashId : candidates) {
+                    storage.read(snapshot, hashId).filter(matches).ifPresent(result::add);
+                }
+            } else if (cached != null) {
+                result = getScanner().map(cached, obj -> matches.test(obj) ? storage.copy(obj) : null);
+            } else {
+                // The conditions are evaluated on the raw values, only the matching rows are decoded
+                result = storage.scan(snapshot, conditions, null);
+            }
+            if (order != null) {
+                result.sort(order);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Open a stream over the versions of the partitions of a table, read one partition after the other
+     *
+     * @param partitions The partitions of the table
+     * @param cached     true to read the rows of the versions found in the cache, which are shared, the other
+     *                   versions are read lazily without being cached
+     * @return The rows, the stream must be closed to release the versions
+     */
+    private <T> Stream<T> open(List<TableStorage<T>> partitions, boolean cached) throws IOException {
+        List<TableSnapshot> snapshots = new ArrayList<>();
+        List<Stream<T>> streams = new ArrayList<>();
+        Runnable close = () -> {
+            streams.forEach(Stream::close);
+            snapshots.forEach(TableSnapshot::close);
+        };
+        try {
+            for (TableStorage<T> storage : partitions) {
+                TableSnapshot snapshot = snapshot(storage, List.of());
+                snapshots.add(snapshot);
+                List<T> rows = cached ? readCached(storage, snapshot) : null;
+                streams.add(rows != null ? rows.stream() : storage.stream(snapshot));
+            }
+        } catch (IOException | RuntimeException e) {
+            close.run();
+            throw e;
+        }
+        if (streams.size() == 1) {
+            return streams.getFirst().onClose(() -> snapshots.forEach(TableSnapshot::close));
+        }
+        return streams.stream().flatMap(rows -> rows).onClose(close);
+    }
+
+    /**
+     * Run a task on every partition of a table, in parallel when the table has several partitions
+     * The tasks wait for the locks and versions of their partitions on threads of their own, not in the scan pool
+     *
+     * @param partitions The partitions
+     * @param task       The task
+     * @return The results of the task, in the order of the partitions
+     */
+    private <T, R> List<R> fanOut(List<TableStorage<T>> partitions, PartitionTask<T, R> task) throws IOException {
+        if (partitions.size() == 1) {
+            return Collections.singletonList(task.run(partitions.getFirst()));
+        }
+        List<CompletableFuture<R>> futures = partitions.stream().map(partition -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run(partition);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, partitionExecutor)).toList();
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case UncheckedIOException cause -> throw cause.getCause();
+                case RuntimeException cause -> throw cause;
+                default -> throw e;
+            }
+        }
+    }
+
+    private static <T> List<T> merge(List<List<T>> results, Comparator<T> order) {
+        if (results.size() == 1) {
+            return results.getFirst();
+        }
+        List<T> merged = new ArrayList<>();
+        results.forEach(merged::addAll);
+        if (order != null) {
+            merged.sort(order);
+        }
+        return merged;
+    }
+
+    private static <T> Map<TableStorage<T>, List<T>> group(List<TableStorage<T>> partitions, List<T> entities) {
+        if (partitions.size() == 1) {
+            return Map.of(partitions.getFirst(), entities);
+        }
+        Map<TableStorage<T>, List<T>> groups = new LinkedHashMap<>();
+        for (T entity : entities) {
+            groups.computeIfAbsent(partition(partitions, entity), k -> new ArrayList<>()).add(entity);
+        }
+        return groups;
+    }
+
+    /**
+     * Get the partition storing a row
+     *
+     * @param partitions The partitions of the table
+     * @param row        The row
+     * @return The partition
+     */
+    static <T> TableStorage<T> partition(List<TableStorage<T>> partitions, T row) {
+        if (partitions.size() == 1) {
+            return partitions.getFirst();
+        }
+        TableStorage<T> storage = partitions.getFirst();
+        return partitionById(partitions, storage.getIdColumns().stream().map(column -> storage.value(row, column)).toArray());
+    }
+
+    /**
+     * Get the partition storing the row having some ids
+     * The partition is given by the hash of the partition column, or of all the id columns
+     *
+     * @param partitions The partitions of the table
+     * @param ids        The values of the id columns
+     * @return The partition
+     */
+    static <T> TableStorage<T> partitionById(List<TableStorage<T>> partitions, Object[] ids) {
+        if (partitions.size() == 1) {
+            return partitions.getFirst();
+        }
+        TableStorage<T> storage = partitions.getFirst();
+        String column = storage.entity.getAnnotation(Partitioned.class).column();
+        Object[] key = column.isEmpty() ? ids : new Object[]{ids[storage.getIdColumns().indexOf(column)]};
+        return partitions.get(Math.floorMod(TableStorage.hashId(key).hashCode(), partitions.size()));
+    }
+
+    private <T> List<T> readCached(TableStorage<T> storage, TableSnapshot snapshot) {
+        RowCache cache = getRowCache();
+        return cache.isEnabled() ? cache.get(storage.tableName, snapshot.stamp()) : null;
+    }
+
+    private <T> List<T> read(TableStorage<T> storage, TableSnapshot snapshot) throws IOException {
+        RowCache cache = getRowCache();
+        if (!cache.isEnabled()) {
+            return storage.read(snapshot);
+        }
+        List<T> rows = cache.get(storage.tableName, snapshot.stamp());
+        if (rows == null) {
+            rows = storage.read(snapshot);
+            cache.put(storage.tableName, snapshot.stamp(), rows, storage.decodedSize(rows, rows.size()));
+        }
+        return rows;
+    }
+
+    private TableScanner getScanner() {
+        componentsLock.lock();
+        try {
+            if (scanner == null) {
+                scanner = new TableScanner(scanParallelism, scanChunkSize);
+            }
+            return scanner;
+        } finally {
+            componentsLock.unlock();
+        }
+    }
+
+    private ChangeLog getChangeLog() {
+        componentsLock.lock();
+        try {
+            if (changeLog == null) {
+                changeLog = new ChangeLog(changesTailSize);
+            }
+            return changeLog;
+        } finally {
+            componentsLock.unlock();
+        }
+    }
+
+    private RowCache getRowCache() {
+        componentsLock.lock();
+        try {
+            if (rowCache == null) {
+                rowCache = new RowCache(cacheMaxBytes);
+            }
+            return rowCache;
+        } finally {
+            componentsLock.unlock();
+        }
+    }
+
+    private static <T> List<T> first(Stream<T> rows, Comparator<T> order, long count) {
+        // Bounded heap whose head is the greatest row kept, rows comparing equal keep the order of the table
+        record Ranked<R>(R row, long rank) {
+        }
+        Comparator<Ranked<T>> ranking = Comparator.<Ranked<T>, T>comparing(Ranked::row, order).thenComparingLong(Ranked::rank);
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<>(ranking.reversed());
+        long[] rank = {0};
+        rows.forEachOrdered(row -> {
+            Ranked<T> ranked = new Ranked<>(row, rank[0]++);
+            if (heap.size() < count) {
+                heap.add(ranked);
+            } else if (ranking.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        });
+        return heap.stream().sorted(ranking).map(Ranked::row).toList();
     }
 
     @SuppressWarnings("unchecked")
@@ -242,48 +1419,171 @@ public class LocalDatabase {
         }
     }
 
-    private static List<String> getHeader(Path filePath) throws IOException {
-        List<String> header;
-        try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
-            header = List.of(reader.readLine().split(";"));
+    private <T> TableStorage<T> getStorage(Class<T> entity) throws IOException {
+        return getStorage(entity, getTableName(entity), Paths.get(databaseFolder));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TableStorage<T> getStorage(Class<T> entity, String tableName, Path folder) throws IOException {
+        TableStorage<?> storage = storages.get(tableName);
+        if (storage == null) {
+            storagesLock.lock();
+            try {
+                storage = storages.get(tableName);
+                if (storage == null) {
+                    storage = createStorage(entity, tableName, folder);
+                    storages.put(tableName, storage);
+                }
+            } finally {
+                storagesLock.unlock();
+            }
         }
-        return header;
+        return (TableStorage<T>) storage;
     }
 
-    private static <T> List<T> getLines(Path filePath, Class<T> entity) throws IOException {
+    /**
+     * Get the storages of the partitions of a table
+     * Every partition is a table of its own, named after the table and its number, with its own files, lock,
+     * write queue and cached rows, stored in one of the partition folders
+     *
+     * @param entity The entity stored in the table
+     * @return The partitions, a single storage for tables that are not partitioned
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<TableStorage<T>> getPartitions(Class<T> entity) throws IOException {
+        Partitioned partitioned = entity.getAnnotation(Partitioned.class);
+        if (partitioned == null) {
+            return List.of(getStorage(entity));
+        }
         String tableName = getTableName(entity);
-        List<String> lines = Files.readAllLines(filePath, StandardCharsets.UTF_8);
+        List<TableStorage<?>> list = partitions.get(tableName);
+        if (list == null) {
+            storagesLock.lock();
+            try {
+                list = partitions.get(tableName);
+                if (list == null) {
+                    validatePartitioned(entity, partitioned);
+                    List<TableStorage<?>> created = new ArrayList<>();
+                    for (int i = 0; i < partitioned.count(); i++) {
+                        created.add(getStorage(entity, getPartitionName(tableName, i), getPartitionFolder(i)));
+                    }
+                    list = List.copyOf(created);
+                    partitions.put(tableName, list);
+                }
+            } finally {
+                storagesLock.unlock();
+            }
+        }
+        return (List<TableStorage<T>>) (List<?>) list;
+    }
 
-        if (lines.isEmpty()) return List.of();
+    private <T> WriteQueue<T> getWriteQueue(TableStorage<T> storage) {
+        ReadWriteLock lock = tableLocks.computeIfAbsent(storage.tableName, k -> new ReentrantReadWriteLock());
+        @SuppressWarnings("unchecked")
+        WriteQueue<T> queue = (WriteQueue<T>) writeQueues.computeIfAbsent(storage.tableName, k -> new WriteQueue<>(storage, lock.writeLock(), getChangeLog(), getTableName(storage.entity)));
+        return queue;
+    }
 
-        List<String> header = List.of(lines.getFirst().split(";"));
-        return lines.stream()
-                .parallel()
-                .skip(1)
-                .map(line -> StringUtils.parseCSVLine(line, header, ";"))
-                .map(map -> ObjectUtils.mapToObject(map, entity))
-                .toList();
+    private <T> TableStorage<T> createStorage(Class<T> entity, String tableName, Path folder) throws IOException {
+        // Tables already stored in a format keep it, new tables use the format of the entity or the default one
+        if (isColumnar(entity, tableName, folder)) {
+            return new ColumnarTableStorage<>(entity, tableName, folder, getWriteAheadLog(folder), getScanner(), isCompressed(entity));
+        }
+
+        // Tables having log segments are read as log-structured tables until they are compacted
+        boolean logStorage = "log".equalsIgnoreCase(storageMode) || LogTableStorage.hasSegments(folder, tableName);
+        if (logStorage && !getIdColumns(entity).isEmpty()) {
+            ReadWriteLock lock = tableLocks.computeIfAbsent(tableName, k -> new ReentrantReadWriteLock());
+            return new LogTableStorage<>(entity, tableName, folder, getWriteAheadLog(folder), getScanner(), lock, compactor, segmentSize, garbageRatio);
+        }
+        return new CsvTableStorage<>(entity, tableName, folder, getWriteAheadLog(folder), getScanner());
+    }
+
+    private <T> boolean isColumnar(Class<T> entity, String tableName, Path folder) {
+        if (Files.exists(folder.resolve(tableName.trim() + ColumnarTableStorage.EXTENSION))) return true;
+        if (Files.exists(folder.resolve(tableName.trim() + TableStorage.EXTENSION))) return false;
+        TableFormat format = entity.getAnnotation(TableFormat.class);
+        return "columnar".equalsIgnoreCase(format != null ? format.value() : tableFormat);
+    }
+
+    private <T> boolean isCompressed(Class<T> entity) {
+        TableFormat format = entity.getAnnotation(TableFormat.class);
+        String codec = format != null && !format.compression().isEmpty() ? format.compression() : compression;
+        if (!"deflate".equalsIgnoreCase(codec) && !"none".equalsIgnoreCase(codec)) {
+            throw new IllegalArgumentException("Unknown compression " + codec + " for the table " + getTableName(entity));
+        }
+        return "deflate".equalsIgnoreCase(codec);
     }
 
-    private static <T> String getHashId(T entity, List<String> idColumns) {
-        return idColumns.stream()
-                .map(col -> Objects.requireNonNullElse(getValue(entity, col), "").toString())
-                .collect(Collectors.joining(";"));
+    private WriteAheadLog getWriteAheadLog(Path tableFolder) throws IOException {
+        validateDatabaseFolder();
+        return openWriteAheadLog(tableFolder);
     }
 
-    private static <T> Object getValue(T entity, String col) {
-        Field field = Stream.of(entity.getClass().getDeclaredFields())
-                .filter(f -> f.isAnnotationPresent(Column.class) && f.getAnnotation(Column.class).name().equals(col)).findFirst()
-                .orElse(null);
-        if (field == null) return null;
-        field.setAccessible(true);
+    /**
+     * Replay the write-ahead logs of the database folder and of the partition folders, before the tables are used
+     * The settings are injected after construction, the logs are opened on first use rather than by the constructor
+     */
+    private void recover() throws IOException {
+        writeAheadLogsLock.lock();
         try {
-            return field.get(entity);
-        } catch (IllegalAccessException e) {
-            return null;
+            if (recovered) return;
+            Set<Path> folders = new LinkedHashSet<>();
+            folders.add(Paths.get(databaseFolder));
+            getPartitionFolders().forEach(folder -> folders.add(Paths.get(folder)));
+            for (Path folder : folders) {
+                // A folder that does not exist yet has nothing to replay
+                if (Files.isDirectory(folder)) {
+                    openWriteAheadLog(folder);
+                }
+            }
+            recovered = true;
+        } finally {
+            writeAheadLogsLock.unlock();
+        }
+    }
+
+    private WriteAheadLog openWriteAheadLog(Path tableFolder) throws IOException {
+        Path folder = tableFolder.toAbsolutePath().normalize();
+        WriteAheadLog wal = logs.get(folder);
+        if (wal != null) return wal;
+        writeAheadLogsLock.lock();
+        try {
+            wal = logs.get(folder);
+            if (wal == null) {
+                // Every instance using a folder shares its log, which is closed once no instance uses it
+                SharedLog shared = writeAheadLogs.get(folder);
+                if (shared == null) {
+                    // Opening the log replays the changes that were not synced to the table files
+                    shared = new SharedLog(new WriteAheadLog(folder, WriteAheadLog.Sync.valueOf(walSync.toUpperCase()), groupCommitMillis, checkpointSize));
+                    writeAheadLogs.put(folder, shared);
+                }
+                shared.references++;
+                wal = shared.wal;
+                logs.put(folder, wal);
+            }
+            return wal;
+        } finally {
+            writeAheadLogsLock.unlock();
         }
     }
 
+    private Path getPartitionFolder(int partition) {
+        List<String> folders = getPartitionFolders();
+        return Paths.get(folders.isEmpty() ? databaseFolder : folders.get(partition % folders.size()));
+    }
+
+    private List<String> getPartitionFolders() {
+        return Arrays.stream(partitionFolders.split(","))
+                .map(String::trim)
+                .filter(folder -> !folder.isEmpty())
+                .toList();
+    }
+
+    private static String getPartitionName(String tableName, int partition) {
+        return tableName.trim() + ".part" + partition;
+    }
+
     private static List<String> getColumns(Object entity) {
         return getColumns(entity.getClass());
     }
@@ -296,10 +1596,7 @@ public class LocalDatabase {
     }
 
     private static <T> List<String> getIdColumns(Class<T> entity) {
-        return Arrays.stream(entity.getDeclaredFields())
-                .filter(field -> field.isAnnotationPresent(Column.class) && field.isAnnotationPresent(Id.class))
-                .map(field -> field.getAnnotation(Column.class).name())
-                .collect(Collectors.toList());
+        return TableStorage.getIdColumns(entity);
     }
 
     private static String getTableName(Object entity) {
@@ -314,14 +1611,14 @@ public class LocalDatabase {
         return tableAnnotation.name();
     }
 
-    private Path getTablePath(String tableName) {
-        return Paths.get(databaseFolder, tableName.trim() + ".csv");
-    }
-
-    private void validateDatabaseFolder() {
+    private void validateDatabaseFolder() throws IOException {
         if (StringUtils.isEmpty(this.databaseFolder)) {
             throw new IllegalArgumentException("Database folder cannot be null or empty");
         }
+        // The tables are checked once the changes that were not synced to their files are replayed
+        if (!recovered) {
+            recover();
+        }
     }
 
     private void validateTableName(String tableName) {
@@ -330,6 +1627,19 @@ public class LocalDatabase {
         }
     }
 
+    private <T> void validatePartitioned(Class<T> entity, Partitioned partitioned) {
+        List<String> idColumns = getIdColumns(entity);
+        if (partitioned.count() < 1) {
+            throw new IllegalArgumentException("Table " + getTableName(entity) + " must have at least one partition");
+        }
+        if (idColumns.isEmpty()) {
+            throw new IllegalArgumentException("Entity must have at least one ID column to be partitioned");
+        }
+        if (!partitioned.column().isEmpty() && !idColumns.contains(partitioned.column())) {
+            throw new IllegalArgumentException("Partition column " + partitioned.column() + " must be an ID column of the table " + getTableName(entity));
+        }
+    }
+
     private void validateTable(String tableName) throws IOException {
         if (!exists(tableName)) {
             throw new IllegalArgumentException("Table " + tableName + " does not exist in the database folder: " + databaseFolder);
@@ -343,6 +1653,57 @@ public class LocalDatabase {
     public boolean exists(String tableName) throws IOException {
         validateDatabaseFolder();
         validateTableName(tableName);
-        return Files.exists(getTablePath(tableName));
+        return hasTableFile(Paths.get(databaseFolder), tableName.trim())
+                || hasTableFile(getPartitionFolder(0), getPartitionName(tableName, 0));
+    }
+
+    private static boolean hasTableFile(Path folder, String tableName) {
+        return Files.exists(folder.resolve(tableName + TableStorage.EXTENSION))
+                || Files.exists(folder.resolve(tableName + ColumnarTableStorage.EXTENSION));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        compactor.shutdown();
+        partitionExecutor.shutdown();
+        try {
+            // A running compaction commits its files to the write-ahead logs, which are closed afterward
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compactions");
+        }
+        componentsLock.lock();
+        try {
+            if (scanner != null) {
+                scanner.close();
+            }
+            if (changeLog != null) {
+                changeLog.close();
+            }
+        } finally {
+            componentsLock.unlock();
+        }
+        IOException failure = null;
+        writeAheadLogsLock.lock();
+        try {
+            for (Path folder : logs.keySet()) {
+                SharedLog shared = writeAheadLogs.get(folder);
+                if (shared != null && --shared.references == 0) {
+                    writeAheadLogs.remove(folder);
+                    try {
+                        shared.wal.close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            logs.clear();
+        } finally {
+            writeAheadLogsLock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
-}
\ No newline at end of file
+}
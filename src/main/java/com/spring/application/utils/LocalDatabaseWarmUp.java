@@ -0,0 +1,107 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.Table;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warm-up of the LocalDatabase tables at start, see LocalDatabase.warmUp
+ * The tables are warmed up in parallel by the first application runner: Spring Boot reports the application ready
+ * (readiness state ACCEPTING_TRAFFIC) once the runners have returned, so only after the warm-up
+ * The tables are the @Table entities of the application packages named by localdatabase.warmup.tables, a table
+ * which does not exist or fails its warm-up is logged and left cold
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Log4j2
+public class LocalDatabaseWarmUp implements ApplicationRunner {
+
+    @Value("${localdatabase.warmup.tables:}")
+    private String tables = "";
+    private final LocalDatabase localDatabase;
+    private final BeanFactory beanFactory;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Class<?>> entities = entities();
+        if (entities.isEmpty()) return;
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(entities.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "local-database-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture.allOf(entities.stream()
+                    .map(entity -> CompletableFuture.runAsync(() -> warmUp(entity), executor))
+                    .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+        }
+        log.info("{} table(s) warmed up in {} ms", entities.size(), System.currentTimeMillis() - start);
+    }
+
+    private void warmUp(Class<?> entity) {
+        String tableName = entity.getAnnotation(Table.class).name();
+        try {
+            if (!localDatabase.exists(entity)) {
+                log.info("Table {} does not exist and is not warmed up", tableName);
+                return;
+            }
+            long start = System.currentTimeMillis();
+            long rows = localDatabase.warmUp(entity);
+            log.info("Table {} warmed up in {} ms, {} rows decoded", tableName, System.currentTimeMillis() - start, rows);
+        } catch (IOException | RuntimeException e) {
+            log.error("Warm-up of table {} failed: {}", tableName, e.getMessage());
+        }
+    }
+
+    /**
+     * Find the entities of the tables to warm up
+     *
+     * @return The entities, none if no table is configured
+     */
+    private List<Class<?>> entities() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : tables.split(",")) {
+            if (!name.isBlank()) names.add(name.trim());
+        }
+        if (names.isEmpty()) return List.of();
+
+        boolean all = names.remove("*");
+        ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(false);
+        provider.addIncludeFilter(new AnnotationTypeFilter(Table.class));
+        List<Class<?>> entities = new ArrayList<>();
+        for (String basePackage : AutoConfigurationPackages.get(beanFactory)) {
+            for (BeanDefinition candidate : provider.findCandidateComponents(basePackage)) {
+                Class<?> entity = ClassUtils.resolveClassName(Objects.requireNonNull(candidate.getBeanClassName()), getClass().getClassLoader());
+                String tableName = entity.getAnnotation(Table.class).name();
+                if (!tableName.isEmpty() && (all || names.remove(tableName))) {
+                    entities.add(entity);
+                }
+            }
+        }
+        names.forEach(name -> log.warn("No @Table entity named {} to warm up", name));
+        return entities;
+    }
+}
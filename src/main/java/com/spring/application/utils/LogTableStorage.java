@@ -0,0 +1,386 @@
+package com.spring.application.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Log-structured table
+ * The table file is a compacted base holding live rows, every change is appended to log segments
+ * (TABLE.n.log) as "+row" records for inserts and updates or "-id" tombstones for deletes
+ * The position of a row encodes the segment number in its high bits, the base file being segment 0
+ * A background compaction merges the base and the sealed segments once the ratio of dead records is too high
+ *
+ * @param <T> The entity stored in the table
+ */
+@Log4j2
+class LogTableStorage<T> extends TextTableStorage<T> {
+
+    private static final char ROW = '+';
+    private static final char TOMBSTONE = '-';
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final ReadWriteLock lock;
+    private final Executor compactor;
+    private final long segmentSize;
+    private final double garbageRatio;
+    private final Pattern segmentPattern;
+    private final TreeMap<Integer, Path> segments = new TreeMap<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private int activeSegment;
+    private long records = -1;
+
+    LogTableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner, ReadWriteLock lock, Executor compactor, long segmentSize, double garbageRatio) throws IOException {
+        super(entity, tableName, folder, wal, scanner);
+        this.lock = lock;
+        this.compactor = compactor;
+        this.segmentSize = segmentSize;
+        this.garbageRatio = garbageRatio;
+        this.segmentPattern = segmentPattern(this.tableName);
+        for (Path segment : listSegments(this.folder, segmentPattern)) {
+            Matcher matcher = segmentPattern.matcher(segment.getFileName().toString());
+            if (matcher.matches()) {
+                segments.put(Integer.parseInt(matcher.group(1)), segment);
+            }
+        }
+        this.activeSegment = segments.isEmpty() ? 1 : segments.lastKey();
+    }
+
+    /**
+     * Check if a table has log segments, in which case it must be read as a log-structured table
+     *
+     * @param folder    The database folder
+     * @param tableName The name of the table
+     * @return true if log segments exist
+     */
+    static boolean hasSegments(Path folder, String tableName) throws IOException {
+        return !listSegments(folder, segmentPattern(tableName.trim())).isEmpty();
+    }
+
+    @Override
+    List<T> read(TableSnapshot snapshot) throws IOException {
+        return scan(snapshot, List.of(), null);
+    }
+
+    @Override
+    TextFiles textFiles(TableSnapshot snapshot) throws IOException {
+        // Deleted or replaced files stay readable through the channels of the version, so that a compaction does not affect it
+        Map<Long, String> live = byPointer(snapshot);
+        List<TextFile> files = new ArrayList<>();
+        for (Path file : snapshot.files()) {
+            int segment = segment(file);
+            files.add(new TextFile(snapshot.channel(file), snapshot.size(file), segment == 0
+                    ? line -> line.offset() != 0 && live.containsKey(line.offset()) ? line : null
+                    : line -> line.first() == ROW && live.containsKey(pointer(segment, line.offset())) ? line.dropFirst() : null));
+        }
+        return new TextFiles(header(snapshot), files);
+    }
+
+    @Override
+    Optional<T> read(TableSnapshot snapshot, String hashId) throws IOException {
+        Long pointer = snapshot.primaryKeys().get(hashId);
+        if (pointer == null) return Optional.empty();
+
+        int segment = segment(pointer);
+        FileChannel channel = snapshot.channel(segment == 0 ? tablePath : segmentPath(segment));
+        if (channel == null) return Optional.empty();
+        String line = readLine(channel, offset(pointer));
+        return Optional.of(decodeLine(segment == 0 ? line : line.substring(1), header(snapshot)));
+    }
+
+    @Override
+    void insert(List<T> entities) throws IOException {
+        List<String> idToInsert = entities.stream().map(this::hashId).toList();
+        checkUniqueness(idToInsert);
+        Map<String, T> rows = new LinkedHashMap<>();
+        for (int i = 0; i < entities.size(); i++) {
+            rows.put(idToInsert.get(i), entities.get(i));
+        }
+        write(rows, Set.of());
+    }
+
+    @Override
+    void write(Map<String, T> rows, Set<String> hashIds) throws IOException {
+        // The new versions of the rows are appended, the previous ones become dead records
+        PrimaryKeyIndex primaryKeys = loadIndex();
+        List<String> idsToDelete = hashIds.stream().filter(primaryKeys::contains).toList();
+
+        // No lines to write
+        if (rows.isEmpty() && idsToDelete.isEmpty()) {
+            return;
+        }
+
+        List<String> header = header();
+        List<String> lines = new ArrayList<>(rows.size() + idsToDelete.size());
+        rows.values().forEach(row -> lines.add(ROW + encodeLine(row, header)));
+        idsToDelete.forEach(hashId -> lines.add(TOMBSTONE + hashId));
+        List<Long> pointers = append(lines);
+
+        // Register the new rows and the deleted ids in the primary key index
+        Map<String, Long> entries = new LinkedHashMap<>();
+        int i = 0;
+        for (String hashId : rows.keySet()) {
+            entries.put(hashId, pointers.get(i++));
+        }
+        idsToDelete.forEach(hashId -> entries.put(hashId, null));
+        primaryKeys.append(entries, version());
+        updateIndexes(rows, idsToDelete);
+        maybeCompact();
+    }
+
+    @Override
+    void delete(Predicate<T> where) throws IOException {
+        delete(new HashSet<>(scanner.map(read(), obj -> where == null || where.test(obj) ? hashId(obj) : null)));
+    }
+
+    @Override
+    protected Path loadTarget() {
+        // A bulk load is written as a new segment, following the records of the active one
+        return segmentPath(segments.containsKey(activeSegment) ? activeSegment + 1 : activeSegment);
+    }
+
+    @Override
+    protected EncodedRows encodeRows(Path target, List<T> rows, long start) throws IOException {
+        int segment = segment(target);
+        return encodeLines(rows, start, String.valueOf(ROW), offset -> pointer(segment, offset));
+    }
+
+    @Override
+    protected void loaded(Path target, long rows) {
+        // The loaded segment is sealed, the next writes go to a new one
+        int segment = segment(target);
+        segments.put(segment, target);
+        activeSegment = segment + 1;
+        if (records >= 0) records += rows;
+    }
+
+    @Override
+    void clear() throws IOException {
+        super.clear();
+        wal.commit(segments.values().stream().map(WriteAheadLog.Delete::new).toList());
+        segments.clear();
+        activeSegment = 1;
+        records = -1;
+    }
+
+    @Override
+    void discard() throws IOException {
+        super.discard();
+
+        // Segments created by the discarded writes do not exist, the active segment is kept as a compaction may be merging the previous ones
+        segments.clear();
+        for (Path segment : listSegments(folder, segmentPattern)) {
+            Matcher matcher = segmentPattern.matcher(segment.getFileName().toString());
+            if (matcher.matches()) {
+                segments.put(Integer.parseInt(matcher.group(1)), segment);
+            }
+        }
+        records = -1;
+    }
+
+    @Override
+    protected List<Path> files() {
+        List<Path> files = new ArrayList<>(segments.size() + 1);
+        files.add(tablePath);
+        files.addAll(segments.values());
+        return files;
+    }
+
+    @Override
+    protected String version() throws IOException {
+        StringBuilder version = new StringBuilder(version(tablePath));
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            version.append(',').append(segment.getKey()).append(':').append(version(segment.getValue()));
+        }
+        return version.toString();
+    }
+
+    @Override
+    protected Map<String, Long> buildIndex() throws IOException {
+        List<String> header = header();
+        Map<String, Long> entries = new LinkedHashMap<>();
+        readRawLines(tablePath).stream().skip(1)
+                .forEach(line -> entries.put(hashId(decodeLine(line.text(), header)), line.offset()));
+
+        // Replay the segments in order, the last record of an id wins
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            for (RawLine line : readRawLines(segment.getValue())) {
+                if (isRow(line)) {
+                    entries.put(hashId(decodeLine(line.text().substring(1), header)), pointer(segment.getKey(), line.offset()));
+                } else if (!line.text().isEmpty()) {
+                    entries.remove(line.text().substring(1));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private List<Long> append(List<String> lines) throws IOException {
+        Path segmentPath = segmentPath(activeSegment);
+        long start = wal.size(segmentPath);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        List<Long> offsets = writeLines(content, start, lines);
+        wal.append(segmentPath, content.toByteArray());
+
+        int segment = activeSegment;
+        segments.put(segment, segmentPath);
+        if (records >= 0) records += lines.size();
+
+        // Roll to a new segment once the active one is full
+        if (start + content.size() >= segmentSize) {
+            activeSegment++;
+        }
+        return offsets.stream().map(offset -> pointer(segment, offset)).toList();
+    }
+
+    private void maybeCompact() throws IOException {
+        if (records < 0) {
+            records = countLines(tablePath) - 1;
+            for (Path segment : segments.values()) {
+                records += countLines(segment);
+            }
+        }
+        long garbage = records - index.size();
+        if (garbage > 0 && (double) garbage / records >= garbageRatio && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.error("Compaction of table {} failed: {}", tableName, e.getMessage());
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Merge the base file and the sealed segments into a new base file holding only the live rows
+     * Writers keep appending to a new active segment while the merge is running
+     */
+    void compact() throws IOException {
+        SortedMap<Integer, Path> sealed;
+        Map<Long, String> live;
+
+        // Seal the active segment
+        lock.writeLock().lock();
+        try {
+            if (segments.isEmpty()) return;
+            if (activeSegment == segments.lastKey()) {
+                activeSegment++;
+            }
+            sealed = new TreeMap<>(segments);
+            live = loadIndex().byOffset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Copy the live rows without decoding them, the base file and sealed segments are immutable
+        Path compacted = wal.temporary(tablePath);
+        Map<String, long[]> moved = new HashMap<>();
+        long merged = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted))) {
+            List<RawLine> base = readRawLines(tablePath);
+            long position = writeLine(out, base.getFirst().text());
+            for (RawLine line : base.subList(1, base.size())) {
+                merged++;
+                String hashId = live.get(line.offset());
+                if (hashId != null) {
+                    moved.put(hashId, new long[]{line.offset(), position});
+                    position += writeLine(out, line.text());
+                }
+            }
+            for (Map.Entry<Integer, Path> segment : sealed.entrySet()) {
+                for (RawLine line : readRawLines(segment.getValue())) {
+                    merged++;
+                    long pointer = pointer(segment.getKey(), line.offset());
+                    String hashId = live.get(pointer);
+                    if (hashId != null && isRow(line)) {
+                        moved.put(hashId, new long[]{pointer, position});
+                        position += writeLine(out, line.text().substring(1));
+                    }
+                }
+            }
+        }
+
+        // Swap the files and move the ids that have not been changed during the merge
+        lock.writeLock().lock();
+        try {
+            List<WriteAheadLog.Change> changes = new ArrayList<>();
+            changes.add(new WriteAheadLog.Replace(tablePath, compacted));
+            sealed.values().forEach(segment -> changes.add(new WriteAheadLog.Delete(segment)));
+            wal.commit(changes);
+            moved.forEach((hashId, positions) -> index.replace(hashId, positions[0], positions[1]));
+            segments.keySet().removeAll(sealed.keySet());
+            records = records - merged + moved.size();
+            index.rewrite(index.entries(), version());
+            updateIndexes(Map.of(), List.of());
+        } finally {
+            // The versions being read keep the merged files open until they are closed
+            changed();
+            lock.writeLock().unlock();
+        }
+        log.info("Table {} compacted, {} dead records removed", tableName, merged - moved.size());
+    }
+
+    private List<String> header(TableSnapshot snapshot) throws IOException {
+        return List.of(readLine(snapshot.channel(tablePath), 0).split(DELIMITER));
+    }
+
+    private Map<Long, String> byPointer(TableSnapshot snapshot) {
+        Map<Long, String> live = new HashMap<>(snapshot.primaryKeys().size());
+        snapshot.primaryKeys().forEach((hashId, pointer) -> live.put(pointer, hashId));
+        return live;
+    }
+
+    private Path segmentPath(int segment) {
+        return folder.resolve(tableName + "." + segment + ".log");
+    }
+
+    private int segment(Path file) {
+        Matcher matcher = segmentPattern.matcher(file.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    private static boolean isRow(RawLine line) {
+        return !line.text().isEmpty() && line.text().charAt(0) == ROW;
+    }
+
+    private static long pointer(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private static int segment(long pointer) {
+        return (int) (pointer >>> OFFSET_BITS);
+    }
+
+    private static long offset(long pointer) {
+        return pointer & OFFSET_MASK;
+    }
+
+    private static Pattern segmentPattern(String tableName) {
+        return Pattern.compile(Pattern.quote(tableName) + "\\.(\\d+)\\.log");
+    }
+
+    private static List<Path> listSegments(Path folder, Pattern pattern) throws IOException {
+        if (!Files.isDirectory(folder)) return List.of();
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> pattern.matcher(file.getFileName().toString()).matches()).toList();
+        }
+    }
+}
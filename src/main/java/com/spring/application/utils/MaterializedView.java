@@ -0,0 +1,226 @@
+package com.spring.application.utils;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * View of a LocalDatabase table held in memory and updated by the writes of the table, see LocalDatabase.createView
+ * A view holds either the rows matching a predicate or the aggregates of the rows matching a criteria
+ * The changes of a write are applied while the write lock of the written table is held, so that a read of the view
+ * sees every write that has returned
+ *
+ * @param <T> The entity stored in the table
+ */
+abstract class MaterializedView<T> {
+
+    final String name;
+    final Class<T> entity;
+    protected final Lock lock = new ReentrantLock();
+
+    MaterializedView(String name, Class<T> entity) {
+        this.name = name;
+        this.entity = entity;
+    }
+
+    /**
+     * Apply the changes of a write of the table, callers must hold the write lock of the written table
+     *
+     * @param changes The changes, in the order of the write
+     */
+    abstract void apply(List<ChangeLog.Change> changes);
+
+    /**
+     * View holding the rows matching a predicate by hash of their id columns
+     * The rows are read as an immutable list, built again at the first read following a change
+     */
+    static final class Rows<T> extends MaterializedView<T> {
+
+        private final Predicate<T> where;
+        private final Function<T, String> hashId;
+        private final Map<String, T> rows = new LinkedHashMap<>();
+        private List<T> snapshot;
+
+        /**
+         * @param rows   The rows of the table matching the predicate, read under the write lock of the table
+         * @param hashId The hash of the id columns of a row
+         */
+        Rows(String name, Class<T> entity, Predicate<T> where, Function<T, String> hashId, List<T> rows) {
+            super(name, entity);
+            this.where = where;
+            this.hashId = hashId;
+            rows.forEach(row -> this.rows.put(hashId.apply(row), row));
+        }
+
+        Predicate<T> where() {
+            return where;
+        }
+
+        /**
+         * Replace the rows by the ones read from the table, callers must hold the write lock of the table
+         *
+         * @param rows The rows of the table matching the predicate
+         */
+        void refresh(List<T> rows) {
+            lock.lock();
+            try {
+                this.rows.clear();
+                rows.forEach(row -> this.rows.put(hashId.apply(row), row));
+                snapshot = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void apply(List<ChangeLog.Change> changes) {
+            lock.lock();
+            try {
+                for (ChangeLog.Change change : changes) {
+                    T before = (T) change.before();
+                    T after = (T) change.after();
+                    boolean matches = after != null && (where == null || where.test(after));
+                    if (before != null && !matches) {
+                        rows.remove(hashId.apply(before));
+                    }
+                    if (matches) {
+                        rows.put(hashId.apply(after), after);
+                    }
+                }
+                snapshot = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The rows of the view, shared by the readers until the next change
+         */
+        List<T> rows() {
+            lock.lock();
+            try {
+                if (snapshot == null) {
+                    snapshot = List.copyOf(rows.values());
+                }
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * View holding the aggregates of the rows matching a criteria
+     * Counts, sums and averages follow the changes, a minimum or a maximum cannot follow the removal of the row holding
+     * it: the view is then stale and its groups are computed again from the table at the next read
+     */
+    static final class Aggregates<T> extends MaterializedView<T> {
+
+        private final List<Criteria.Condition> conditions;
+        private final Predicate<T> matches;
+        private final Aggregation.Plan plan;
+        private final TableStorage<T> storage;
+        private Aggregation.Groups groups;
+        private List<Map<String, Object>> results;
+
+        /**
+         * @param conditions The resolved conditions of the criteria
+         * @param plan       The aggregation
+         * @param storage    The table or a partition of the table, giving the values of the columns as they are stored
+         * @param groups     The groups of the rows of the table, computed under the write lock of the table
+         */
+        Aggregates(String name, Class<T> entity, List<Criteria.Condition> conditions, Aggregation.Plan plan, TableStorage<T> storage, Aggregation.Groups groups) {
+            super(name, entity);
+            this.conditions = conditions;
+            this.matches = Criteria.compile(conditions, storage::storedValue);
+            this.plan = plan;
+            this.storage = storage;
+            this.groups = groups;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void apply(List<ChangeLog.Change> changes) {
+            lock.lock();
+            try {
+                for (ChangeLog.Change change : changes) {
+                    if (groups == null) break;
+                    T before = (T) change.before();
+                    T after = (T) change.after();
+                    if (before != null && matches.test(before) && !groups.remove(values(before))) {
+                        groups = null;
+                        break;
+                    }
+                    if (after != null && matches.test(after)) {
+                        groups.add(values(after));
+                    }
+                }
+                results = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return true if the groups must be computed again from the table
+         */
+        boolean isStale() {
+            lock.lock();
+            try {
+                return groups == null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Replace the groups by the ones computed from the table, callers must hold the write lock of the table
+         *
+         * @param groups The groups
+         */
+        void refresh(Aggregation.Groups groups) {
+            lock.lock();
+            try {
+                this.groups = groups;
+                results = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The aggregates of every group, shared by the readers until the next change, null if the view is stale
+         */
+        List<Map<String, Object>> results() {
+            lock.lock();
+            try {
+                if (groups == null) return null;
+                if (results == null) {
+                    results = groups.results().stream().map(Collections::unmodifiableMap).toList();
+                }
+                return results;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Criteria.Condition> conditions() {
+            return conditions;
+        }
+
+        Aggregation.Plan plan() {
+            return plan;
+        }
+
+        private Object[] values(T row) {
+            Object[] values = new Object[plan.columns().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = storage.storedValue(row, plan.columns().get(i));
+            }
+            return values;
+        }
+    }
+}
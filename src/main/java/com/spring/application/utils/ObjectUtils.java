@@ -1,8 +1,5 @@
 package com.spring.application.utils;
 
-import jakarta.persistence.Column;
-
-import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -14,16 +11,14 @@ public class ObjectUtils {
             throw new IllegalArgumentException("Map and Class must not be null");
         }
         try {
-            T instance = clazz.getDeclaredConstructor().newInstance();
-            for (Field field : clazz.getDeclaredFields()) {
-                field.setAccessible(true);
-                String key = field.isAnnotationPresent(Column.class) ? field.getAnnotation(Column.class).name() : field.getName();
-                if (map.containsKey(key)) {
-                    Object value = map.get(key);
-                    if (value != null && field.getType().isAssignableFrom(value.getClass())) {
-                        field.set(instance, value);
-                    } else if (value != null) {
-                        field.set(instance, convertValue(value, field.getType()));
+            // The accessors of the class are built once and reused for every object
+            EntityMapper<T> mapper = EntityMapper.of(clazz);
+            T instance = mapper.newInstance();
+            for (EntityMapper.Property property : mapper.properties()) {
+                if (map.containsKey(property.key())) {
+                    Object value = map.get(property.key());
+                    if (value != null) {
+                        property.set(instance, convertValue(value, property.type()));
                     }
                 }
             }
@@ -33,7 +28,10 @@ public class ObjectUtils {
         }
     }
 
-    private static Object convertValue(Object value, Class<?> targetType) {
+    static Object convertValue(Object value, Class<?> targetType) {
+        if (targetType.isInstance(value) || targetType.isPrimitive() && isBoxOf(value, targetType)) {
+            return value;
+        }
         if (targetType.isAssignableFrom(Integer.class) || targetType.isAssignableFrom(int.class)) {
             return NumberUtils.toInt(value);
         } else if (targetType.isAssignableFrom(Double.class) || targetType.isAssignableFrom(double.class)) {
@@ -49,4 +47,10 @@ public class ObjectUtils {
         }
         throw new IllegalArgumentException("Unsupported target type: " + targetType.getName());
     }
+
+    private static boolean isBoxOf(Object value, Class<?> primitive) {
+        return primitive == int.class && value instanceof Integer
+                || primitive == double.class && value instanceof Double
+                || primitive == boolean.class && value instanceof Boolean;
+    }
 }
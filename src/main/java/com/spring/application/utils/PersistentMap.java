@@ -0,0 +1,377 @@
+package com.spring.application.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map sharing its structure with the maps it is derived from
+ * The entries are held by a trie of nodes indexed by 5 bits of the hash of the keys at each level: deriving a map
+ * copies only the nodes on the path of the changed keys, whatever the size of the map
+ * Maps are derived with an Editor, which changes in place the nodes it has copied since the last map it built
+ * Null keys and null values are not supported
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int LAST_SHIFT = 30;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Node(null, 0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Build a map holding the entries of another map
+     *
+     * @param entries The entries
+     * @return The map
+     */
+    static <K, V> PersistentMap<K, V> of(Map<? extends K, ? extends V> entries) {
+        Editor<K, V> editor = PersistentMap.<K, V>empty().edit();
+        entries.forEach(editor::put);
+        return editor.build();
+    }
+
+    /**
+     * Start deriving a map from this one, which is left unchanged
+     *
+     * @return The editor
+     */
+    Editor<K, V> edit() {
+        return new Editor<>(root, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf<K, V> leaf = find(root, key);
+        return leaf == null ? null : leaf.getValue();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new Entries<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Leaf<K, V> find(Node node, Object key) {
+        if (key == null) return null;
+        int hash = key.hashCode();
+        for (int shift = 0; ; shift += BITS) {
+            if (shift > LAST_SHIFT) {
+                // Every bit of the hash is used, the leaves of the node have the same hash
+                for (Object slot : node.slots) {
+                    if (((Leaf<K, V>) slot).getKey().equals(key)) return (Leaf<K, V>) slot;
+                }
+                return null;
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) return null;
+            Object slot = node.slots[index(node.bitmap, bit)];
+            if (slot instanceof Node child) {
+                node = child;
+            } else {
+                Leaf<K, V> leaf = (Leaf<K, V>) slot;
+                return leaf.hash == hash && leaf.getKey().equals(key) ? leaf : null;
+            }
+        }
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /**
+     * Node of the trie, holding a leaf or a child node for each set bit of its bitmap
+     * Below the last level, a node holds the leaves whose keys have the same hash, without bitmap
+     * A node is changed in place only by the editor owning it
+     */
+    private static final class Node {
+
+        private final Object owner;
+        private int bitmap;
+        private Object[] slots;
+
+        private Node(Object owner, int bitmap, Object[] slots) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Leaf<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
+
+        private final int hash;
+
+        private Leaf(K key, V value) {
+            super(key, value);
+            this.hash = key.hashCode();
+        }
+    }
+
+    /**
+     * Derives maps from a map, the maps already built are never changed
+     * Not thread safe
+     *
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     */
+    static final class Editor<K, V> {
+
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+
+        private Editor(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        V get(Object key) {
+            Leaf<K, V> leaf = find(root, key);
+            return leaf == null ? null : leaf.getValue();
+        }
+
+        boolean containsKey(Object key) {
+            return find(root, key) != null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Add or replace an entry
+         *
+         * @param key   The key
+         * @param value The value
+         */
+        void put(K key, V value) {
+            Objects.requireNonNull(value);
+            root = put(root, 0, new Leaf<>(key, value));
+        }
+
+        /**
+         * Remove an entry
+         *
+         * @param key The key, ignored if it is not in the map
+         */
+        void remove(Object key) {
+            if (key == null) return;
+            Node changed = remove(root, 0, key.hashCode(), key);
+            root = changed == null ? new Node(owner, 0, new Object[0]) : changed;
+        }
+
+        /**
+         * Build the map holding the entries, the next changes copy the nodes shared with it
+         *
+         * @return The map
+         */
+        PersistentMap<K, V> build() {
+            owner = new Object();
+            return size == 0 ? empty() : new PersistentMap<>(root, size);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node put(Node node, int shift, Leaf<K, V> leaf) {
+            if (shift > LAST_SHIFT) {
+                for (int i = 0; i < node.slots.length; i++) {
+                    if (((Leaf<K, V>) node.slots[i]).getKey().equals(leaf.getKey())) {
+                        return set(node, i, leaf);
+                    }
+                }
+                size++;
+                return insert(node, 0, node.slots.length, leaf);
+            }
+            int bit = bit(leaf.hash, shift);
+            int index = index(node.bitmap, bit);
+            if ((node.bitmap & bit) == 0) {
+                size++;
+                return insert(node, bit, index, leaf);
+            }
+            Object slot = node.slots[index];
+            if (slot instanceof Node child) {
+                Node changed = put(child, shift + BITS, leaf);
+                return changed == child ? node : set(node, index, changed);
+            }
+            Leaf<K, V> existing = (Leaf<K, V>) slot;
+            if (existing.hash == leaf.hash && existing.getKey().equals(leaf.getKey())) {
+                return existing.getValue().equals(leaf.getValue()) ? node : set(node, index, leaf);
+            }
+            size++;
+            return set(node, index, split(shift + BITS, existing, leaf));
+        }
+
+        private Node split(int shift, Leaf<K, V> a, Leaf<K, V> b) {
+            if (shift > LAST_SHIFT) {
+                return new Node(owner, 0, new Object[]{a, b});
+            }
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new Node(owner, bitA, new Object[]{split(shift + BITS, a, b)});
+            }
+            return new Node(owner, bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[]{a, b} : new Object[]{b, a});
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node remove(Node node, int shift, int hash, Object key) {
+            if (shift > LAST_SHIFT) {
+                for (int i = 0; i < node.slots.length; i++) {
+                    if (((Leaf<K, V>) node.slots[i]).getKey().equals(key)) {
+                        size--;
+                        return delete(node, 0, i);
+                    }
+                }
+                return node;
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) return node;
+            int index = index(node.bitmap, bit);
+            Object slot = node.slots[index];
+            if (slot instanceof Node child) {
+                Node changed = remove(child, shift + BITS, hash, key);
+                if (changed == child) return node;
+                if (changed == null) return delete(node, bit, index);
+                // A single leaf left in the child moves up to keep the paths short
+                return set(node, index, changed.slots.length == 1 && changed.slots[0] instanceof Leaf ? changed.slots[0] : changed);
+            }
+            Leaf<K, V> leaf = (Leaf<K, V>) slot;
+            if (leaf.hash != hash || !leaf.getKey().equals(key)) return node;
+            size--;
+            return delete(node, bit, index);
+        }
+
+        private Node set(Node node, int index, Object slot) {
+            if (node.owner == owner) {
+                node.slots[index] = slot;
+                return node;
+            }
+            Object[] slots = node.slots.clone();
+            slots[index] = slot;
+            return new Node(owner, node.bitmap, slots);
+        }
+
+        private Node insert(Node node, int bit, int index, Object slot) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = slot;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return replace(node, node.bitmap | bit, slots);
+        }
+
+        private Node delete(Node node, int bit, int index) {
+            if (node.slots.length == 1) return null;
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+            return replace(node, node.bitmap & ~bit, slots);
+        }
+
+        private Node replace(Node node, int bitmap, Object[] slots) {
+            if (node.owner == owner) {
+                node.bitmap = bitmap;
+                node.slots = slots;
+                return node;
+            }
+            return new Node(owner, bitmap, slots);
+        }
+    }
+
+    /**
+     * Iterates over the leaves of a trie, depth first
+     */
+    private static final class Entries<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> nodes = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Leaf<K, V> next;
+
+        private Entries(Node root) {
+            nodes.push(root.slots);
+            positions.push(0);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Leaf<K, V> leaf = next;
+            advance();
+            return leaf;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!nodes.isEmpty()) {
+                Object[] slots = nodes.peek();
+                int position = positions.pop();
+                if (position == slots.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                if (slots[position] instanceof Node child) {
+                    nodes.push(child.slots);
+                    positions.push(0);
+                } else {
+                    next = (Leaf<K, V>) slots[position];
+                    return;
+                }
+            }
+        }
+    }
+}
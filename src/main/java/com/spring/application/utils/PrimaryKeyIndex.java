@@ -0,0 +1,255 @@
+package com.spring.application.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Primary key index of a LocalDatabase table
+ * Each entry maps the hash of the id columns of a row to the position of that row in the table files
+ * The index is stored next to the table file as a list of "position;hashId" lines, each written batch
+ * being closed by a "#version" marker identifying the state of the table files covered by the index
+ * A position of -1 means that the id has been removed
+ * The entries are immutable maps sharing their structure: a table version keeps the entries it was taken with
+ * while the writers derive the next ones, copying only the paths of the changed ids
+ * The index is loaded and written under a lock rather than a monitor, so that virtual threads waiting for the
+ * disk release their carrier thread
+ */
+class PrimaryKeyIndex {
+
+    private static final String MARKER = "#";
+    private static final String SEPARATOR = ";";
+    private static final long REMOVED = -1;
+
+    private final Path indexPath;
+    private final Lock lock = new ReentrantLock();
+    private volatile PersistentMap<String, Long> offsets = PersistentMap.empty();
+    private volatile boolean loaded;
+
+    PrimaryKeyIndex(Path indexPath) {
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * Get the lock held while the index is loaded or written
+     *
+     * @return The lock, reentrant
+     */
+    Lock lock() {
+        return lock;
+    }
+
+    /**
+     * Check if the index has been loaded in memory
+     *
+     * @return true if the index is loaded
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Load the index from the disk
+     * The index is rejected if it is missing, incomplete or if it does not match the table files
+     *
+     * @param version The current version of the table files
+     * @return true if the index has been loaded, false if it must be rebuilt
+     */
+    boolean load(String version) throws IOException {
+        lock.lock();
+        try {
+            offsets = PersistentMap.empty();
+            loaded = false;
+            if (!Files.exists(indexPath)) {
+                return false;
+            }
+            PersistentMap.Editor<String, Long> entries = offsets.edit();
+            String covered = null;
+            try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(MARKER)) {
+                        covered = line.substring(MARKER.length());
+                    } else {
+                        // Entries must be closed by a marker, otherwise the last batch was not fully written
+                        covered = null;
+                        int separator = line.indexOf(SEPARATOR);
+                        long position = Long.parseLong(line.substring(0, separator));
+                        if (position == REMOVED) {
+                            entries.remove(line.substring(separator + 1));
+                        } else {
+                            entries.put(line.substring(separator + 1), position);
+                        }
+                    }
+                }
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                covered = null;
+            }
+            if (!version.equals(covered)) {
+                return false;
+            }
+            offsets = entries.build();
+            loaded = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the position of a row in the table files
+     *
+     * @param hashId The hash of the id columns
+     * @return The position of the row or null if the id is unknown
+     */
+    Long get(String hashId) {
+        return offsets.get(hashId);
+    }
+
+    /**
+     * Check if an id exists in the table
+     *
+     * @param hashId The hash of the id columns
+     * @return true if the id exists
+     */
+    boolean contains(String hashId) {
+        return offsets.containsKey(hashId);
+    }
+
+    /**
+     * Get the number of ids in the index
+     *
+     * @return The number of ids
+     */
+    int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Get a copy of the entries of the index
+     *
+     * @return A Map with the hash of the id columns as keys and the positions as values
+     */
+    Map<String, Long> entries() {
+        return new LinkedHashMap<>(offsets);
+    }
+
+    /**
+     * Get the ids of the table by position
+     *
+     * @return A Map with the positions as keys and the hash of the id columns as values
+     */
+    Map<Long, String> byOffset() {
+        Map<Long, String> result = new HashMap<>(offsets.size());
+        offsets.forEach((hashId, offset) -> result.put(offset, hashId));
+        return result;
+    }
+
+    /**
+     * Move an id to a new position in memory only if it is still at the expected position
+     *
+     * @param hashId   The hash of the id columns
+     * @param expected The expected current position
+     * @param position The new position
+     * @return true if the id has been moved
+     */
+    boolean replace(String hashId, long expected, long position) {
+        lock.lock();
+        try {
+            if (!Objects.equals(offsets.get(hashId), expected)) return false;
+            PersistentMap.Editor<String, Long> changed = offsets.edit();
+            changed.put(hashId, position);
+            offsets = changed.build();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add entries to the index after records have been appended to the table files
+     * A null position removes the id from the index
+     *
+     * @param entries The hash of the id columns and the position of the new rows
+     * @param version The version of the table files after the append
+     */
+    void append(Map<String, Long> entries, String version) throws IOException {
+        lock.lock();
+        try {
+            write(entries, version, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            PersistentMap.Editor<String, Long> changed = offsets.edit();
+            entries.forEach((hashId, position) -> {
+                if (position == null) {
+                    changed.remove(hashId);
+                } else {
+                    changed.put(hashId, position);
+                }
+            });
+            offsets = changed.build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the whole index after the table files have been rewritten
+     *
+     * @param entries The hash of the id columns and the position of every row
+     * @param version The version of the table files
+     */
+    void rewrite(Map<String, Long> entries, String version) throws IOException {
+        lock.lock();
+        try {
+            write(entries, version, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            offsets = PersistentMap.of(entries);
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the index from memory and from the disk
+     */
+    void clear() throws IOException {
+        lock.lock();
+        try {
+            offsets = PersistentMap.empty();
+            loaded = false;
+            Files.deleteIfExists(indexPath);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the current entries, without copying them
+     * The returned map is immutable, the next changes of the index derive new entries
+     *
+     * @return The entries
+     */
+    Map<String, Long> view() {
+        return offsets;
+    }
+
+    private void write(Map<String, Long> entries, String version, StandardOpenOption... options) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(indexPath, StandardCharsets.UTF_8, options)) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(Objects.requireNonNullElse(entry.getValue(), REMOVED) + SEPARATOR + entry.getKey());
+                writer.newLine();
+            }
+            writer.write(MARKER + version);
+            writer.newLine();
+        }
+    }
+}
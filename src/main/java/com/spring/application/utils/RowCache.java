@@ -0,0 +1,108 @@
+package com.spring.application.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the decoded rows of the LocalDatabase tables
+ * Each table is cached with the stamp of its files when it was read, a different stamp means the table has changed
+ * The memory is bounded by a number of bytes estimated from the decoded rows, the size of a row being sampled when
+ * the table is read, the least recently used tables being evicted first
+ */
+class RowCache {
+
+    private record Entry(Object stamp, List<?> rows, long bytes) {
+    }
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long bytes;
+
+    RowCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Check if the cache can hold rows
+     *
+     * @return true if the cache is enabled
+     */
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Check if the rows of a table can be cached
+     *
+     * @param size The estimated size of the rows in bytes
+     * @return true if the cache is enabled and large enough
+     */
+    boolean fits(long size) {
+        return isEnabled() && size <= maxBytes;
+    }
+
+    /**
+     * Get the cached rows of a table
+     *
+     * @param tableName The name of the table
+     * @param stamp     The current stamp of the table files
+     * @return The rows or null if the table is not cached or has changed
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> List<T> get(String tableName, Object stamp) {
+        Entry entry = entries.get(tableName);
+        if (entry == null || !Objects.equals(entry.stamp(), stamp)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (List<T>) entry.rows();
+    }
+
+    /**
+     * Cache the rows of a table, the least recently used tables are evicted to make room for them
+     *
+     * @param tableName The name of the table
+     * @param stamp     The stamp of the table files the rows have been read from
+     * @param rows      The rows
+     * @param size      The estimated size of the rows in bytes
+     */
+    synchronized void put(String tableName, Object stamp, List<?> rows, long size) {
+        invalidate(tableName);
+        if (size > maxBytes) return;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes + size > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+        entries.put(tableName, new Entry(stamp, rows, size));
+        bytes += size;
+    }
+
+    /**
+     * Remove a table from the cache
+     *
+     * @param tableName The name of the table
+     */
+    synchronized void invalidate(String tableName) {
+        Entry entry = entries.remove(tableName);
+        if (entry != null) {
+            bytes -= entry.bytes();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,298 @@
+package com.spring.application.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Secondary index of a column of a LocalDatabase table
+ * Each entry maps a value of the column to the hash of the id columns of the rows holding it, sorted by value
+ * so that equality and range lookups do not scan the table, null values are not indexed
+ * The index is stored next to the table file as a list of "+value;hashId" and "-hashId" lines, each written batch
+ * being closed by a "#version" marker identifying the state of the table files covered by the index
+ * Every change of the entries in memory is counted, so that a table version can check that the index still
+ * matches it
+ * The entries are read and written under a lock rather than a monitor, so that virtual threads waiting for the
+ * disk release their carrier thread
+ */
+class SecondaryIndex {
+
+    private static final String MARKER = "#";
+    private static final String ADDED = "+";
+    private static final String REMOVED = "-";
+    private static final String SEPARATOR = ";";
+
+    private final String column;
+    private final Path indexPath;
+    private final Function<Object, String> encoder;
+    private final Function<String, Object> decoder;
+    private final Lock lock = new ReentrantLock();
+    private final NavigableMap<Object, Set<String>> ids = new TreeMap<>(SecondaryIndex::compare);
+    private final Map<String, Object> values = new HashMap<>();
+    private long written;
+    private volatile long changes;
+    private volatile boolean loaded;
+
+    SecondaryIndex(String column, Path indexPath, Function<Object, String> encoder, Function<String, Object> decoder) {
+        this.column = column;
+        this.indexPath = indexPath;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the lock held while the entries are read or written
+     *
+     * @return The lock, reentrant
+     */
+    Lock lock() {
+        return lock;
+    }
+
+    /**
+     * Check if the index has been loaded in memory
+     *
+     * @return true if the index is loaded
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Load the index from the disk
+     * The index is rejected if it is missing, incomplete or if it does not match the table files
+     *
+     * @param version The current version of the table files
+     * @return true if the index has been loaded, false if it must be rebuilt
+     */
+    boolean load(String version) throws IOException {
+        lock.lock();
+        try {
+            clearMemory();
+            if (!Files.exists(indexPath)) {
+                return false;
+            }
+            String covered = null;
+            try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    written++;
+                    if (line.startsWith(MARKER)) {
+                        covered = line.substring(MARKER.length());
+                    } else {
+                        // Entries must be closed by a marker, otherwise the last batch was not fully written
+                        covered = null;
+                        if (line.startsWith(REMOVED)) {
+                            remove(line.substring(REMOVED.length()));
+                        } else {
+                            int separator = line.indexOf(SEPARATOR);
+                            put(line.substring(separator + 1), decoder.apply(line.substring(ADDED.length(), separator)));
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                covered = null;
+            }
+            if (!version.equals(covered)) {
+                clearMemory();
+                return false;
+            }
+            loaded = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of changes of the entries in memory
+     *
+     * @return The number of changes
+     */
+    long changes() {
+        return changes;
+    }
+
+    /**
+     * Get the ids of the rows holding a value in a range if the entries have not changed since a table version
+     *
+     * @param from    The lowest value, included, or null for no lower bound
+     * @param to      The greatest value, included, or null for no upper bound
+     * @param changes The number of changes when the table version was taken
+     * @return The hash of the id columns of the rows, or null if the entries have changed since
+     */
+    Set<String> range(Object from, Object to, long changes) {
+        lock.lock();
+        try {
+            return this.changes == changes ? range(from, to) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the rows holding a value in a range, sorted by value
+     *
+     * @param from The lowest value, included, or null for no lower bound
+     * @param to   The greatest value, included, or null for no upper bound
+     * @return The hash of the id columns of the rows
+     */
+    Set<String> range(Object from, Object to) {
+        lock.lock();
+        try {
+            if (from != null && to != null && compare(from, to) > 0) {
+                return new LinkedHashSet<>();
+            }
+            NavigableMap<Object, Set<String>> range = ids;
+            if (from != null) range = range.tailMap(from, true);
+            if (to != null) range = range.headMap(to, true);
+            Set<String> result = new LinkedHashSet<>();
+            range.values().forEach(result::addAll);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the rows written in the table files, replacing their previous values, and remove the deleted ids
+     *
+     * @param rows    The value of the column by hash of the id columns of the written rows
+     * @param hashIds The hash of the id columns of the deleted rows
+     * @param version The version of the table files after the write
+     */
+    void append(Map<String, Object> rows, Collection<String> hashIds, String version) throws IOException {
+        lock.lock();
+        try {
+            List<String> lines = new ArrayList<>(rows.size() + hashIds.size() + 1);
+            rows.forEach((hashId, value) -> {
+                lines.add(REMOVED + hashId);
+                if (value != null) lines.add(ADDED + encoder.apply(value) + SEPARATOR + hashId);
+            });
+            hashIds.forEach(hashId -> lines.add(REMOVED + hashId));
+            lines.add(MARKER + version);
+
+            rows.forEach((hashId, value) -> {
+                remove(hashId);
+                if (value != null) put(hashId, value);
+            });
+            hashIds.forEach(this::remove);
+            changes++;
+
+            // The file is rewritten once it holds more removed entries than live ones
+            if (written + lines.size() > 2L * values.size() + 1024) {
+                write(version);
+            } else {
+                write(lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                written += lines.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the whole index
+     *
+     * @param rows    The value of the column by hash of the id columns of every row
+     * @param version The version of the table files
+     */
+    void rewrite(Map<String, Object> rows, String version) throws IOException {
+        lock.lock();
+        try {
+            clearMemory();
+            rows.forEach((hashId, value) -> {
+                if (value != null) put(hashId, value);
+            });
+            write(version);
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the index from memory and from the disk
+     */
+    void clear() throws IOException {
+        lock.lock();
+        try {
+            clearMemory();
+            Files.deleteIfExists(indexPath);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(String version) throws IOException {
+        List<String> lines = new ArrayList<>(values.size() + 1);
+        values.forEach((hashId, value) -> lines.add(ADDED + encoder.apply(value) + SEPARATOR + hashId));
+        lines.add(MARKER + version);
+        write(lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        written = lines.size();
+    }
+
+    private void write(List<String> lines, StandardOpenOption... options) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(indexPath, StandardCharsets.UTF_8, options)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    private void put(String hashId, Object value) {
+        values.put(hashId, value);
+        ids.computeIfAbsent(value, k -> new LinkedHashSet<>()).add(hashId);
+    }
+
+    private void remove(String hashId) {
+        Object value = values.remove(hashId);
+        if (value == null) return;
+        Set<String> rows = ids.get(value);
+        rows.remove(hashId);
+        if (rows.isEmpty()) {
+            ids.remove(value);
+        }
+    }
+
+    private void clearMemory() {
+        ids.clear();
+        values.clear();
+        written = 0;
+        changes++;
+        loaded = false;
+    }
+
+    /**
+     * Check if a value is in a range, with the same comparison as the index
+     *
+     * @param value The value
+     * @param from  The lowest value, included, or null for no lower bound
+     * @param to    The greatest value, included, or null for no upper bound
+     * @return true if the value is not null and is in the range
+     */
+    static boolean between(Object value, Object from, Object to) {
+        return value != null && (from == null || compare(from, value) <= 0) && (to == null || compare(value, to) <= 0);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        if (!(a instanceof Comparable comparable) || !a.getClass().equals(b.getClass())) {
+            throw new IllegalArgumentException("Value " + b + " cannot be compared with the indexed value " + a);
+        }
+        return comparable.compareTo(b);
+    }
+}
@@ -0,0 +1,191 @@
+package com.spring.application.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Scan engine decoding and filtering the rows of the tables in parallel, in a pool of its own
+ * Text files are split in chunks of bytes, a chunk holding the lines starting in it so that no line is split
+ * The results of the chunks are concatenated in the order of the file, nothing is sorted
+ * Small files and lists are read on the calling thread
+ */
+final class TableScanner implements Closeable {
+
+    private static final int CHUNK_ROWS = 4096;
+
+    /**
+     * Mapping of a line of a chunk
+     *
+     * @param <R> The result
+     */
+    @FunctionalInterface
+    interface LineMapper<R> {
+        /**
+         * @param line The cursor on the line, only valid during the call
+         * @return The result or null to skip the line
+         */
+        R map(TableStorage.LineCursor line);
+    }
+
+    /**
+     * Task of a parallel scan, run once per item
+     *
+     * @param <T> The item
+     * @param <R> The result
+     */
+    @FunctionalInterface
+    interface Task<T, R> {
+        R run(T item) throws IOException;
+    }
+
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+
+    /**
+     * @param parallelism The number of threads of the pool, 0 for the number of processors
+     * @param chunkSize   The number of bytes of the chunks of the text files
+     */
+    TableScanner(int parallelism, long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Scan chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("local-database-scan-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Map the lines of a file, chunk by chunk in parallel
+     *
+     * @param channel The file
+     * @param size    The number of bytes to read
+     * @param mapper  The mapping of the lines, called concurrently
+     * @return The non-null results, in the order of the lines
+     */
+    <R> List<R> scan(FileChannel channel, long size, LineMapper<R> mapper) throws IOException {
+        if (size <= chunkSize) {
+            return read(channel, size, 0, size, mapper);
+        }
+        List<Long> starts = new ArrayList<>();
+        for (long start = 0; start < size; start += chunkSize) {
+            starts.add(start);
+        }
+        return concat(invokeAll(starts, start -> read(channel, size, start, Math.min(size, start + chunkSize), mapper)));
+    }
+
+    /**
+     * Accumulate the lines of a file, chunk by chunk in parallel
+     *
+     * @param channel     The file
+     * @param size        The number of bytes to read
+     * @param accumulator The new accumulator of a chunk
+     * @param consumer    The accumulation of a line into the accumulator of its chunk
+     * @return The accumulators of the chunks, in the order of the file
+     */
+    <A> List<A> fold(FileChannel channel, long size, Supplier<A> accumulator, BiConsumer<A, TableStorage.LineCursor> consumer) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        for (long start = 0; start < Math.max(size, 1); start += chunkSize) {
+            starts.add(start);
+        }
+        return invokeAll(starts, start -> {
+            A result = accumulator.get();
+            TableStorage.LineCursor cursor = new TableStorage.LineCursor(channel, size, start, Math.min(size, start + chunkSize));
+            while (cursor.hasNext()) {
+                consumer.accept(result, cursor.next());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Map the items of a list, by chunks in parallel
+     *
+     * @param items  The items
+     * @param mapper The mapping of the items, called concurrently
+     * @return The non-null results, in the order of the items
+     */
+    <T, R> List<R> map(List<T> items, Function<T, R> mapper) throws IOException {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += CHUNK_ROWS) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + CHUNK_ROWS)));
+        }
+        return concat(invokeAll(chunks, chunk -> {
+            List<R> results = new ArrayList<>(chunk.size());
+            for (T item : chunk) {
+                R result = mapper.apply(item);
+                if (result != null) results.add(result);
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Run a task on every item in parallel, the calling thread waits for all of them
+     *
+     * @param items The items
+     * @param task  The task, which must not wait for other threads
+     * @return The results, in the order of the items
+     */
+    <T, R> List<R> invokeAll(List<T> items, Task<T, R> task) throws IOException {
+        if (items.size() <= 1) {
+            List<R> results = new ArrayList<>(1);
+            for (T item : items) results.add(task.run(item));
+            return results;
+        }
+        RecursiveTask<List<R>> all = new RecursiveTask<>() {
+            @Override
+            protected List<R> compute() {
+                List<ForkJoinTask<R>> tasks = items.stream().map(item -> ForkJoinTask.adapt(() -> {
+                    try {
+                        return task.run(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).toList();
+                return ForkJoinTask.invokeAll(tasks).stream().map(ForkJoinTask::join).toList();
+            }
+        };
+        try {
+            return ForkJoinTask.getPool() == pool ? all.invoke() : pool.invoke(all);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private static <R> List<R> read(FileChannel channel, long size, long from, long to, LineMapper<R> mapper) {
+        List<R> results = new ArrayList<>();
+        TableStorage.LineCursor cursor = new TableStorage.LineCursor(channel, size, from, to);
+        while (cursor.hasNext()) {
+            R result = mapper.map(cursor.next());
+            if (result != null) results.add(result);
+        }
+        return results;
+    }
+
+    private static <R> List<R> concat(List<List<R>> chunks) {
+        if (chunks.size() == 1) return chunks.getFirst();
+        List<R> results = new ArrayList<>(chunks.stream().mapToInt(List::size).sum());
+        chunks.forEach(results::addAll);
+        return results;
+    }
+}
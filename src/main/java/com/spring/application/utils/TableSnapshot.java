@@ -0,0 +1,153 @@
+package com.spring.application.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable version of a LocalDatabase table, read without the lock of the table
+ * The files of the table are opened when the version is taken and only the bytes they held at that time are read:
+ * records appended afterward are beyond the recorded sizes, and rewritten or compacted files replace the opened
+ * ones without changing them
+ * The primary key entries of the version are immutable, writers derive new entries sharing their structure
+ * The version must be closed once read, its files are closed when it is no longer used
+ */
+final class TableSnapshot implements Closeable {
+
+    private final TableStorage<?> owner;
+    private final Map<Path, FileChannel> channels;
+    private final Map<Path, Long> sizes;
+    private final Map<String, Long> primaryKeys;
+    private final Map<String, Long> indexChanges;
+    private final Object stamp;
+    private int references = 1;
+
+    private TableSnapshot(TableStorage<?> owner, Map<Path, FileChannel> channels, Map<Path, Long> sizes,
+                          Map<String, Long> primaryKeys, Map<String, Long> indexChanges, Object stamp) {
+        this.owner = owner;
+        this.channels = channels;
+        this.sizes = sizes;
+        this.primaryKeys = primaryKeys;
+        this.indexChanges = indexChanges;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Open the files of a table, callers must hold the lock of the table
+     *
+     * @param owner        The storage publishing the version, null for a version closed as soon as it is read
+     * @param files        The files of the table
+     * @param primaryKeys  The primary key entries of the version
+     * @param indexChanges The number of changes of the loaded secondary indexes by column
+     * @param stamp        The stamp of the table files
+     * @return The version
+     */
+    static TableSnapshot open(TableStorage<?> owner, List<Path> files, Map<String, Long> primaryKeys,
+                              Map<String, Long> indexChanges, Object stamp) throws IOException {
+        Map<Path, FileChannel> channels = new LinkedHashMap<>();
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        try {
+            for (Path file : files) {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.put(file, channel);
+                sizes.put(file, channel.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            TableStorage.closeAll(new ArrayList<>(channels.values()));
+            throw e;
+        }
+        return new TableSnapshot(owner, channels, sizes, primaryKeys, Map.copyOf(indexChanges), stamp);
+    }
+
+    /**
+     * Get the files of the version, in the order of the table
+     *
+     * @return The files
+     */
+    List<Path> files() {
+        return List.copyOf(channels.keySet());
+    }
+
+    /**
+     * Get an opened file of the version
+     *
+     * @param file The file
+     * @return The channel or null if the file is not part of the version
+     */
+    FileChannel channel(Path file) {
+        return channels.get(file);
+    }
+
+    /**
+     * Get the size of a file when the version was taken
+     *
+     * @param file The file
+     * @return The number of bytes to read
+     */
+    long size(Path file) {
+        return sizes.getOrDefault(file, 0L);
+    }
+
+    /**
+     * Get the size of all the files of the version
+     *
+     * @return The number of bytes
+     */
+    long size() {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Get the primary key entries of the version
+     *
+     * @return The position of every row by hash of its id columns, read-only
+     */
+    Map<String, Long> primaryKeys() {
+        return primaryKeys;
+    }
+
+    /**
+     * Get the number of changes of a secondary index when the version was taken
+     *
+     * @param column The indexed column
+     * @return The number of changes or null if the index was not loaded
+     */
+    Long indexChanges(String column) {
+        return indexChanges.get(column);
+    }
+
+    Object stamp() {
+        return stamp;
+    }
+
+    // The references are guarded by the owner
+
+    boolean retain() {
+        if (references == 0) return false;
+        references++;
+        return true;
+    }
+
+    boolean release() {
+        return --references == 0;
+    }
+
+    void closeFiles() {
+        TableStorage.closeAll(new ArrayList<>(channels.values()));
+    }
+
+    @Override
+    public void close() {
+        if (owner == null) {
+            closeFiles();
+        } else {
+            owner.release(this);
+        }
+    }
+}
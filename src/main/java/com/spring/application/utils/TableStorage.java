@@ -0,0 +1,1162 @@
+package com.spring.application.utils;
+
+import com.spring.application.annotations.Indexed;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.NonUniqueResultException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage of the rows of a LocalDatabase table
+ * The first line of the table file is the header, holding the column names
+ * Implementations are not thread safe, writers must hold the lock of the table
+ * Readers do not take the lock, they read the last version of the table published by the writers (see TableSnapshot)
+ *
+ * @param <T> The entity stored in the table
+ */
+abstract class TableStorage<T> {
+
+    static final String DELIMITER = ";";
+    static final String EXTENSION = ".csv";
+    static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int SIZE_SAMPLE = 64;
+    private static final long OBJECT_BYTES = 16;
+    private static final long REFERENCE_BYTES = 8;
+
+    protected final Class<T> entity;
+    protected final String tableName;
+    protected final Path folder;
+    protected final Path tablePath;
+    protected final List<String> idColumns;
+    protected final PrimaryKeyIndex index;
+    protected final WriteAheadLog wal;
+    protected final TableScanner scanner;
+    protected final Map<String, SecondaryIndex> secondaryIndexes = new LinkedHashMap<>();
+    protected final Map<String, Class<?>> columnTypes = new LinkedHashMap<>();
+    protected final Map<String, Function<String, Object>> parsers = new HashMap<>();
+    private final CsvRowCodec<T> codec;
+    private final EntityMapper<T> mapper;
+    private final AtomicLong changes = new AtomicLong();
+    // Guards the published version, a lock rather than a monitor since releasing a version closes its files
+    private final Lock versionsLock = new ReentrantLock();
+    private TableSnapshot current;
+
+    TableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner) {
+        this(entity, tableName, folder, wal, scanner, EXTENSION);
+    }
+
+    TableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner, String extension) {
+        this.entity = entity;
+        this.tableName = tableName.trim();
+        // The files are logged relatively to the folder of the write-ahead log, which is absolute
+        this.folder = folder.toAbsolutePath().normalize();
+        this.tablePath = this.folder.resolve(this.tableName + extension);
+        this.idColumns = getIdColumns(entity);
+        this.index = new PrimaryKeyIndex(this.folder.resolve(this.tableName + ".pk.idx"));
+        this.wal = wal;
+        this.scanner = scanner;
+        this.mapper = EntityMapper.of(entity);
+        this.codec = new CsvRowCodec<>(entity, DELIMITER);
+        for (EntityMapper.Property property : mapper.properties()) {
+            if (property.column()) {
+                columnTypes.put(property.key(), property.type());
+                parsers.put(property.key(), codec.parser(property.key()));
+            }
+        }
+
+        // Secondary indexes refer to the rows by id
+        if (!idColumns.isEmpty()) {
+            for (String column : getIndexedColumns(entity)) {
+                secondaryIndexes.put(column, new SecondaryIndex(column, this.folder.resolve(this.tableName + "." + column + ".idx"),
+                        codec::encodeValue,
+                        codec.parser(column)));
+            }
+        }
+    }
+
+    /**
+     * Read all the rows of the table, callers must hold the lock of the table
+     *
+     * @return The rows
+     */
+    List<T> read() throws IOException {
+        try (TableSnapshot snapshot = open(null)) {
+            return read(snapshot);
+        }
+    }
+
+    /**
+     * Read all the rows of a version of the table
+     *
+     * @param snapshot The version
+     * @return The rows
+     */
+    abstract List<T> read(TableSnapshot snapshot) throws IOException;
+
+    /**
+     * Get the content of the table file of a new table, holding no row
+     *
+     * @return The content of the file
+     */
+    byte[] emptyTable() throws IOException {
+        return (String.join(DELIMITER, columnTypes.keySet()) + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the rows of a version matching conditions and a predicate, in parallel in the scan pool
+     *
+     * @param snapshot   The version
+     * @param conditions The conditions, empty for all the rows
+     * @param where      The predicate on the decoded rows, null for all the rows
+     * @return The matching rows, in the order of the table
+     */
+    abstract List<T> scan(TableSnapshot snapshot, List<Criteria.Condition> conditions, Predicate<T> where) throws IOException;
+
+    /**
+     * Read the rows of a version of the table lazily
+     *
+     * @param snapshot The version
+     * @return The rows
+     */
+    abstract Stream<T> stream(TableSnapshot snapshot) throws IOException;
+
+    /**
+     * Read lazily the rows of a version matching conditions, which are evaluated before the rows are decoded
+     *
+     * @param snapshot   The version
+     * @param conditions The conditions
+     * @return The matching rows
+     */
+    abstract Stream<T> stream(TableSnapshot snapshot, List<Criteria.Condition> conditions) throws IOException;
+
+    /**
+     * Aggregate the rows of a version matching conditions in a single pass, in parallel in the scan pool
+     * Only the columns of the conditions and of the aggregation are read, the rows are never decoded
+     *
+     * @param snapshot   The version
+     * @param conditions The conditions, empty for all the rows
+     * @param plan       The aggregation
+     * @return The groups of the version
+     */
+    abstract Aggregation.Groups aggregate(TableSnapshot snapshot, List<Criteria.Condition> conditions, Aggregation.Plan plan) throws IOException;
+
+    /**
+     * Find with the indexes the rows of a version which may match conditions
+     *
+     * @param snapshot   The version
+     * @param conditions The conditions
+     * @return The hash of the id columns of the candidate rows, or null if no index can be used
+     */
+    Set<String> candidates(TableSnapshot snapshot, List<Criteria.Condition> conditions) {
+        // Equality on a single id column is answered by the primary key index
+        for (Criteria.Condition condition : conditions) {
+            if (idColumns.equals(List.of(condition.column())) && isEquality(condition)) {
+                return condition.values().stream().map(value -> hashId(value)).collect(Collectors.toCollection(LinkedHashSet::new));
+            }
+        }
+
+        // Equalities are more selective than ranges
+        for (Criteria.Condition condition : conditions) {
+            if (!isEquality(condition)) continue;
+            Set<String> result = new LinkedHashSet<>();
+            for (Object value : condition.values()) {
+                Set<String> hashIds = lookup(snapshot, condition.column(), value, value);
+                if (hashIds == null) {
+                    result = null;
+                    break;
+                }
+                result.addAll(hashIds);
+            }
+            if (result != null) return result;
+        }
+        for (Criteria.Condition condition : conditions) {
+            if (!isRange(condition)) continue;
+            Object value = condition.values().getFirst();
+            Set<String> result = switch (condition.operator()) {
+                case GT, GTE -> lookup(snapshot, condition.column(), value, null);
+                case LT, LTE -> lookup(snapshot, condition.column(), null, value);
+                default -> lookup(snapshot, condition.column(), value, condition.values().getLast());
+            };
+            if (result != null) return result;
+        }
+        return null;
+    }
+
+    /**
+     * Find with a secondary index the rows of a version holding a value in a range
+     * The index is only used if it has not changed since the version was taken
+     *
+     * @param snapshot The version
+     * @param column   The indexed column
+     * @param from     The lowest value, included, or null for no lower bound
+     * @param to       The greatest value, included, or null for no upper bound
+     * @return The hash of the id columns of the rows, or null if the index cannot be used
+     */
+    Set<String> lookup(TableSnapshot snapshot, String column, Object from, Object to) {
+        SecondaryIndex secondaryIndex = secondaryIndexes.get(column);
+        Long changes = snapshot.indexChanges(column);
+        return secondaryIndex == null || changes == null ? null : secondaryIndex.range(from, to, changes);
+    }
+
+    /**
+     * Check if a column has a secondary index which is not loaded yet
+     *
+     * @param column The column
+     * @return true if the index must be loaded, under the lock of the table
+     */
+    boolean needsIndex(String column) {
+        SecondaryIndex secondaryIndex = secondaryIndexes.get(column);
+        return secondaryIndex != null && !secondaryIndex.isLoaded();
+    }
+
+    /**
+     * Read a row of a version by id with the primary key index
+     *
+     * @param snapshot The version
+     * @param hashId   The hash of the id columns
+     * @return The row if it exists in the version
+     */
+    abstract Optional<T> read(TableSnapshot snapshot, String hashId) throws IOException;
+
+    /**
+     * Insert new rows, the ids must not exist in the table
+     *
+     * @param entities The rows to insert
+     */
+    abstract void insert(List<T> entities) throws IOException;
+
+    /**
+     * Start a bulk load of new rows, callers must hold the write lock of the table until the load is closed
+     *
+     * @return The load
+     */
+    BulkLoad load() throws IOException {
+        return new BulkLoad(loadTarget());
+    }
+
+    /**
+     * Get the file receiving the rows of a bulk load, the rows are appended to a copy of its content
+     *
+     * @return The file, which may not exist yet
+     */
+    protected Path loadTarget() throws IOException {
+        return tablePath;
+    }
+
+    /**
+     * Encode a chunk of rows of a bulk load, in parallel in the scan pool
+     *
+     * @param target The file receiving the rows
+     * @param rows   The rows
+     * @param start  The position of the chunk in the file
+     * @return The bytes and the position of every row
+     */
+    protected EncodedRows encodeRows(Path target, List<T> rows, long start) throws IOException {
+        return encodeLines(rows, start, "", offset -> offset);
+    }
+
+    /**
+     * Called once the file of a bulk load has replaced its target, before the primary key index is updated
+     *
+     * @param target The file receiving the rows
+     * @param rows   The number of loaded rows
+     */
+    protected void loaded(Path target, long rows) throws IOException {
+    }
+
+    /**
+     * Write the rows of a version as CSV lines in the order of the columns of the entity
+     *
+     * @param snapshot The version
+     * @param out      The output
+     * @return The number of written rows
+     */
+    abstract long export(TableSnapshot snapshot, OutputStream out) throws IOException;
+
+    /**
+     * Replace the rows having the same ids and insert the others
+     *
+     * @param entities The rows to write
+     */
+    void update(List<T> entities) throws IOException {
+        Map<String, T> rows = new LinkedHashMap<>();
+        entities.forEach(row -> rows.put(hashId(row), row));
+        write(rows, Set.of());
+    }
+
+    /**
+     * Delete rows by id
+     *
+     * @param hashIds The hash of the id columns of the rows to delete
+     */
+    void delete(Set<String> hashIds) throws IOException {
+        write(Map.of(), hashIds);
+    }
+
+    /**
+     * Write the rows having the given ids and delete other ids with a single write of the table files
+     * The ids of the rows and the ids to delete must be distinct
+     *
+     * @param rows    The rows to insert or replace by hash of their id columns
+     * @param hashIds The hash of the id columns of the rows to delete
+     */
+    abstract void write(Map<String, T> rows, Set<String> hashIds) throws IOException;
+
+    /**
+     * Delete the rows matching a predicate
+     *
+     * @param where The predicate, null to delete every row
+     */
+    abstract void delete(Predicate<T> where) throws IOException;
+
+    /**
+     * Get the version of the table files, used to check that the persisted index is up-to-date
+     *
+     * @return The version
+     */
+    protected abstract String version() throws IOException;
+
+    /**
+     * Get the version of a table file: its size once the changes of the running batch are applied, its identity
+     * and its modification time, so that an index is not taken as covering another file of the same size
+     *
+     * @param file The table file
+     * @return The version
+     */
+    protected String version(Path file) throws IOException {
+        long size = wal.size(file);
+        if (!Files.exists(file)) return String.valueOf(size);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return size + "/" + attributes.fileKey() + "/" + attributes.lastModifiedTime();
+    }
+
+    /**
+     * Mark the loaded indexes as covering the table files once a batch writing them has been committed
+     * The versions recorded while the batch was running could not hold the identity and modification time of the
+     * files, which are only known once the changes are applied
+     */
+    void committed() throws IOException {
+        String version = version();
+        if (index.isLoaded()) {
+            index.append(Map.of(), version);
+        }
+        for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+            if (secondaryIndex.isLoaded()) {
+                secondaryIndex.append(Map.of(), List.of(), version);
+            }
+        }
+    }
+
+    /**
+     * Build the primary key index by reading the table files
+     *
+     * @return The hash of the id columns and the position of every row
+     */
+    protected abstract Map<String, Long> buildIndex() throws IOException;
+
+    /**
+     * Remove the files derived from the table file
+     */
+    void clear() throws IOException {
+        index.clear();
+        for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+            secondaryIndex.clear();
+        }
+        changed();
+    }
+
+    /**
+     * Get the files holding the rows of the table
+     *
+     * @return The files
+     */
+    protected List<Path> files() {
+        return List.of(tablePath);
+    }
+
+    /**
+     * Signal that the rows of the table have been written, callers must hold the write lock of the table
+     * A new version of the table is published for the readers
+     */
+    void changed() {
+        changes.incrementAndGet();
+        try {
+            publish().close();
+        } catch (IOException | RuntimeException e) {
+            // No version until the next reader publishes one under the lock
+            versionsLock.lock();
+            try {
+                replaceCurrent(null);
+            } finally {
+                versionsLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the last published version of the table without waiting for the running writes
+     * The previous version stays current while a write is running, until the write publishes the next one
+     * The version must be closed once read
+     *
+     * @return The version or null if none has been published
+     */
+    TableSnapshot acquire() {
+        versionsLock.lock();
+        try {
+            if (current == null) return null;
+            current.retain();
+            return current;
+        } finally {
+            versionsLock.unlock();
+        }
+    }
+
+    /**
+     * Publish the current content of the table files as the version read by the readers
+     * Callers must hold the lock of the table, the returned version must be closed once read
+     *
+     * @return The published version
+     */
+    TableSnapshot publish() throws IOException {
+        TableSnapshot snapshot = open(this);
+        versionsLock.lock();
+        try {
+            replaceCurrent(snapshot);
+            snapshot.retain();
+            return snapshot;
+        } finally {
+            versionsLock.unlock();
+        }
+    }
+
+    /**
+     * Release a version taken by acquire or publish
+     *
+     * @param snapshot The version
+     */
+    void release(TableSnapshot snapshot) {
+        versionsLock.lock();
+        try {
+            releaseVersion(snapshot);
+        } finally {
+            versionsLock.unlock();
+        }
+    }
+
+    private void replaceCurrent(TableSnapshot snapshot) {
+        TableSnapshot previous = current;
+        current = snapshot;
+        if (previous != null) {
+            releaseVersion(previous);
+        }
+    }
+
+    private void releaseVersion(TableSnapshot snapshot) {
+        if (snapshot.release()) {
+            try {
+                snapshot.closeFiles();
+            } catch (UncheckedIOException e) {
+                // Nothing is read from the files anymore
+            }
+        }
+    }
+
+    /**
+     * Open the current files of the table, callers must hold the lock of the table
+     *
+     * @return The version, closed as soon as it is read
+     */
+    TableSnapshot snapshot() throws IOException {
+        return open(null);
+    }
+
+    /**
+     * Forget the state derived from writes which have not been committed to the table files
+     * The indexes are dropped and will be rebuilt when needed, callers must hold the write lock of the table
+     */
+    void discard() throws IOException {
+        index.clear();
+        for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+            secondaryIndex.clear();
+        }
+    }
+
+    /**
+     * Check if two rows hold the same values in every column
+     *
+     * @param a A row
+     * @param b Another row
+     * @return true if the values are equal
+     */
+    boolean sameRow(T a, T b) {
+        return columnTypes.keySet().stream().allMatch(column -> Objects.equals(value(a, column), value(b, column)));
+    }
+
+    private TableSnapshot open(TableStorage<?> owner) throws IOException {
+        Map<String, Long> primaryKeys = idColumns.isEmpty() ? Map.of() : loadIndex().view();
+        Map<String, Long> indexChanges = new HashMap<>();
+        secondaryIndexes.forEach((column, secondaryIndex) -> {
+            if (secondaryIndex.isLoaded()) indexChanges.put(column, secondaryIndex.changes());
+        });
+        return TableSnapshot.open(owner, files(), primaryKeys, indexChanges, stamp());
+    }
+
+    /**
+     * Get a stamp identifying the current content of the table
+     * The stamp changes with every write of this process and with every change of the identity, size or
+     * modification time of the table files
+     *
+     * @return The stamp, to be compared with equals
+     */
+    Object stamp() throws IOException {
+        List<Object> stamp = new ArrayList<>();
+        stamp.add(changes.get());
+        for (Path file : files()) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            stamp.add(attributes.fileKey());
+            stamp.add(attributes.size());
+            stamp.add(attributes.lastModifiedTime());
+        }
+        return stamp;
+    }
+
+    /**
+     * Get the size of the table files
+     *
+     * @return The size in bytes
+     */
+    long size() throws IOException {
+        long size = 0;
+        for (Path file : files()) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the memory used by decoded rows, from the values of a sample of them
+     *
+     * @param sample Decoded rows of the table
+     * @param count  The number of rows to estimate
+     * @return The estimated size of the rows and of the list holding them, in bytes
+     */
+    long decodedSize(List<T> sample, long count) {
+        if (sample.isEmpty()) return count * REFERENCE_BYTES;
+        int step = Math.max(1, sample.size() / SIZE_SAMPLE);
+        long bytes = 0;
+        int rows = 0;
+        for (int i = 0; i < sample.size(); i += step, rows++) {
+            bytes += OBJECT_BYTES;
+            for (Map.Entry<String, Class<?>> column : columnTypes.entrySet()) {
+                // Primitive values are held by the row, the others are referenced objects
+                bytes += REFERENCE_BYTES + (column.getValue().isPrimitive() ? 0 : objectSize(value(sample.get(i), column.getKey())));
+            }
+        }
+        return count * (bytes / rows + REFERENCE_BYTES);
+    }
+
+    private static long objectSize(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String string) {
+            // Compact strings hold a byte per character unless a character is not Latin-1
+            boolean latin = string.chars().allMatch(c -> c < 256);
+            return OBJECT_BYTES * 3 + (long) string.length() * (latin ? 1 : 2);
+        }
+        if (value instanceof LocalDateTime) return OBJECT_BYTES * 5;
+        if (value instanceof LocalDate) return OBJECT_BYTES * 2;
+        return OBJECT_BYTES;
+    }
+
+    /**
+     * Copy a row, the values of the fields are shared
+     *
+     * @param row The row to copy
+     * @return A new instance holding the same values
+     */
+    T copy(T row) {
+        return mapper.copy(row);
+    }
+
+    List<String> getIdColumns() {
+        return idColumns;
+    }
+
+    protected PrimaryKeyIndex loadIndex() throws IOException {
+        if (index.isLoaded()) return index;
+        index.lock().lock();
+        try {
+            if (!index.isLoaded() && !index.load(version())) {
+                // Missing or outdated index, rebuild it from the table files
+                index.rewrite(buildIndex(), version());
+            }
+        } finally {
+            index.lock().unlock();
+        }
+        return index;
+    }
+
+    /**
+     * Get the secondary index of a column, loading or rebuilding it if needed
+     *
+     * @param column The column
+     * @return The index or null if the column is not indexed
+     */
+    SecondaryIndex loadIndex(String column) throws IOException {
+        SecondaryIndex secondaryIndex = secondaryIndexes.get(column);
+        if (secondaryIndex == null || secondaryIndex.isLoaded()) return secondaryIndex;
+        secondaryIndex.lock().lock();
+        try {
+            if (!secondaryIndex.isLoaded() && !secondaryIndex.load(version())) {
+                // Missing or outdated index, rebuild it from the rows of the table
+                Map<String, Object> values = new HashMap<>();
+                for (T row : read()) {
+                    values.put(hashId(row), value(row, column));
+                }
+                secondaryIndex.rewrite(values, version());
+            }
+        } finally {
+            secondaryIndex.lock().unlock();
+        }
+        return secondaryIndex;
+    }
+
+    /**
+     * Report written and deleted rows to the secondary indexes, after the table files have been written
+     * Indexes which are not loaded are dropped and will be rebuilt when needed
+     *
+     * @param rows    The written rows by hash of their id columns
+     * @param hashIds The hash of the id columns of the deleted rows
+     */
+    protected void updateIndexes(Map<String, T> rows, Collection<String> hashIds) throws IOException {
+        if (secondaryIndexes.isEmpty()) return;
+        String version = version();
+        for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+            if (secondaryIndex.isLoaded()) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                rows.forEach((hashId, row) -> values.put(hashId, value(row, secondaryIndex.getColumn())));
+                secondaryIndex.append(values, hashIds, version);
+            } else {
+                secondaryIndex.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the value of a column of a row
+     *
+     * @param row    The row
+     * @param column The column
+     * @return The value
+     */
+    Object value(T row, String column) {
+        return mapper.getColumn(row, column);
+    }
+
+    /**
+     * Get the value of a column of a row as it is read back from the table files, the value the raw scans give
+     *
+     * @param row    The row
+     * @param column The column
+     * @return The value
+     */
+    Object storedValue(T row, String column) {
+        return parsers.get(column).apply(codec.encodeValue(value(row, column)));
+    }
+
+    protected void checkUniqueness(List<String> idToInsert) throws IOException {
+        PrimaryKeyIndex primaryKeys = loadIndex();
+        if (new HashSet<>(idToInsert).size() != idToInsert.size() || idToInsert.stream().anyMatch(primaryKeys::contains)) {
+            throw new NonUniqueResultException("Some entities already exist in the table " + tableName + " and were not inserted.");
+        }
+    }
+
+    protected List<String> header() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(tablePath, StandardCharsets.UTF_8)) {
+            return List.of(reader.readLine().split(DELIMITER));
+        }
+    }
+
+    /**
+     * Encode rows as CSV lines in parallel in the scan pool
+     *
+     * @param rows    The rows
+     * @param start   The position of the first line in the file
+     * @param prefix  The text written before every line
+     * @param pointer The position of a row from the offset of its line
+     * @return The lines and the position of every row
+     */
+    protected EncodedRows encodeLines(List<T> rows, long start, String prefix, LongUnaryOperator pointer) throws IOException {
+        List<String> header = header();
+        List<byte[]> lines = scanner.map(rows, row -> (prefix + encodeLine(row, header) + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+        List<Long> pointers = new ArrayList<>(lines.size());
+        long position = start;
+        for (byte[] line : lines) {
+            pointers.add(pointer.applyAsLong(position));
+            position += line.length;
+        }
+        return new EncodedRows(lines, pointers);
+    }
+
+    protected T decodeLine(String line, List<String> header) {
+        return codec.decode(line, header);
+    }
+
+    protected String encodeLine(T row, List<String> header) {
+        return codec.encode(row, header);
+    }
+
+    protected String hashId(T row) {
+        return hashId(idColumns.stream().map(col -> value(row, col)).toArray());
+    }
+
+    static String hashId(Object... ids) {
+        return Arrays.stream(ids)
+                .map(id -> Objects.requireNonNullElse(id, "").toString())
+                .collect(Collectors.joining(DELIMITER));
+    }
+
+    static List<RawLine> readRawLines(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return readRawLines(channel, channel.size());
+        }
+    }
+
+    static List<RawLine> readRawLines(FileChannel channel, long size) throws IOException {
+        List<RawLine> lines = new ArrayList<>();
+        LineCursor cursor = new LineCursor(channel, size);
+        while (cursor.hasNext()) {
+            cursor.next();
+            lines.add(new RawLine(cursor.offset(), cursor.text()));
+        }
+        return lines;
+    }
+
+    static String readLine(Path filePath, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return readLine(channel, offset);
+        }
+    }
+
+    static String readLine(FileChannel channel, long offset) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        long position = offset;
+        int read;
+        while ((read = channel.read(buffer.clear(), position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return decode(line.toByteArray(), 0, line.size());
+                }
+                line.write(buffer.get(i));
+            }
+            position += read;
+        }
+        return decode(line.toByteArray(), 0, line.size());
+    }
+
+    static void closeAll(List<? extends Closeable> resources) {
+        IOException failure = null;
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    static long countLines(Path filePath) throws IOException {
+        if (!Files.exists(filePath)) return 0;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            LineCursor cursor = new LineCursor(channel, channel.size());
+            long count = 0;
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    static List<Long> writeLines(ByteArrayOutputStream content, long start, List<String> lines) {
+        List<Long> offsets = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            offsets.add(start + content.size());
+            content.writeBytes((line + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+        }
+        return offsets;
+    }
+
+    static long writeLine(OutputStream out, String line) throws IOException {
+        byte[] bytes = (line + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        return bytes.length;
+    }
+
+    private static String decode(byte[] content, int start, int end) {
+        // Remove the carriage return of Windows line separators
+        if (end > start && content[end - 1] == '\r') end--;
+        return new String(content, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    static <T> Object getValue(T entity, String col) {
+        return EntityMapper.of(entity.getClass()).getColumn(entity, col);
+    }
+
+    private static boolean isEquality(Criteria.Condition condition) {
+        return condition.operator() == Criteria.Operator.EQ || condition.operator() == Criteria.Operator.IN;
+    }
+
+    private static boolean isRange(Criteria.Condition condition) {
+        return switch (condition.operator()) {
+            case GT, GTE, LT, LTE, BETWEEN -> true;
+            default -> false;
+        };
+    }
+
+    static <T> List<String> getIndexedColumns(Class<T> entity) {
+        return Arrays.stream(entity.getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Column.class) && field.isAnnotationPresent(Indexed.class))
+                .map(field -> field.getAnnotation(Column.class).name())
+                .collect(Collectors.toList());
+    }
+
+    static <T> List<String> getIdColumns(Class<T> entity) {
+        return Arrays.stream(entity.getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Column.class) && field.isAnnotationPresent(Id.class))
+                .map(field -> field.getAnnotation(Column.class).name())
+                .collect(Collectors.toList());
+    }
+
+    record RawLine(long offset, String text) {
+    }
+
+    /**
+     * Rows of a bulk load encoded for the file receiving them
+     *
+     * @param parts    The bytes, written in order
+     * @param pointers The position of every row
+     */
+    record EncodedRows(List<byte[]> parts, List<Long> pointers) {
+    }
+
+    /**
+     * Bulk load of new rows, appended to a temporary copy of the file receiving them which replaces it once every
+     * row is written, so that a load is written as a whole or not at all and its rows are written once, outside the
+     * write-ahead log
+     * The chunks are encoded in parallel and written sequentially through a direct buffer, the ids are checked once,
+     * before the file is replaced
+     * The secondary indexes are dropped by the load and rebuilt when needed
+     */
+    final class BulkLoad implements Closeable {
+
+        private static final int BUFFER_SIZE = 1 << 23;
+
+        private final Path target;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Map<String, Long> entries = new HashMap<>();
+        private long position;
+        private long rows;
+        private boolean duplicated;
+        private boolean committed;
+
+        private BulkLoad(Path target) throws IOException {
+            this.target = target;
+            this.temporary = wal.temporary(target);
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                if (Files.exists(target)) {
+                    try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ)) {
+                        long size = source.size();
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, channel);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Append a chunk of rows
+         *
+         * @param chunk The rows
+         */
+        void write(List<T> chunk) throws IOException {
+            EncodedRows encoded = encodeRows(target, chunk, position);
+            if (!idColumns.isEmpty()) {
+                List<String> hashIds = scanner.map(chunk, TableStorage.this::hashId);
+                for (int i = 0; i < hashIds.size(); i++) {
+                    duplicated |= entries.put(hashIds.get(i), encoded.pointers().get(i)) != null;
+                }
+            }
+            for (byte[] part : encoded.parts()) {
+                put(part);
+            }
+            rows += chunk.size();
+        }
+
+        long rows() {
+            return rows;
+        }
+
+        /**
+         * Check the ids of the loaded rows and complete the file
+         *
+         * @return The replacement of the file receiving the rows, to be committed to the write-ahead log
+         */
+        WriteAheadLog.Replace prepare() throws IOException {
+            if (!idColumns.isEmpty()) {
+                PrimaryKeyIndex primaryKeys = loadIndex();
+                if (duplicated || entries.keySet().stream().anyMatch(primaryKeys::contains)) {
+                    throw new NonUniqueResultException("Some entities already exist in the table " + tableName + " and were not loaded.");
+                }
+            }
+            flush();
+            channel.close();
+            return new WriteAheadLog.Replace(target, temporary);
+        }
+
+        /**
+         * Register the loaded rows once the replacement has been committed
+         */
+        void committed() throws IOException {
+            committed = true;
+            loaded(target, rows);
+            if (!idColumns.isEmpty()) {
+                index.append(entries, version());
+            }
+            for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+                secondaryIndex.clear();
+            }
+        }
+
+        /**
+         * Drop the temporary file if the load has not been committed
+         */
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+            if (!committed) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int from = 0;
+            while (from < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - from);
+                buffer.put(bytes, from, length);
+                from += length;
+            }
+            position += bytes.length;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Cursor over the lines of a file, read through memory-mapped windows
+     * Nothing is copied from the file until the text of the line or of one of its cells is asked for
+     * A cursor over a chunk of the file reads the lines starting in the chunk, the line going on at its start is
+     * read by the cursor of the previous chunk
+     */
+    static final class LineCursor implements Iterator<LineCursor> {
+
+        private static final int WINDOW_SIZE = 1 << 26;
+        private static final byte SEPARATOR = (byte) DELIMITER.charAt(0);
+
+        private final FileChannel channel;
+        private final long size;
+        private final long limit;
+        private boolean aligned;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+        private long offset;
+        private int start;
+        private int end;
+        private boolean ready;
+
+        LineCursor(FileChannel channel, long size) {
+            this(channel, size, 0, size);
+        }
+
+        /**
+         * @param channel The file
+         * @param size    The number of bytes of the file to read
+         * @param from    The start of the chunk
+         * @param to      The end of the chunk, excluded
+         */
+        LineCursor(FileChannel channel, long size, long from, long to) {
+            this.channel = channel;
+            this.size = size;
+            this.limit = Math.min(size, to);
+            this.position = from;
+            this.aligned = from == 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready && position < limit) {
+                try {
+                    if (!aligned) {
+                        // Skip the end of the line holding the byte before the chunk
+                        aligned = true;
+                        position--;
+                        advance();
+                        if (position >= limit) return false;
+                    }
+                    ready = advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return ready;
+        }
+
+        @Override
+        public LineCursor next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            ready = false;
+            return this;
+        }
+
+        /**
+         * Get the position of the current line in the file
+         *
+         * @return The offset
+         */
+        long offset() {
+            return offset;
+        }
+
+        /**
+         * Get the first byte of the current line
+         *
+         * @return The byte or -1 if the line is empty
+         */
+        int first() {
+            return end > start ? window.get(start) : -1;
+        }
+
+        /**
+         * Ignore the first byte of the current line
+         *
+         * @return The cursor
+         */
+        LineCursor dropFirst() {
+            if (end > start) start++;
+            return this;
+        }
+
+        /**
+         * Get the text of the current line
+         *
+         * @return The text without line separator
+         */
+        String text() {
+            return decode(start, end);
+        }
+
+        /**
+         * Get the text of a cell of the current line, without splitting the whole line
+         *
+         * @param index The index of the cell
+         * @return The text or null if the line has fewer cells
+         */
+        String cell(int index) {
+            int from = start;
+            for (int cell = 0; cell < index; cell++) {
+                while (from < end && window.get(from) != SEPARATOR) from++;
+                if (from == end) return null;
+                from++;
+            }
+            int to = from;
+            while (to < end && window.get(to) != SEPARATOR) to++;
+            return decode(from, to);
+        }
+
+        private boolean advance() throws IOException {
+            offset = position;
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position, WINDOW_SIZE);
+            }
+            int from = (int) (position - windowStart);
+            int i = from;
+            while (true) {
+                while (i < window.limit() && window.get(i) != '\n') i++;
+                if (i < window.limit() || windowStart + window.limit() >= size) {
+                    // End of the line, or last line without line separator
+                    start = from;
+                    end = i > from && window.get(i - 1) == '\r' ? i - 1 : i;
+                    position = Math.min(size, windowStart + i + 1);
+                    return true;
+                }
+
+                // The line goes beyond the window, a larger window is mapped from the start of the line
+                if (windowStart == offset && window.limit() == Integer.MAX_VALUE) {
+                    throw new IOException("Line too long at offset " + offset);
+                }
+                int scanned = i - from;
+                map(offset, Math.max(WINDOW_SIZE, Math.min(Integer.MAX_VALUE, 2L * window.limit())));
+                from = 0;
+                i = scanned;
+            }
+        }
+
+        private void map(long from, long length) throws IOException {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(length, size - from));
+            windowStart = from;
+        }
+
+        private String decode(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            window.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.spring.application.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Table stored as CSV lines, in one or several text files
+ * The rows are read in place from the files of a version: scans, streams and aggregations evaluate the conditions on
+ * the raw values of the columns and only decode the matching rows
+ * Implementations tell which lines of their files are live rows
+ *
+ * @param <T> The entity stored in the table
+ */
+abstract class TextTableStorage<T> extends TableStorage<T> {
+
+    TextTableStorage(Class<T> entity, String tableName, Path folder, WriteAheadLog wal, TableScanner scanner) {
+        super(entity, tableName, folder, wal, scanner);
+    }
+
+    /**
+     * Get the files of a version of the table
+     *
+     * @param snapshot The version
+     * @return The header and the files holding the rows, in the order of the table
+     */
+    abstract TextFiles textFiles(TableSnapshot snapshot) throws IOException;
+
+    /**
+     * Read the undecoded rows of a version lazily
+     * The files stay open until the version is closed
+     *
+     * @param snapshot The version
+     * @return The header and the CSV lines of the rows, read in place
+     */
+    RawRows rawRows(TableSnapshot snapshot) throws IOException {
+        TextFiles files = textFiles(snapshot);
+        return new RawRows(files.header(), files.files().stream()
+                .flatMap(file -> streamLines(file.channel(), file.size()).map(file.rows()).filter(Objects::nonNull)));
+    }
+
+    @Override
+    List<T> scan(TableSnapshot snapshot, List<Criteria.Condition> conditions, Predicate<T> where) throws IOException {
+        // The rows are decoded and filtered in parallel by chunks of the files, the conditions before decoding
+        TextFiles files = textFiles(snapshot);
+        List<String> header = files.header();
+        Predicate<IntFunction<String>> matches = conditions.isEmpty() ? null : Criteria.compile(conditions, header, parsers);
+        List<T> result = new ArrayList<>();
+        for (TextFile file : files.files()) {
+            result.addAll(scanner.scan(file.channel(), file.size(), line -> {
+                LineCursor row = file.rows().apply(line);
+                if (row == null || (matches != null && !matches.test(row::cell))) return null;
+                T decoded = decodeLine(row.text(), header);
+                return where == null || where.test(decoded) ? decoded : null;
+            }));
+        }
+        return result;
+    }
+
+    @Override
+    Stream<T> stream(TableSnapshot snapshot) throws IOException {
+        RawRows rows = rawRows(snapshot);
+        return rows.lines().map(line -> decodeLine(line.text(), rows.header()));
+    }
+
+    @Override
+    Stream<T> stream(TableSnapshot snapshot, List<Criteria.Condition> conditions) throws IOException {
+        // Only the cells of the conditions are read from the file, the whole line only for the matching rows
+        RawRows rows = rawRows(snapshot);
+        Predicate<IntFunction<String>> matches = Criteria.compile(conditions, rows.header(), parsers);
+        return rows.lines()
+                .filter(line -> matches.test(line::cell))
+                .map(line -> decodeLine(line.text(), rows.header()));
+    }
+
+    @Override
+    Aggregation.Groups aggregate(TableSnapshot snapshot, List<Criteria.Condition> conditions, Aggregation.Plan plan) throws IOException {
+        // Every chunk of the files folds its own groups from the cells of the conditions and of the aggregation
+        TextFiles files = textFiles(snapshot);
+        Predicate<IntFunction<String>> matches = Criteria.compile(conditions, files.header(), parsers);
+        int[] cells = plan.columns().stream().mapToInt(files.header()::indexOf).toArray();
+        List<Function<String, Object>> columnParsers = plan.columns().stream().map(parsers::get).toList();
+        Aggregation.Groups result = plan.newGroups();
+        for (TextFile file : files.files()) {
+            scanner.fold(file.channel(), file.size(), plan::newGroups, (groups, line) -> {
+                LineCursor row = file.rows().apply(line);
+                if (row == null || !matches.test(row::cell)) return;
+                Object[] values = new Object[cells.length];
+                for (int i = 0; i < cells.length; i++) {
+                    String cell = cells[i] < 0 ? null : row.cell(cells[i]);
+                    values[i] = cell == null ? null : columnParsers.get(i).apply(cell);
+                }
+                groups.add(values);
+            }).forEach(result::merge);
+        }
+        return result;
+    }
+
+    @Override
+    long export(TableSnapshot snapshot, OutputStream out) throws IOException {
+        List<String> header = List.copyOf(columnTypes.keySet());
+        RawRows rows = rawRows(snapshot);
+        // The lines are copied without decoding them when the header is in the order of the columns of the entity
+        boolean raw = rows.header().equals(header);
+        // The lines are the same cursor, each one is written before the next is read
+        AtomicLong count = new AtomicLong();
+        try {
+            rows.lines().forEach(line -> {
+                try {
+                    writeLine(out, raw ? line.text() : encodeLine(decodeLine(line.text(), rows.header()), header));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count.incrementAndGet();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count.get();
+    }
+
+    /**
+     * Read the lines of a file lazily and in place, up to a given size
+     * The elements of the stream are the same cursor, moved to the next line once the current one has been consumed
+     * The channel is not closed by the stream
+     *
+     * @param channel The file
+     * @param size    The number of bytes to read
+     * @return The lines
+     */
+    static Stream<LineCursor> streamLines(FileChannel channel, long size) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new LineCursor(channel, size), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    record RawRows(List<String> header, Stream<LineCursor> lines) {
+    }
+
+    /**
+     * File of a table stored as text
+     *
+     * @param channel The opened file
+     * @param size    The number of bytes of the version
+     * @param rows    The cursor on the row of a line, or null if the line is not a live row
+     */
+    record TextFile(FileChannel channel, long size, UnaryOperator<LineCursor> rows) {
+    }
+
+    record TextFiles(List<String> header, List<TextFile> files) {
+    }
+}
@@ -0,0 +1,265 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+import jakarta.persistence.Table;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Unit of work over several tables of a LocalDatabase, see LocalDatabase.transaction
+ * Every table is read in the version taken when the transaction first uses it, together with the writes of the
+ * transaction, which are held in memory until the commit
+ * At commit the rows read or written must not have been changed by another writer since, otherwise nothing is
+ * written and an OptimisticLockException is thrown
+ * The written entities must have id columns
+ * Every partition of a partitioned table is read and locked as a table of its own, the written partitions must be
+ * stored in the same folder
+ */
+public class Transaction {
+
+    @FunctionalInterface
+    public interface Work {
+        void run(Transaction tx) throws IOException;
+    }
+
+    /**
+     * Changes of a table held by the transaction
+     *
+     * @param <T> The entity stored in the table
+     */
+    static final class TableChanges<T> {
+
+        final TableStorage<T> storage;
+        final TableSnapshot snapshot;
+        final Map<String, T> rows = new LinkedHashMap<>();
+        final Set<String> deleted = new LinkedHashSet<>();
+        final Set<String> read = new HashSet<>();
+        boolean scanned;
+
+        TableChanges(TableStorage<T> storage, TableSnapshot snapshot) {
+            this.storage = storage;
+            this.snapshot = snapshot;
+        }
+
+        boolean isWritten() {
+            return !rows.isEmpty() || !deleted.isEmpty();
+        }
+
+        /**
+         * Check if a row exists, with the primary key entries of the version and without reading the row
+         *
+         * @param hashId The hash of the id columns
+         * @return true if the row exists in the version or has been written by the transaction
+         */
+        boolean contains(String hashId) {
+            if (deleted.contains(hashId)) return false;
+            return rows.containsKey(hashId) || snapshot.primaryKeys().containsKey(hashId);
+        }
+
+        Optional<T> get(String hashId) throws IOException {
+            if (deleted.contains(hashId)) return Optional.empty();
+            T row = rows.get(hashId);
+            return row != null ? Optional.of(row) : storage.read(snapshot, hashId);
+        }
+    }
+
+    private final LocalDatabase database;
+    private final Map<String, TableChanges<?>> tables = new TreeMap<>();
+    private boolean rolledBack;
+
+    Transaction(LocalDatabase database) {
+        this.database = database;
+    }
+
+    public <T> void insert(T entity) throws IOException {
+        insert(List.of(entity));
+    }
+
+    public <T> void insert(List<T> entities) throws IOException {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        List<TableChanges<T>> tables = tablesOf(entities);
+        List<String> hashIds = hashIds(tables, entities);
+
+        // Check unity constraint against the version and the previous writes of the transaction
+        if (new HashSet<>(hashIds).size() != hashIds.size()) {
+            throw new NonUniqueResultException("Some entities are duplicated and were not inserted in the table " + tableName(entities) + ".");
+        }
+        for (int i = 0; i < hashIds.size(); i++) {
+            if (tables.get(i).contains(hashIds.get(i))) {
+                throw new NonUniqueResultException("Some entities already exist in the table " + tableName(entities) + " and were not inserted.");
+            }
+        }
+        put(tables, hashIds, entities);
+    }
+
+    public <T> void update(T entity) throws IOException {
+        update(List.of(entity));
+    }
+
+    public <T> void update(List<T> entities) throws IOException {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        List<TableChanges<T>> tables = tablesOf(entities);
+        List<String> hashIds = hashIds(tables, entities);
+        if (new HashSet<>(hashIds).size() != hashIds.size()) {
+            throw new NonUniqueResultException("Some entities are duplicated and were not updated in the table " + tableName(entities) + ".");
+        }
+        put(tables, hashIds, entities);
+    }
+
+    public <T> void delete(T entity) throws IOException {
+        delete(List.of(entity));
+    }
+
+    public <T> void delete(List<T> entities) throws IOException {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        List<TableChanges<T>> tables = tablesOf(entities);
+        List<String> hashIds = hashIds(tables, entities);
+        for (int i = 0; i < hashIds.size(); i++) {
+            tables.get(i).rows.remove(hashIds.get(i));
+            tables.get(i).deleted.add(hashIds.get(i));
+        }
+    }
+
+    public <T> void delete(Class<T> entity, Predicate<T> where) throws IOException {
+        for (TableChanges<T> table : tables(entity)) {
+            for (T row : query(table, where)) {
+                String hashId = table.storage.hashId(row);
+                table.rows.remove(hashId);
+                table.deleted.add(hashId);
+            }
+        }
+    }
+
+    public <T> Optional<T> findById(Class<T> entity, Object... ids) throws IOException {
+        List<TableStorage<T>> partitions = partitions(entity);
+        List<String> idColumns = partitions.getFirst().getIdColumns();
+        if (ids == null || ids.length != idColumns.size()) {
+            throw new IllegalArgumentException("Table " + tableName(entity) + " expects " + idColumns.size() + " id value(s)");
+        }
+        TableChanges<T> table = table(LocalDatabase.partitionById(partitions, ids));
+        String hashId = TableStorage.hashId(ids);
+        table.read.add(hashId);
+        return table.get(hashId);
+    }
+
+    public <T> List<T> query(Class<T> entity, Predicate<T> where) throws IOException {
+        List<T> result = new ArrayList<>();
+        for (TableChanges<T> table : tables(entity)) {
+            result.addAll(query(table, where));
+        }
+        return result;
+    }
+
+    /**
+     * Discard the writes of the transaction, nothing is written when the work returns
+     */
+    public void rollback() {
+        rolledBack = true;
+        tables.values().forEach(table -> {
+            table.rows.clear();
+            table.deleted.clear();
+        });
+    }
+
+    boolean isRolledBack() {
+        return rolledBack;
+    }
+
+    Collection<TableChanges<?>> tables() {
+        return tables.values();
+    }
+
+    /**
+     * Release the versions read by the transaction
+     */
+    void close() {
+        tables.values().forEach(table -> table.snapshot.close());
+    }
+
+    private <T> List<T> query(TableChanges<T> table, Predicate<T> where) throws IOException {
+        // The whole version is read, any write of another writer to the table is a conflict
+        table.scanned = true;
+        List<T> result = new ArrayList<>();
+        for (T row : table.storage.read(table.snapshot)) {
+            String hashId = table.storage.hashId(row);
+            if (!table.deleted.contains(hashId) && !table.rows.containsKey(hashId) && (where == null || where.test(row))) {
+                result.add(row);
+            }
+        }
+        table.rows.values().stream().filter(row -> where == null || where.test(row)).forEach(result::add);
+        return result;
+    }
+
+    private static <T> void put(List<TableChanges<T>> tables, List<String> hashIds, List<T> entities) {
+        for (int i = 0; i < hashIds.size(); i++) {
+            tables.get(i).deleted.remove(hashIds.get(i));
+            tables.get(i).rows.put(hashIds.get(i), entities.get(i));
+        }
+    }
+
+    private static <T> List<String> hashIds(List<TableChanges<T>> tables, List<T> entities) {
+        List<String> hashIds = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            hashIds.add(tables.get(i).storage.hashId(entities.get(i)));
+        }
+        return hashIds;
+    }
+
+    private static String tableName(List<?> entities) {
+        return tableName(entities.getFirst().getClass());
+    }
+
+    private static String tableName(Class<?> entity) {
+        return entity.getAnnotation(Table.class).name();
+    }
+
+    /**
+     * Get the changes of the partition storing every entity, a table that is not partitioned has a single one
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<TableChanges<T>> tablesOf(List<T> entities) throws IOException {
+        List<TableStorage<T>> partitions = partitions((Class<T>) entities.getFirst().getClass());
+        List<TableChanges<T>> tables = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            tables.add(table(LocalDatabase.partition(partitions, entity)));
+        }
+        return tables;
+    }
+
+    private <T> List<TableChanges<T>> tables(Class<T> entity) throws IOException {
+        List<TableChanges<T>> tables = new ArrayList<>();
+        for (TableStorage<T> partition : partitions(entity)) {
+            tables.add(table(partition));
+        }
+        return tables;
+    }
+
+    private <T> List<TableStorage<T>> partitions(Class<T> entity) throws IOException {
+        if (rolledBack) {
+            throw new IllegalStateException("The transaction has been rolled back");
+        }
+        List<TableStorage<T>> partitions = database.partitions(entity);
+        if (partitions.getFirst().getIdColumns().isEmpty()) {
+            throw new IllegalArgumentException("Entity must have at least one ID column to be used in a transaction");
+        }
+        return partitions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TableChanges<T> table(TableStorage<T> storage) throws IOException {
+        TableChanges<?> table = tables.get(storage.tableName);
+        if (table == null) {
+            table = new TableChanges<>(storage, database.snapshot(storage));
+            tables.put(storage.tableName, table);
+        }
+        return (TableChanges<T>) table;
+    }
+}
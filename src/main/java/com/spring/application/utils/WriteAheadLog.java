@@ -0,0 +1,534 @@
+package com.spring.application.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of a LocalDatabase folder
+ * Every change of a table file is recorded in the log before being applied, so that it can be replayed after a crash
+ * Changes are grouped in batches closed by a commit record, a batch without commit record is ignored at replay
+ * Appends are written at a fixed position and replaces move a complete temporary file, so that replaying them is idempotent
+ * The log is truncated by a checkpoint once the files it covers have been synced to the disk
+ * A thread may open a batch spanning several commits, which are held until the batch is committed as a whole
+ * The log is written and synced under a lock rather than a monitor, so that virtual threads waiting for it release
+ * their carrier thread
+ */
+@Log4j2
+class WriteAheadLog implements Closeable {
+
+    static final String FILE_NAME = "database.wal";
+
+    /**
+     * When the log is synced to the disk
+     * ALWAYS: on every commit, GROUP: by a background task every few milliseconds, commits wait for it, OS: left to the OS
+     */
+    enum Sync {
+        ALWAYS, GROUP, OS
+    }
+
+    sealed interface Change permits Append, Replace, Delete {
+        Path file();
+    }
+
+    record Append(Path file, byte[] data) implements Change {
+    }
+
+    record Replace(Path file, Path source) implements Change {
+    }
+
+    record Delete(Path file) implements Change {
+    }
+
+    private static final byte APPEND = 1;
+    private static final byte REPLACE = 2;
+    private static final byte DELETE = 3;
+    private static final byte COMMIT = 4;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // Temporary files of this log, named after the table file they rewrite, a stamp and a counter
+    private static final Pattern TEMPORARY_FILE = Pattern.compile(".+(" + Pattern.quote(TableStorage.EXTENSION) + "|"
+            + Pattern.quote(ColumnarTableStorage.EXTENSION) + ")\\.\\d+" + Pattern.quote(TEMPORARY_SUFFIX));
+
+    private final Path folder;
+    private final Path logPath;
+    private final Sync sync;
+    private final long checkpointSize;
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final Lock logLock = new ReentrantLock();
+    private final Condition synced = logLock.newCondition();
+    private final Set<Path> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicLong temporaryCounter = new AtomicLong();
+    private final ThreadLocal<List<Change>> batches = new ThreadLocal<>();
+    private final FileChannel channel;
+    private final ScheduledExecutorService flusher;
+    private long lsn;
+    private long syncedLsn;
+
+    WriteAheadLog(Path folder, Sync sync, long groupCommitMillis, long checkpointSize) throws IOException {
+        this.folder = folder;
+        this.logPath = folder.resolve(FILE_NAME);
+        this.sync = sync;
+        this.checkpointSize = checkpointSize;
+        replay();
+        this.channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        if (sync == Sync.GROUP) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "local-database-wal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flush, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Get a new temporary file next to a table file, used to rewrite it before replacing it
+     *
+     * @param file The table file
+     * @return The temporary file
+     */
+    Path temporary(Path file) {
+        return file.resolveSibling(file.getFileName() + "." + System.currentTimeMillis() + temporaryCounter.incrementAndGet() + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Append data at the end of a file, the file is created if it does not exist
+     *
+     * @param file The file
+     * @param data The data to append
+     */
+    void append(Path file, byte[] data) throws IOException {
+        commit(List.of(new Append(file, data)));
+    }
+
+    /**
+     * Atomically replace a file by a complete temporary file
+     *
+     * @param file   The file to replace
+     * @param source The temporary file
+     */
+    void replace(Path file, Path source) throws IOException {
+        commit(List.of(new Replace(file, source)));
+    }
+
+    /**
+     * Log and apply a batch of changes, the batch is replayed as a whole or not at all
+     * Callers must hold the locks of the changed files
+     *
+     * @param changes The changes to apply
+     */
+    void commit(List<? extends Change> changes) throws IOException {
+        if (changes.isEmpty()) return;
+        List<Change> batch = batches.get();
+        if (batch != null) {
+            batch.addAll(changes);
+            return;
+        }
+        checkpointLock.readLock().lock();
+        try {
+            // The temporary files must be durable before the log refers to them
+            for (Change change : changes) {
+                if (change instanceof Replace replace) {
+                    force(replace.source());
+                }
+            }
+            List<Entry> entries = prepare(changes);
+            awaitDurable(log(entries));
+            for (Entry entry : entries) {
+                apply(entry);
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        if (channel.size() >= checkpointSize) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Open a batch on the current thread, the changes committed by this thread are held until commitBatch
+     * Callers must hold the locks of the changed files until the batch is committed or aborted
+     */
+    void beginBatch() {
+        if (batches.get() != null) {
+            throw new IllegalStateException("A batch is already open on this thread");
+        }
+        batches.set(new ArrayList<>());
+    }
+
+    /**
+     * Log the held changes with a single commit record and apply them
+     */
+    void commitBatch() throws IOException {
+        List<Change> batch = batches.get();
+        batches.remove();
+        if (batch == null) {
+            throw new IllegalStateException("No batch is open on this thread");
+        }
+        commit(batch);
+    }
+
+    /**
+     * Drop the held changes and the temporary files they refer to
+     */
+    void abortBatch() throws IOException {
+        List<Change> batch = batches.get();
+        batches.remove();
+        if (batch == null) return;
+        for (Change change : batch) {
+            if (change instanceof Replace replace) {
+                Files.deleteIfExists(replace.source());
+            }
+        }
+    }
+
+    /**
+     * Get the size of a file once the changes held by the batch of the current thread are applied
+     *
+     * @param file The file
+     * @return The size in bytes, 0 if the file does not exist
+     */
+    long size(Path file) throws IOException {
+        long size = Files.exists(file) ? Files.size(file) : 0;
+        List<Change> batch = batches.get();
+        if (batch != null) {
+            for (Change change : batch) {
+                if (!change.file().equals(file)) continue;
+                size = switch (change) {
+                    case Append append -> size + append.data().length;
+                    case Replace replace -> Files.size(replace.source());
+                    case Delete delete -> 0;
+                };
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Sync every changed file to the disk and truncate the log
+     */
+    void checkpoint() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            for (Path file : dirty) {
+                if (Files.exists(file)) force(file);
+            }
+            forceFolder();
+            dirty.clear();
+            logLock.lock();
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                syncedLsn = lsn;
+                synced.signalAll();
+            } finally {
+                logLock.unlock();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        checkpoint();
+        channel.close();
+    }
+
+    private List<Entry> prepare(List<? extends Change> changes) throws IOException {
+        // Appends are logged with the position they are written at, following the previous changes of the batch
+        Map<Path, Long> sizes = new HashMap<>();
+        List<Entry> entries = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            switch (change) {
+                case Append append -> {
+                    Long size = sizes.get(append.file());
+                    long position = size != null ? size : Files.exists(append.file()) ? Files.size(append.file()) : 0;
+                    entries.add(new Entry(APPEND, append.file(), position, append.data(), null));
+                    sizes.put(append.file(), position + append.data().length);
+                }
+                case Replace replace -> {
+                    entries.add(new Entry(REPLACE, replace.file(), 0, null, replace.source()));
+                    sizes.put(replace.file(), Files.size(replace.source()));
+                }
+                case Delete delete -> {
+                    entries.add(new Entry(DELETE, delete.file(), 0, null, null));
+                    sizes.put(delete.file(), 0L);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private long log(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            writeRecord(content, entry);
+        }
+        writeRecord(content, new Entry(COMMIT, folder, entries.size(), null, null));
+        ByteBuffer buffer = ByteBuffer.wrap(content.toByteArray());
+        logLock.lock();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            lsn++;
+            return lsn;
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void awaitDurable(long commitLsn) throws IOException {
+        logLock.lock();
+        try {
+            switch (sync) {
+                case ALWAYS -> {
+                    if (syncedLsn < commitLsn) {
+                        channel.force(false);
+                        syncedLsn = lsn;
+                    }
+                }
+                case GROUP -> {
+                    while (syncedLsn < commitLsn) {
+                        try {
+                            synced.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting for the write-ahead log");
+                        }
+                    }
+                }
+                case OS -> {
+                    // The OS writes the log to the disk
+                }
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void flush() {
+        logLock.lock();
+        try {
+            if (syncedLsn < lsn) {
+                try {
+                    channel.force(false);
+                    syncedLsn = lsn;
+                } catch (IOException e) {
+                    log.error("Unable to sync the write-ahead log: {}", e.getMessage());
+                    return;
+                }
+                synced.signalAll();
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void apply(Entry entry) throws IOException {
+        switch (entry.type()) {
+            case APPEND -> {
+                try (FileChannel file = FileChannel.open(entry.file(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(entry.data());
+                    long position = entry.position();
+                    while (buffer.hasRemaining()) {
+                        position += file.write(buffer, position);
+                    }
+                }
+                dirty.add(entry.file());
+            }
+            case REPLACE -> Files.move(entry.source(), entry.file(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            case DELETE -> Files.deleteIfExists(entry.file());
+            default -> throw new IllegalStateException("Unknown write-ahead log record " + entry.type());
+        }
+    }
+
+    private void replay() throws IOException {
+        if (Files.exists(logPath)) {
+            List<List<Entry>> batches = readBatches();
+
+            // A replaced or deleted file makes the previous changes of that file obsolete
+            Map<Path, Integer> lastReset = new HashMap<>();
+            for (int i = 0; i < batches.size(); i++) {
+                for (Entry entry : batches.get(i)) {
+                    if (entry.type() != APPEND) lastReset.put(entry.file(), i);
+                }
+            }
+            int replayed = 0;
+            for (int i = 0; i < batches.size(); i++) {
+                for (Entry entry : batches.get(i)) {
+                    if (i < lastReset.getOrDefault(entry.file(), -1)) continue;
+                    if (redo(entry)) replayed++;
+                }
+            }
+            if (replayed > 0) {
+                log.info("{} changes replayed from the write-ahead log of {}", replayed, folder);
+            }
+            for (Path file : dirty) {
+                if (Files.exists(file)) force(file);
+            }
+            forceFolder();
+            dirty.clear();
+            Files.write(logPath, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        // Temporary files of the table files that have not been committed are incomplete rewrites, other files are kept
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : files.filter(file -> TEMPORARY_FILE.matcher(file.getFileName().toString()).matches()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private boolean redo(Entry entry) throws IOException {
+        switch (entry.type()) {
+            case APPEND -> {
+                long size = Files.exists(entry.file()) ? Files.size(entry.file()) : 0;
+                if (size < entry.position()) {
+                    log.warn("Unable to replay a change of {}, the file is shorter than expected", entry.file());
+                    return false;
+                }
+                // Writing the data again at the same position is harmless if it was already applied
+                apply(entry);
+                return size < entry.position() + entry.data().length;
+            }
+            case REPLACE -> {
+                if (!Files.exists(entry.source())) return false;
+                apply(entry);
+                return true;
+            }
+            case DELETE -> {
+                return Files.deleteIfExists(entry.file());
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private List<List<Entry>> readBatches() throws IOException {
+        List<List<Entry>> batches = new ArrayList<>();
+        List<Entry> batch = new ArrayList<>();
+        long logSize = Files.size(logPath);
+        try (InputStream in = Files.newInputStream(logPath); DataInputStream input = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                Entry entry = readRecord(input, logSize);
+                if (entry == null) break;
+                if (entry.type() == COMMIT) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                } else {
+                    batch.add(entry);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            log.warn("{} uncommitted changes ignored in the write-ahead log of {}", batch.size(), folder);
+        }
+        return batches;
+    }
+
+    private void writeRecord(ByteArrayOutputStream content, Entry entry) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(entry.type());
+        out.writeUTF(relativize(entry.file()));
+        out.writeLong(entry.position());
+        out.writeUTF(entry.source() == null ? "" : relativize(entry.source()));
+        out.writeInt(entry.data() == null ? -1 : entry.data().length);
+        if (entry.data() != null) out.write(entry.data());
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        DataOutputStream frame = new DataOutputStream(content);
+        frame.writeInt(body.size());
+        frame.writeInt((int) crc.getValue());
+        body.writeTo(frame);
+        frame.flush();
+    }
+
+    private Entry readRecord(DataInputStream input, long logSize) throws IOException {
+        try {
+            int length = input.readInt();
+            int checksum = input.readInt();
+            if (length < 0 || length > logSize) return null;
+            byte[] body = input.readNBytes(length);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            // A torn or corrupted record ends the log
+            if (body.length != length || (int) crc.getValue() != checksum) return null;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = in.readByte();
+            Path file = folder.resolve(in.readUTF());
+            long position = in.readLong();
+            String source = in.readUTF();
+            int dataLength = in.readInt();
+            byte[] data = dataLength < 0 ? null : in.readNBytes(dataLength);
+            return new Entry(type, file, position, data, source.isEmpty() ? null : folder.resolve(source));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private String relativize(Path file) {
+        // The folder is absolute, the files are normalized the same way whatever the folder they were resolved from
+        return folder.relativize(file.toAbsolutePath().normalize()).toString();
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private void forceFolder() {
+        // Renames are durable once the folder is synced, not supported on every platform
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to sync the folder {}: {}", folder, e.getMessage());
+        }
+    }
+
+    private record Entry(byte type, Path file, long position, byte[] data, Path source) {
+    }
+}
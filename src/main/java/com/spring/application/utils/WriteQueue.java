@@ -0,0 +1,149 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Queue coalescing the concurrent writes of a table
+ * Writers enqueue their operation, then the first one getting the write lock of the table applies every pending
+ * operation as a single batch: the ids are checked once against the index and the table files are written once
+ * Operations are applied in the order they were enqueued, a rejected insert only fails its own caller
+ *
+ * @param <T> The entity stored in the table
+ */
+class WriteQueue<T> {
+
+    enum Kind {
+        INSERT, UPDATE, DELETE
+    }
+
+    private record Operation<T>(Kind kind, List<T> rows, CompletableFuture<Void> done) {
+    }
+
+    private final TableStorage<T> storage;
+    private final Lock lock;
+    private final ChangeLog changeLog;
+    private final String tableName;
+    private final Queue<Operation<T>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param storage   The table or partition written by the queue
+     * @param lock      The write lock of the table
+     * @param changeLog The change log receiving the changes of the batches
+     * @param tableName The name of the table in the change events
+     */
+    WriteQueue(TableStorage<T> storage, Lock lock, ChangeLog changeLog, String tableName) {
+        this.storage = storage;
+        this.lock = lock;
+        this.changeLog = changeLog;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Enqueue an operation and wait until the batch holding it has been written
+     *
+     * @param kind The kind of operation
+     * @param rows The rows to insert, update or delete
+     */
+    void execute(Kind kind, List<T> rows) throws IOException {
+        CompletableFuture<Void> done = submit(kind, rows);
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case UncheckedIOException cause -> throw cause.getCause();
+                case RuntimeException cause -> throw cause;
+                default -> throw e;
+            }
+        }
+    }
+
+    /**
+     * Enqueue an operation, the batch holding it is written before this method returns
+     *
+     * @param kind The kind of operation
+     * @param rows The rows to insert, update or delete
+     * @return A future completed once the operation is written, or completed exceptionally if it has been rejected
+     */
+    CompletableFuture<Void> submit(Kind kind, List<T> rows) {
+        Operation<T> operation = new Operation<>(kind, rows, new CompletableFuture<>());
+        pending.add(operation);
+        lock.lock();
+        try {
+            // Another writer may have written the operation while this one was waiting for the lock
+            if (!operation.done().isDone()) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return operation.done();
+    }
+
+    private void flush() {
+        List<Operation<T>> accepted = new ArrayList<>();
+        Map<String, T> rows = new LinkedHashMap<>();
+        Set<String> deleted = new HashSet<>();
+        Operation<T> operation = null;
+        try {
+            PrimaryKeyIndex primaryKeys = storage.loadIndex();
+            while ((operation = pending.poll()) != null) {
+                List<String> hashIds = operation.rows().stream().map(storage::hashId).toList();
+                switch (operation.kind()) {
+                    case INSERT -> {
+                        // Check unity constraint against the index and the previous operations of the batch
+                        boolean exists = hashIds.stream().anyMatch(hashId -> rows.containsKey(hashId) || (!deleted.contains(hashId) && primaryKeys.contains(hashId)));
+                        if (exists || new HashSet<>(hashIds).size() != hashIds.size()) {
+                            operation.done().completeExceptionally(new NonUniqueResultException("Some entities already exist in the table " + storage.tableName + " and were not inserted."));
+                            continue;
+                        }
+                        put(rows, deleted, hashIds, operation.rows());
+                    }
+                    case UPDATE -> put(rows, deleted, hashIds, operation.rows());
+                    case DELETE -> {
+                        hashIds.forEach(rows::remove);
+                        deleted.addAll(hashIds);
+                    }
+                }
+                accepted.add(operation);
+            }
+            // The changes of the batch are published as the net change of every row
+            Set<String> hashIds = new HashSet<>(rows.keySet());
+            hashIds.addAll(deleted);
+            ChangeLog.Capture<T> capture = changeLog.capture(storage, tableName).before(hashIds);
+            try {
+                storage.write(rows, deleted);
+                capture.written(rows, deleted);
+            } finally {
+                storage.changed();
+                capture.publish();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The whole batch fails, including the operations that have not been read yet
+            if (operation != null) {
+                accepted.add(operation);
+            }
+            while ((operation = pending.poll()) != null) {
+                accepted.add(operation);
+            }
+            accepted.forEach(failed -> failed.done().completeExceptionally(e));
+            return;
+        }
+        accepted.forEach(written -> written.done().complete(null));
+    }
+
+    private static <T> void put(Map<String, T> rows, Set<String> deleted, List<String> hashIds, List<T> entities) {
+        for (int i = 0; i < hashIds.size(); i++) {
+            rows.put(hashIds.get(i), entities.get(i));
+            deleted.remove(hashIds.get(i));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationTests {
+
+    private static final Map<String, Class<?>> TYPES = Map.of("CITY", String.class, "AGE", Integer.class, "RATE", double.class, "NAME", String.class);
+
+    @TempDir
+    Path dir;
+
+    private static Aggregation.Plan plan() {
+        return Aggregation.groupBy("CITY").count().sum("AGE").avg("RATE").min("AGE").max("NAME").resolve(TYPES);
+    }
+
+    @Test
+    void aggregateGroups() {
+        Aggregation.Groups groups = plan().newGroups();
+        groups.add(new Object[]{"b", 10, 1.0, "x"});
+        groups.add(new Object[]{"a", 20, 2.0, "y"});
+        Aggregation.Groups other = plan().newGroups();
+        other.add(new Object[]{"b", 30, null, "z"});
+        other.add(new Object[]{"a", null, 4.0, "w"});
+        groups.merge(other);
+
+        List<Map<String, Object>> results = groups.results();
+        assertEquals(List.of("a", "b"), results.stream().map(result -> result.get("CITY")).toList());
+        assertEquals(Map.of("CITY", "a", "COUNT", 2L, "SUM(AGE)", 20L, "AVG(RATE)", 3.0, "MIN(AGE)", 20, "MAX(NAME)", "y"), results.get(0));
+        assertEquals(Map.of("CITY", "b", "COUNT", 2L, "SUM(AGE)", 40L, "AVG(RATE)", 1.0, "MIN(AGE)", 10, "MAX(NAME)", "z"), results.get(1));
+    }
+
+    @Test
+    void removeRowsKeepingTheExtremes() {
+        Aggregation.Groups groups = plan().newGroups();
+        groups.add(new Object[]{"a", 10, 1.0, "x"});
+        groups.add(new Object[]{"a", 20, 2.0, "y"});
+        groups.add(new Object[]{"a", 30, 3.0, "w"});
+        groups.add(new Object[]{"b", 5, 1.0, "v"});
+        assertTrue(groups.remove(new Object[]{"a", 30, 3.0, "w"}));
+        assertEquals(Map.of("CITY", "a", "COUNT", 2L, "SUM(AGE)", 30L, "AVG(RATE)", 1.5, "MIN(AGE)", 10, "MAX(NAME)", "y"), groups.results().get(0));
+
+        // The row holding the minimum or the maximum is not removed, the group is left unchanged
+        List<Map<String, Object>> before = groups.results();
+        assertFalse(groups.remove(new Object[]{"a", 10, 5.0, "a"}));
+        assertFalse(groups.remove(new Object[]{"a", 15, 2.0, "y"}));
+        assertFalse(groups.remove(new Object[]{"c", 15, 2.0, "y"}));
+        assertEquals(before, groups.results());
+
+        // An empty group is dropped
+        Aggregation.Groups counts = Aggregation.groupBy("CITY").count().sum("AGE").resolve(TYPES).newGroups();
+        counts.add(new Object[]{"a", 1});
+        counts.add(new Object[]{"b", 2});
+        assertTrue(counts.remove(new Object[]{"b", 2}));
+        assertEquals(List.of(Map.of("CITY", "a", "COUNT", 1L, "SUM(AGE)", 1L)), counts.results());
+    }
+
+    @Test
+    void rejectInvalidAggregations() {
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.groupBy());
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.all().sum(""));
+        assertThrows(IllegalStateException.class, () -> Aggregation.all().resolve(TYPES));
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.all().sum("NAME").resolve(TYPES));
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.all().max("OTHER").resolve(TYPES));
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.groupBy("OTHER").count().resolve(TYPES));
+    }
+
+    @Test
+    void aggregateTable() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(700).open();
+        List<Map<String, Object>> results = db.aggregate(Person.class, Criteria.where("ACTIVE").eq(true), Aggregation.groupBy("CITY").count().min("ID").max("AGE"));
+        assertEquals(7, results.size());
+        assertEquals(Map.of("CITY", "City;0", "COUNT", 50L, "MIN(ID)", 14, "MAX(AGE)", 88), results.get(0));
+        assertEquals(350L, results.stream().mapToLong(result -> (Long) result.get("COUNT")).sum());
+        db.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "log"})
+    void countRows(String mode) throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).with("storageMode", mode).create(Person.class).persons(700).open();
+        assertEquals(700, db.count(Person.class));
+        assertEquals(350, db.count(Person.class, Criteria.where("ACTIVE").eq(true)));
+        assertEquals(8, db.count(Person.class, Criteria.where("AGE").eq(10)));
+
+        // The count of the whole table is the size of the primary key index of its version
+        db.insert(Person.of(701));
+        db.delete(Person.class, person -> person.getId() <= 100);
+        db.update(Person.of(200, "renamed"));
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        try (TableSnapshot version = storage.acquire()) {
+            assertEquals(601, version.primaryKeys().size());
+        }
+        assertEquals(601, db.count(Person.class));
+        assertEquals(1, db.count(Person.class, Criteria.where("NAME").eq("renamed")));
+        db.close();
+
+        LocalDatabase reopened = TestDatabase.in(dir).with("storageMode", mode).open();
+        assertEquals(601, reopened.count(Person.class));
+        assertThrows(IllegalArgumentException.class, () -> reopened.count(Person.class, Criteria.where("OTHER").eq(1)));
+        reopened.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLocalDatabaseTests {
+
+    @TempDir
+    Path dir;
+
+    private static AsyncLocalDatabase async(LocalDatabase db, int maxConcurrentIo) {
+        AsyncLocalDatabase async = new AsyncLocalDatabase(db);
+        ReflectionTestUtils.setField(async, "maxConcurrentIo", maxConcurrentIo);
+        return async;
+    }
+
+    @Test
+    void completeTheCallsOfTheDatabase() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).open();
+        AsyncLocalDatabase async = async(db, 4);
+        async.insert(Person.range(1, 100)).get(10, TimeUnit.SECONDS);
+        CompletableFuture.allOf(async.update(Person.of(1, "renamed")), async.delete(Person.of(2)), async.delete(Person.class, person -> person.getId() > 90))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(89L, async.count(Person.class).get(10, TimeUnit.SECONDS));
+        assertEquals(1L, async.count(Person.class, Criteria.where("NAME").eq("renamed")).get(10, TimeUnit.SECONDS));
+        assertEquals("renamed", async.findById(Person.class, 1).get(10, TimeUnit.SECONDS).orElseThrow().getName());
+        assertTrue(async.findById(Person.class, 2).get(10, TimeUnit.SECONDS).isEmpty());
+        assertEquals(44, async.query(Person.class, Person::isActive).get(10, TimeUnit.SECONDS).size());
+        assertEquals(db.query(Person.class), async.query(Person.class).get(10, TimeUnit.SECONDS));
+        async.close();
+        db.close();
+    }
+
+    @Test
+    void failWithTheExceptionsOfTheDatabase() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).open();
+        AsyncLocalDatabase async = async(db, 4);
+        async.insert(Person.of(1)).join();
+        CompletionException duplicate = assertThrows(CompletionException.class, () -> async.insert(Person.of(1)).join());
+        assertInstanceOf(NonUniqueResultException.class, duplicate.getCause());
+        CompletionException invalid = assertThrows(CompletionException.class, () -> async.findById(Person.class, 1, 2).join());
+        assertInstanceOf(IllegalArgumentException.class, invalid.getCause());
+        async.close();
+        db.close();
+    }
+
+    @Test
+    void limitTheConcurrentCallsOfATable() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).open();
+        AsyncLocalDatabase async = async(db, 2);
+        async.insert(Person.range(1, 10)).join();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger highest = new AtomicInteger();
+        Predicate<Person> slow = person -> {
+            if (person.getId() == 1) {
+                highest.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }
+            return true;
+        };
+        List<CompletableFuture<List<Person>>> calls = IntStream.range(0, 8).mapToObj(i -> async.query(Person.class, slow)).toList();
+        for (CompletableFuture<List<Person>> call : calls) {
+            assertEquals(10, call.get(10, TimeUnit.SECONDS).size());
+        }
+        assertTrue(highest.get() <= 2, highest.get() + " concurrent calls");
+        async.close();
+
+        AsyncLocalDatabase invalid = async(db, 0);
+        assertThrows(IllegalArgumentException.class, () -> invalid.count(Person.class));
+        invalid.close();
+        db.close();
+    }
+}
@@ -0,0 +1,162 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(int changesTailSize) throws Exception {
+        return TestDatabase.in(dir).with("changesTailSize", changesTailSize).create(Person.class).open();
+    }
+
+    private static Stream<Person> persons(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(Person::of);
+    }
+
+    private long files(String suffix) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    /**
+     * Collect the changes received by a subscriber requesting all of them
+     */
+    private static final class Collector implements Flow.Subscriber<ChangeEvent<Person>> {
+
+        final List<ChangeEvent<Person>> events = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ChangeEvent<Person> event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    @Test
+    void loadRowsOrNone() throws Exception {
+        LocalDatabase db = open(0);
+        db.insert(Person.of(1));
+        assertEquals(999, db.load(Person.class, persons(2, 1000)));
+        assertEquals(1000, db.count(Person.class));
+        assertEquals("Name 500", db.findById(Person.class, 500).orElseThrow().getName());
+        assertEquals(12, db.findBy(Person.class, "AGE", 10).size());
+
+        // An id of the table or an id loaded twice fails the whole load
+        assertThrows(NonUniqueResultException.class, () -> db.load(Person.class, persons(990, 1010)));
+        assertThrows(NonUniqueResultException.class, () -> db.load(Person.class, Stream.concat(persons(2000, 2010), persons(2005, 2005))));
+        assertEquals(1000, db.count(Person.class));
+        assertTrue(db.findById(Person.class, 1005).isEmpty());
+        assertEquals(0, files(".tmp"));
+        assertEquals(0, db.load(Person.class, Stream.empty()));
+        db.close();
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(1000, reopened.query(Person.class).size());
+        reopened.close();
+    }
+
+    @Test
+    void loadExportedRows() throws Exception {
+        LocalDatabase db = open(0);
+        db.insert(persons(1, 300).toList());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(300, db.export(Person.class, out));
+        db.delete(Person.class, person -> true);
+        assertEquals(0, db.count(Person.class));
+
+        assertEquals(300, db.load(Person.class, new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(persons(1, 300).toList(), db.query(Person.class, (Predicate<Person>) null, Comparator.comparing(Person::getId)));
+        db.close();
+    }
+
+    @Test
+    void captureLoadedRows() throws Exception {
+        LocalDatabase db = open(1000);
+        db.createView("active", Person.class, Person::isActive);
+        db.createView("ages", Person.class, Aggregation.all().count().sum("AGE"));
+        db.load(Person.class, persons(1, 50));
+        assertEquals(50, db.getChangeSequence());
+        assertEquals(25, db.queryView("active", Person.class).size());
+        assertEquals(50L, ((Number) db.aggregateView("ages").get(0).get("COUNT")).longValue());
+
+        Collector collector = new Collector();
+        db.changes(Person.class, 0).subscribe(collector);
+        db.close();
+        collector.done.get(10, TimeUnit.SECONDS);
+        assertEquals(IntStream.rangeClosed(1, 50).boxed().toList(), collector.events.stream().map(event -> event.after().getId()).toList());
+        assertTrue(collector.events.stream().allMatch(event -> event.type() == ChangeEvent.Type.INSERT));
+    }
+
+    @Test
+    void captureLargeLoadWithinTheTail() throws Exception {
+        int rows = 70000;
+        LocalDatabase db = open(100);
+        db.insert(Person.of(0));
+        db.createView("active", Person.class, Person::isActive);
+        db.createView("ages", Person.class, Aggregation.all().count().sum("AGE"));
+        db.load(Person.class, persons(1, rows));
+
+        // Only the last changes are kept, the views are computed again from the table
+        assertEquals(rows + 1, db.getChangeSequence());
+        assertEquals(rows / 2 + 1, db.queryView("active", Person.class).size());
+        Map<String, Object> ages = db.aggregateView("ages").get(0);
+        assertEquals(rows + 1L, ((Number) ages.get("COUNT")).longValue());
+        assertEquals(IntStream.rangeClosed(0, rows).mapToLong(id -> id % 90).sum(), ((Number) ages.get("SUM(AGE)")).longValue());
+
+        Collector overrun = new Collector();
+        db.changes(Person.class, 1).subscribe(overrun);
+        Collector last = new Collector();
+        db.changes(Person.class, rows + 1 - 100).subscribe(last);
+
+        // Later writes still reach the views
+        db.delete(Person.of(2));
+        assertEquals(rows / 2, db.queryView("active", Person.class).size());
+        db.close();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> overrun.done.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        last.done.get(10, TimeUnit.SECONDS);
+        assertEquals(101, last.events.size());
+        assertEquals(rows - 99, last.events.get(0).after().getId());
+        assertEquals(rows, last.events.get(99).after().getId());
+        assertEquals(ChangeEvent.Type.DELETE, last.events.get(100).type());
+    }
+}
@@ -0,0 +1,172 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(int changesTailSize) throws Exception {
+        return TestDatabase.in(dir).with("changesTailSize", changesTailSize).create(Person.class).open();
+    }
+
+    /**
+     * Subscriber requesting the changes as asked by the test
+     */
+    private static final class Probe implements Flow.Subscriber<ChangeEvent<Person>> {
+
+        final BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final long initial;
+
+        Probe(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (initial > 0) subscription.request(initial);
+            this.subscription.complete(subscription);
+        }
+
+        @Override
+        public void onNext(ChangeEvent<Person> event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+
+        void request(long n) throws Exception {
+            subscription.get(10, TimeUnit.SECONDS).request(n);
+        }
+
+        ChangeEvent<Person> next() throws Exception {
+            ChangeEvent<Person> event = events.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event, "No change received");
+            return event;
+        }
+    }
+
+    @Test
+    void publishTheChangesInOrder() throws Exception {
+        LocalDatabase db = open(100);
+        Probe probe = new Probe(Long.MAX_VALUE);
+        db.changes(Person.class).subscribe(probe);
+        db.insert(List.of(Person.of(1), Person.of(2)));
+        db.update(Person.of(1, "renamed"));
+        db.delete(Person.of(2));
+        db.delete(Person.of(3));
+        db.transaction(tx -> {
+            tx.insert(Person.of(3));
+            tx.delete(Person.of(1));
+        });
+        db.close();
+        probe.done.get(10, TimeUnit.SECONDS);
+
+        List<ChangeEvent<Person>> events = List.copyOf(probe.events);
+        assertEquals(IntStream.rangeClosed(1, 6).asLongStream().boxed().toList(), events.stream().map(ChangeEvent::sequence).toList());
+        assertTrue(events.stream().allMatch(event -> event.table().equals("PERSON")));
+        assertEquals(List.of(ChangeEvent.Type.INSERT, ChangeEvent.Type.INSERT, ChangeEvent.Type.UPDATE, ChangeEvent.Type.DELETE),
+                events.subList(0, 4).stream().map(ChangeEvent::type).toList());
+        assertEquals("Name 1", events.get(2).before().getName());
+        assertEquals("renamed", events.get(2).after().getName());
+        assertEquals(Person.of(2), events.get(3).before());
+        assertNull(events.get(3).after());
+        assertEquals(List.of("DELETE 1", "INSERT 3"), events.subList(4, 6).stream()
+                .map(event -> event.type() + " " + (event.after() != null ? event.after() : event.before()).getId()).sorted().toList());
+    }
+
+    @Test
+    void deliverTheRequestedChanges() throws Exception {
+        LocalDatabase db = open(100);
+        Probe probe = new Probe(0);
+        db.changes(Person.class, 0).subscribe(probe);
+        db.insert(Person.range(1, 5));
+
+        probe.request(2);
+        assertEquals(1, probe.next().sequence());
+        assertEquals(2, probe.next().sequence());
+        assertNull(probe.events.poll(200, TimeUnit.MILLISECONDS));
+        probe.request(10);
+        assertEquals(List.of(3L, 4L, 5L), List.of(probe.next().sequence(), probe.next().sequence(), probe.next().sequence()));
+
+        // A new subscriber replays the changes following its sequence number
+        Probe replay = new Probe(Long.MAX_VALUE);
+        db.changes(Person.class, 3).subscribe(replay);
+        assertEquals(4, replay.next().sequence());
+        assertEquals(5, replay.next().sequence());
+
+        // A cancelled subscriber does not receive the next changes
+        probe.subscription.get().cancel();
+        db.insert(Person.of(6));
+        assertEquals(6, replay.next().sequence());
+        assertNull(probe.events.poll(200, TimeUnit.MILLISECONDS));
+
+        ExecutionException invalid = assertThrows(ExecutionException.class, () -> {
+            replay.request(0);
+            replay.done.get(10, TimeUnit.SECONDS);
+        });
+        assertInstanceOf(IllegalArgumentException.class, invalid.getCause());
+        db.close();
+    }
+
+    @Test
+    void failTheSubscribersBehindTheTail() throws Exception {
+        LocalDatabase db = open(10);
+        Probe slow = new Probe(2);
+        db.changes(Person.class, 0).subscribe(slow);
+        db.insert(Person.of(1));
+        assertEquals(1, slow.next().sequence());
+        for (int id = 2; id <= 20; id++) {
+            db.insert(Person.of(id));
+        }
+
+        // The writers never wait: the changes the subscriber has not requested are overwritten
+        slow.request(Long.MAX_VALUE);
+        ExecutionException overrun = assertThrows(ExecutionException.class, () -> slow.done.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, overrun.getCause());
+
+        Probe late = new Probe(Long.MAX_VALUE);
+        db.changes(Person.class, 5).subscribe(late);
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> late.done.get(10, TimeUnit.SECONDS)).getCause());
+        Probe recent = new Probe(Long.MAX_VALUE);
+        db.changes(Person.class, 10).subscribe(recent);
+        assertEquals(11, recent.next().sequence());
+        db.close();
+        recent.done.get(10, TimeUnit.SECONDS);
+        assertEquals(9, recent.events.size());
+    }
+
+    @Test
+    void rejectSubscribersWhenDisabled() throws Exception {
+        LocalDatabase db = open(0);
+        db.insert(Person.of(1));
+        assertThrows(IllegalStateException.class, () -> db.changes(Person.class));
+        assertEquals(0, db.getChangeSequence());
+        assertThrows(IllegalArgumentException.class, () -> new ChangeLog(-1));
+        db.close();
+    }
+}
@@ -0,0 +1,139 @@
+package com.spring.application.utils;
+
+import com.spring.application.annotations.TableFormat;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarTableStorageTests {
+
+    @Data
+    @Table(name = "MEASURE")
+    @TableFormat("columnar")
+    static class Measure {
+
+        @Id
+        @Column(name = "ID")
+        private int id;
+
+        @Column(name = "DAY")
+        private LocalDate day;
+
+        @Column(name = "VALUE")
+        private double value;
+
+        @Column(name = "RATE")
+        private Double rate;
+
+        @Column(name = "LABEL")
+        private String label;
+
+        @Column(name = "VALID")
+        private Boolean valid;
+
+        static Measure of(int id) {
+            Measure measure = new Measure();
+            measure.setId(id);
+            measure.setDay(id % 5 == 0 ? null : LocalDate.of(2020, 1, 1).plusDays(id));
+            measure.setValue(id / 4.0);
+            measure.setRate(id % 3 == 0 ? null : id * 1.5);
+            measure.setLabel(id % 11 == 0 ? null : "a;b \"é\" " + id);
+            measure.setValid(id % 7 == 0 ? null : id % 2 == 0);
+            return measure;
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    private static List<Measure> measures(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(Measure::of).toList();
+    }
+
+    private static TestDatabase compressed(Path folder, String compression) {
+        return TestDatabase.in(folder).with("compression", compression);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "deflate"})
+    void readWrittenBlocks(String compression) throws Exception {
+        LocalDatabase db = compressed(dir, compression).create(Measure.class).open();
+        assertTrue(Files.exists(dir.resolve("MEASURE" + ColumnarTableStorage.EXTENSION)));
+
+        // Several blocks, appended by several inserts
+        db.insert(measures(1, 5000));
+        db.insert(measures(5001, 10000));
+        assertEquals(measures(1, 10000), db.query(Measure.class, (Predicate<Measure>) null, Comparator.comparing(Measure::getId)));
+        assertEquals(Measure.of(4097), db.findById(Measure.class, 4097).orElseThrow());
+        assertEquals(Measure.of(8192), db.findById(Measure.class, 8192).orElseThrow());
+
+        // Updates and deletes rewrite the file
+        Measure changed = Measure.of(10);
+        changed.setLabel("changed");
+        changed.setRate(null);
+        db.update(changed);
+        db.delete(Measure.class, measure -> measure.getId() > 9000);
+        db.close();
+
+        LocalDatabase reopened = compressed(dir, compression).open();
+        assertEquals(9000, reopened.count(Measure.class));
+        assertEquals(changed, reopened.findById(Measure.class, 10).orElseThrow());
+        assertTrue(reopened.findById(Measure.class, 9001).isEmpty());
+        assertEquals(List.of(Measure.of(2000), Measure.of(2004)), reopened.query(Measure.class, Criteria.where("VALUE").between(500.0, 501.0).and("VALID").eq(true),
+                Comparator.comparing(Measure::getId)));
+        assertEquals(List.of(Map.of("VALID", true, "COUNT", 3858L)), reopened.aggregate(Measure.class, Criteria.where("VALID").eq(true), Aggregation.groupBy("VALID").count()));
+        reopened.close();
+    }
+
+    @Test
+    void compressTheBlocks() throws Exception {
+        Path plain = Files.createDirectory(dir.resolve("plain"));
+        Path deflated = Files.createDirectory(dir.resolve("deflated"));
+        for (Path folder : List.of(plain, deflated)) {
+            compressed(folder, folder == plain ? "none" : "deflate").create(Measure.class).insert(measures(1, 10000)).open().close();
+        }
+        long plainSize = Files.size(plain.resolve("MEASURE" + ColumnarTableStorage.EXTENSION));
+        long deflatedSize = Files.size(deflated.resolve("MEASURE" + ColumnarTableStorage.EXTENSION));
+        assertTrue(deflatedSize < plainSize / 2, deflatedSize + " bytes compressed from " + plainSize);
+
+        // The compression is read from the file, not from the configuration
+        LocalDatabase db = compressed(deflated, "none").open();
+        db.insert(Measure.of(10001));
+        assertEquals(measures(1, 10001), db.query(Measure.class, (Predicate<Measure>) null, Comparator.comparing(Measure::getId)));
+        db.close();
+    }
+
+    @Test
+    void rejectUnknownCompressions() throws Exception {
+        LocalDatabase db = compressed(dir, "lz4").open();
+        assertThrows(IllegalArgumentException.class, () -> db.create(Measure.class));
+        db.close();
+    }
+
+    @Test
+    void keepTheFormatOfExistingTables() throws Exception {
+        TestDatabase.in(dir).create(Person.class).insert(List.of(Person.of(1))).open().close();
+
+        LocalDatabase columnar = TestDatabase.in(dir).with("tableFormat", "columnar").open();
+        columnar.insert(Person.of(2));
+        assertEquals(2, columnar.count(Person.class));
+        assertFalse(Files.exists(dir.resolve("PERSON" + ColumnarTableStorage.EXTENSION)));
+        columnar.close();
+    }
+}
@@ -0,0 +1,76 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CriteriaTests {
+
+    private static final Map<String, Class<?>> TYPES = Map.of("ID", int.class, "AGE", Integer.class, "SIZE", long.class, "RATE", double.class, "NAME", String.class);
+
+    @TempDir
+    Path dir;
+
+    private static Object value(Criteria criteria) {
+        return criteria.resolve(TYPES).get(0).values().get(0);
+    }
+
+    @Test
+    void convertValuesToTheColumnTypes() {
+        assertEquals(5, value(Criteria.where("ID").eq(5L)));
+        assertEquals(2, value(Criteria.where("AGE").eq(2.0)));
+        assertEquals(7, value(Criteria.where("ID").eq(new BigDecimal("7.00"))));
+        assertEquals(3L, value(Criteria.where("SIZE").eq(3)));
+        assertEquals(1.5, value(Criteria.where("RATE").eq(1.5f)));
+        assertEquals(4.0, value(Criteria.where("RATE").eq(4)));
+        assertEquals("a", value(Criteria.where("NAME").eq("a")));
+    }
+
+    @Test
+    void rejectValuesNotHeldByTheColumns() {
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("NAME").eq(1)));
+        assertThrows(IllegalArgumentException.class, () -> Criteria.where("OTHER").eq(1).resolve(TYPES));
+        assertThrows(IllegalArgumentException.class, () -> Criteria.where("ID").eq(null));
+        assertThrows(IllegalStateException.class, () -> Criteria.where("ID").resolve(TYPES));
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("ID").eq(1.5)));
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("AGE").gt(0.1f)));
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("ID").lt(Long.MAX_VALUE)));
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("SIZE").eq(Double.NaN)));
+        assertThrows(IllegalArgumentException.class, () -> value(Criteria.where("SIZE").eq(1e30)));
+    }
+
+    @Test
+    void testConditions() {
+        List<Criteria.Condition> conditions = Criteria.where("ID").between(2, 4).and("AGE").in(2, 4, 9).and("NAME").ne("x").resolve(TYPES);
+        Map<String, Object> row = new HashMap<>(Map.of("ID", 4, "AGE", 4, "NAME", "y"));
+        assertTrue(Criteria.<Map<String, Object>>compile(conditions, Map::get).test(row));
+        row.put("AGE", 3);
+        assertFalse(Criteria.<Map<String, Object>>compile(conditions, Map::get).test(row));
+        row.remove("AGE");
+        assertFalse(Criteria.<Map<String, Object>>compile(conditions, Map::get).test(row));
+        assertTrue(Criteria.<Map<String, Object>>compile(Criteria.where("AGE").isNull().resolve(TYPES), Map::get).test(row));
+    }
+
+    @Test
+    void queryTable() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(300).open();
+        assertEquals(List.of(12), db.query(Person.class, Criteria.where("ID").eq(12L)).stream().map(Person::getId).toList());
+        assertEquals(List.of(10, 100, 190, 280), db.query(Person.class, Criteria.where("AGE").eq(10), Comparator.comparing(Person::getId)).stream().map(Person::getId).toList());
+        assertEquals(4, db.count(Person.class, Criteria.where("AGE").between(10, 11).and("ACTIVE").eq(true)));
+        assertEquals(3, db.count(Person.class, Criteria.where("NAME").in("Name 1", "Name 2", "Name 3", "Other")));
+        assertThrows(IllegalArgumentException.class, () -> db.query(Person.class, Criteria.where("OTHER").eq(1)));
+
+        // The fractional id does not match the id it would be truncated to
+        assertThrows(IllegalArgumentException.class, () -> db.query(Person.class, Criteria.where("ID").eq(1.5)));
+        assertThrows(IllegalArgumentException.class, () -> db.count(Person.class, Criteria.where("AGE").gte(10.5)));
+        db.close();
+    }
+}
@@ -0,0 +1,71 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRowCodecTests {
+
+    private static final List<String> HEADER = List.of("ID", "NAME", "CITY", "AGE", "BIRTH", "ACTIVE");
+
+    private final CsvRowCodec<Person> codec = new CsvRowCodec<>(Person.class, TableStorage.DELIMITER);
+
+    private static LinkedHashMap<String, Object> columns(Person person) {
+        LinkedHashMap<String, Object> row = new LinkedHashMap<>();
+        row.put("ID", person.getId());
+        row.put("NAME", person.getName());
+        row.put("CITY", person.getCity());
+        row.put("AGE", person.getAge());
+        row.put("BIRTH", person.getBirth());
+        row.put("ACTIVE", person.isActive());
+        return row;
+    }
+
+    @Test
+    void writeTheLinesOfStringUtils() {
+        for (Person person : IntStream.rangeClosed(0, 20).mapToObj(Person::of).toList()) {
+            String line = codec.encode(person, HEADER);
+            assertEquals(StringUtils.encodeCSVLine(columns(person), TableStorage.DELIMITER), line);
+            assertEquals(ObjectUtils.mapToObject(StringUtils.parseCSVLine(line, HEADER, TableStorage.DELIMITER), Person.class), codec.decode(line, HEADER));
+        }
+    }
+
+    @Test
+    void decodeEncodedRows() {
+        Person person = Person.of(3);
+        person.setName(" Text;with;;delimiters \"quoted\" àé ");
+        String line = codec.encode(person, HEADER);
+        assertEquals(HEADER.size(), line.split(TableStorage.DELIMITER, -1).length);
+        Person decoded = codec.decode(line, HEADER);
+        assertEquals(person, decoded);
+
+        // Null values are read back as the lines of StringUtils are, missing and unknown columns are ignored
+        person.setAge(null);
+        person.setBirth(null);
+        line = codec.encode(person, HEADER);
+        assertEquals(ObjectUtils.mapToObject(StringUtils.parseCSVLine(line, HEADER, TableStorage.DELIMITER), Person.class), codec.decode(line, HEADER));
+        assertNull(codec.decode(line, HEADER).getBirth());
+        List<String> other = List.of("ACTIVE", "OTHER", "ID", "AGE");
+        Person partial = codec.decode("true;\"x\";7", other);
+        assertEquals(7, partial.getId());
+        assertTrue(partial.isActive());
+        assertNull(partial.getAge());
+        assertNull(partial.getName());
+        assertEquals("false;\"\";3;\"\"", codec.encode(person, other));
+    }
+
+    @Test
+    void parseCellsOfAColumn() {
+        assertEquals(12, codec.parser("AGE").apply("12"));
+        assertNull(codec.parser("AGE").apply(" "));
+        assertEquals(0, codec.parser("ID").apply(""));
+        assertEquals(false, codec.parser("ACTIVE").apply(""));
+        assertEquals("a;b", codec.parser("NAME").apply(codec.encodeValue("a;b")));
+        assertEquals(Person.of(4).getBirth(), codec.parser("BIRTH").apply(codec.encodeValue(Person.of(4).getBirth())));
+        assertNull(codec.parser("OTHER").apply("1"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.Column;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityMapperTests {
+
+    static class Account {
+
+        static final String PREFIX = "A";
+
+        @Column(name = "NUMBER")
+        private int number;
+
+        private String owner;
+
+        private final String kind;
+
+        Account() {
+            kind = "saving";
+        }
+    }
+
+    record Point(int x, int y) {
+    }
+
+    @Test
+    void accessTheFieldsOfAnEntity() {
+        EntityMapper<Person> mapper = EntityMapper.of(Person.class);
+        assertSame(mapper, EntityMapper.of(Person.class));
+        assertEquals(List.of("ID", "NAME", "CITY", "AGE", "BIRTH", "ACTIVE"), mapper.properties().stream().map(EntityMapper.Property::key).toList());
+
+        Person person = mapper.newInstance();
+        mapper.property("AGE").set(person, 42);
+        mapper.property("ACTIVE").set(person, true);
+        assertEquals(42, person.getAge());
+        assertTrue(person.isActive());
+        assertEquals(42, mapper.getColumn(person, "AGE"));
+        assertNull(mapper.getColumn(person, "OTHER"));
+        assertThrows(IllegalStateException.class, () -> mapper.property("ID").set(person, "text"));
+
+        Person copy = mapper.copy(Person.of(5));
+        assertEquals(Person.of(5), copy);
+        assertNotSame(Person.of(5), copy);
+    }
+
+    @Test
+    void mapFieldsWithoutColumns() {
+        EntityMapper<Account> mapper = EntityMapper.of(Account.class);
+        assertEquals(List.of("NUMBER", "owner", "kind"), mapper.properties().stream().map(EntityMapper.Property::key).toList());
+        Account account = ObjectUtils.mapToObject(Map.of("NUMBER", "12", "owner", "me"), Account.class);
+        assertEquals(12, account.number);
+        assertEquals("me", account.owner);
+        assertEquals("saving", account.kind);
+        assertNull(mapper.getColumn(account, "owner"));
+
+        // Final fields are written as the reflective mapping did
+        assertEquals("other", ObjectUtils.mapToObject(Map.of("kind", "other"), Account.class).kind);
+        mapper.property("kind").set(account, "copied");
+        assertEquals("copied", mapper.copy(account).kind);
+        assertEquals("me", mapper.copy(account).owner);
+    }
+
+    @Test
+    void rejectClassesWithoutConstructorWithoutArguments() {
+        EntityMapper<Point> mapper = EntityMapper.of(Point.class);
+        assertEquals(3, mapper.property("x").get(new Point(3, 4)));
+        assertNull(mapper.property("x").setter());
+        assertThrows(IllegalStateException.class, () -> mapper.property("x").set(new Point(3, 4), 5));
+        assertThrows(IllegalStateException.class, mapper::newInstance);
+    }
+}
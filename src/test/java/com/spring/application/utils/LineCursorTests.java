@@ -0,0 +1,78 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineCursorTests {
+
+    private static final String CONTENT = "ID;NAME\r\n1;\"é;à\"\n\n2;\"b\"\r\n30;\"ccc\"";
+
+    @TempDir
+    Path dir;
+
+    private FileChannel open() throws Exception {
+        Path file = Files.writeString(dir.resolve("TABLE.csv"), CONTENT, StandardCharsets.UTF_8);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static List<String> lines(TableStorage.LineCursor cursor) {
+        List<String> lines = new ArrayList<>();
+        cursor.forEachRemaining(line -> lines.add(line.offset() + ":" + line.text()));
+        return lines;
+    }
+
+    @Test
+    void readTheLinesOfAFile() throws Exception {
+        try (FileChannel channel = open()) {
+            int second = "ID;NAME\r\n".length();
+            int third = second + "1;\"é;à\"\n".getBytes(StandardCharsets.UTF_8).length;
+            List<String> expected = List.of("0:ID;NAME", second + ":1;\"é;à\"", third + ":", (third + 1) + ":2;\"b\"", (third + 8) + ":30;\"ccc\"");
+            assertEquals(expected, lines(new TableStorage.LineCursor(channel, channel.size())));
+
+            // Only the bytes of the version are read
+            assertEquals(expected.subList(0, 4), lines(new TableStorage.LineCursor(channel, third + 8)));
+            assertEquals(List.of("0:ID;NAME", second + ":1;\"é"), lines(new TableStorage.LineCursor(channel, second + 5)));
+        }
+    }
+
+    @Test
+    void readEveryLineOnceByChunks() throws Exception {
+        try (FileChannel channel = open()) {
+            List<String> expected = lines(new TableStorage.LineCursor(channel, channel.size()));
+            for (int chunk = 1; chunk <= channel.size(); chunk++) {
+                List<String> read = new ArrayList<>();
+                for (long from = 0; from < channel.size(); from += chunk) {
+                    read.addAll(lines(new TableStorage.LineCursor(channel, channel.size(), from, from + chunk)));
+                }
+                assertEquals(expected, read, "Chunks of " + chunk + " bytes");
+            }
+        }
+    }
+
+    @Test
+    void readCellsWithoutSplittingTheLine() throws Exception {
+        try (FileChannel channel = open()) {
+            TableStorage.LineCursor cursor = new TableStorage.LineCursor(channel, channel.size());
+            assertEquals("ID", cursor.next().cell(0));
+            assertEquals("NAME", cursor.cell(1));
+            assertNull(cursor.cell(2));
+            assertEquals('1', cursor.next().first());
+            assertEquals("\"é", cursor.cell(1));
+            assertEquals("à\"", cursor.cell(2));
+            assertEquals(-1, cursor.next().first());
+            assertEquals(";\"b\"", cursor.next().dropFirst().text());
+            assertEquals("30", cursor.next().cell(0));
+            assertFalse(cursor.hasNext());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalDatabaseWarmUpTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open() throws Exception {
+        return TestDatabase.in(dir).with("cacheMaxBytes", 1L << 26).open();
+    }
+
+    private void warmUp(LocalDatabase db, String tables) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        AutoConfigurationPackages.register(beanFactory, LocalDatabase.class.getPackageName());
+        LocalDatabaseWarmUp warmUp = new LocalDatabaseWarmUp(db, beanFactory);
+        ReflectionTestUtils.setField(warmUp, "tables", tables);
+        warmUp.run(new DefaultApplicationArguments());
+    }
+
+    @Test
+    void warmUpTheConfiguredTables() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(500).open().close();
+
+        // Tables which do not exist and unknown names are left cold
+        LocalDatabase warm = open();
+        warmUp(warm, " PERSON, ACCOUNT,MISSING ");
+        assertEquals(500, warm.query(Person.class).size());
+        assertEquals(1, warm.getCacheHits());
+        warm.close();
+
+        LocalDatabase all = open();
+        warmUp(all, "*");
+        assertEquals(500, all.query(Person.class).size());
+        assertEquals(1, all.getCacheHits());
+        all.close();
+    }
+
+    @Test
+    void leaveTheTablesColdByDefault() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(1).open().close();
+
+        LocalDatabase cold = open();
+        warmUp(cold, "");
+        assertEquals(1, cold.query(Person.class).size());
+        assertEquals(0, cold.getCacheHits());
+        assertEquals(1, cold.getCacheMisses());
+        cold.close();
+    }
+}
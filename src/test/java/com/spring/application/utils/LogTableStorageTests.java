@@ -0,0 +1,138 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTableStorageTests {
+
+    @TempDir
+    Path dir;
+
+    private TestDatabase log(double garbageRatio) {
+        return TestDatabase.in(dir).with("storageMode", "log").with("segmentSize", 4096L).with("garbageRatio", garbageRatio);
+    }
+
+    private static LogTableStorage<Person> storage(LocalDatabase db) {
+        return (LogTableStorage<Person>) TestDatabase.storage(db, Person.class);
+    }
+
+    private long files(String suffix) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    private static void write(LocalDatabase db) throws Exception {
+        for (int round = 0; round < 4; round++) {
+            List<Person> updated = new ArrayList<>();
+            for (int id = 1; id <= 500; id += 2) {
+                updated.add(Person.of(id, "Round " + round));
+            }
+            db.update(updated);
+            db.delete(Person.of(100 + 2 * round));
+        }
+    }
+
+    private static void check(LocalDatabase db) throws Exception {
+        assertEquals(496, db.count(Person.class));
+        assertEquals("Round 3", db.findById(Person.class, 1).orElseThrow().getName());
+        assertEquals("Name 2", db.findById(Person.class, 2).orElseThrow().getName());
+        assertTrue(db.findById(Person.class, 102).isEmpty());
+        assertEquals(250, db.findBy(Person.class, "NAME", "Round 3").size());
+    }
+
+    @Test
+    void appendChangesToSegments() throws Exception {
+        LocalDatabase db = log(10).create(Person.class).persons(500).open();
+        write(db);
+        assertTrue(files(".log") > 1);
+        assertEquals(1, TableStorage.countLines(dir.resolve("PERSON.csv")));
+        check(db);
+        db.close();
+
+        // The table is read from its segments whatever the configured storage
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        check(reopened);
+        reopened.close();
+    }
+
+    @Test
+    void compactLiveRows() throws Exception {
+        LocalDatabase db = log(10).create(Person.class).persons(500).open();
+        write(db);
+        storage(db).compact();
+        assertEquals(497, TableStorage.countLines(dir.resolve("PERSON.csv")));
+        assertTrue(files(".log") <= 1);
+        assertEquals(0, files(".tmp"));
+        check(db);
+
+        // Later writes go to the segments again
+        db.insert(Person.of(1000));
+        db.delete(Person.of(2));
+        assertEquals(496, db.count(Person.class));
+        assertTrue(db.findById(Person.class, 2).isEmpty());
+        db.close();
+
+        LocalDatabase reopened = log(10).open();
+        assertEquals(496, reopened.count(Person.class));
+        assertEquals("Name 1000", reopened.findById(Person.class, 1000).orElseThrow().getName());
+        reopened.close();
+    }
+
+    @Test
+    void rebuildIndexOfCompactedTable() throws Exception {
+        LocalDatabase db = log(10).create(Person.class).persons(500).open();
+        write(db);
+        check(db);
+        storage(db).compact();
+        db.update(Person.of(3, "After"));
+        db.close();
+
+        Files.delete(dir.resolve("PERSON.pk.idx"));
+        Files.delete(dir.resolve("PERSON.NAME.idx"));
+        LocalDatabase reopened = log(10).open();
+        assertEquals("After", reopened.findById(Person.class, 3).orElseThrow().getName());
+        assertEquals(249, reopened.findBy(Person.class, "NAME", "Round 3").size());
+        assertEquals(496, reopened.count(Person.class));
+        reopened.close();
+    }
+
+    @Test
+    void compactInBackground() throws Exception {
+        LocalDatabase db = log(0.5).create(Person.class).persons(500).open();
+        write(db);
+        check(db);
+
+        // Closing waits for the running compaction before closing the write-ahead log
+        db.close();
+        assertEquals(0, files(".tmp"));
+        assertTrue(TableStorage.countLines(dir.resolve("PERSON.csv")) > 1);
+
+        LocalDatabase reopened = log(0.5).open();
+        check(reopened);
+        reopened.close();
+    }
+
+    @Test
+    void readVersionDuringCompaction() throws Exception {
+        LocalDatabase db = log(10).create(Person.class).persons(500).open();
+        write(db);
+        try (Stream<Person> rows = db.stream(Person.class)) {
+            storage(db).compact();
+            db.delete(Person.class, person -> person.getId() <= 10);
+
+            // The stream reads the version taken before the compaction, whose files were replaced
+            assertEquals(496, rows.count());
+        }
+        assertEquals(486, db.count(Person.class));
+        db.close();
+    }
+}
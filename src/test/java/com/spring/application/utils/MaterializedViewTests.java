@@ -0,0 +1,100 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaterializedViewTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open() throws Exception {
+        return TestDatabase.in(dir).create(Person.class).persons(200).open();
+    }
+
+    private static Person aged(int id, int age) {
+        Person person = Person.of(id);
+        person.setAge(age);
+        return person;
+    }
+
+    private static List<Integer> ids(List<Person> rows) {
+        return rows.stream().map(Person::getId).sorted().toList();
+    }
+
+    @Test
+    void followWritesOfTheTable() throws Exception {
+        LocalDatabase db = open();
+        Predicate<Person> young = person -> person.getAge() < 5;
+        db.createView("young", Person.class, young);
+        assertEquals(ids(db.query(Person.class, young)), ids(db.queryView("young", Person.class)));
+
+        db.insert(aged(500, 1));
+        db.update(aged(2, 50));
+        db.update(aged(10, 3));
+        db.delete(Person.of(3));
+        db.delete(Person.class, person -> person.getId() == 4);
+        db.transaction(tx -> {
+            tx.insert(aged(501, 2));
+            tx.delete(Person.of(1));
+        });
+        assertThrows(IllegalStateException.class, () -> db.transaction(tx -> {
+            tx.insert(aged(502, 2));
+            throw new IllegalStateException("rolled back");
+        }));
+        List<Integer> expected = ids(db.query(Person.class, young));
+        assertTrue(expected.containsAll(List.of(10, 500, 501)));
+        assertFalse(expected.contains(502));
+        assertEquals(expected, ids(db.queryView("young", Person.class)));
+
+        // The rows of the view are shared until the next write
+        List<Person> rows = db.queryView("young", Person.class);
+        assertSame(rows, db.queryView("young", Person.class));
+        assertThrows(UnsupportedOperationException.class, () -> rows.add(Person.of(0)));
+        db.close();
+    }
+
+    @Test
+    void followAggregatesOfTheTable() throws Exception {
+        LocalDatabase db = open();
+        Aggregation aggregation = Aggregation.groupBy("ACTIVE").count().sum("AGE").min("AGE").max("ID");
+        db.createView("ages", Person.class, Criteria.where("AGE").lt(50), aggregation);
+
+        db.insert(aged(300, 7));
+        db.update(aged(5, 49));
+        db.delete(Person.of(6));
+        // The minimum and the maximum rows are removed, the groups are computed again
+        db.delete(Person.of(180));
+        db.update(aged(300, 70));
+        assertEquals(db.aggregate(Person.class, Criteria.where("AGE").lt(50), aggregation), db.aggregateView("ages"));
+        db.close();
+    }
+
+    @Test
+    void dropViews() throws Exception {
+        LocalDatabase db = open();
+        db.createView("all", Person.class, (Predicate<Person>) null);
+        db.createView("count", Person.class, Aggregation.all().count());
+        assertThrows(IllegalArgumentException.class, () -> db.createView("all", Person.class, Aggregation.all().count()));
+        assertThrows(IllegalArgumentException.class, () -> db.createView("", Person.class, (Predicate<Person>) null));
+        assertThrows(IllegalArgumentException.class, () -> db.aggregateView("all"));
+        assertThrows(IllegalArgumentException.class, () -> db.queryView("count", Person.class));
+        assertEquals(200, db.queryView("all", Person.class).size());
+        assertEquals(List.of(Map.of("COUNT", 200L)), db.aggregateView("count"));
+
+        db.dropView("all");
+        db.insert(Person.of(201));
+        assertThrows(IllegalArgumentException.class, () -> db.queryView("all", Person.class));
+        assertEquals(List.of(Map.of("COUNT", 201L)), db.aggregateView("count"));
+        assertEquals(201, db.query(Person.class, (Predicate<Person>) null, Comparator.comparing(Person::getId)).size());
+        db.close();
+    }
+}
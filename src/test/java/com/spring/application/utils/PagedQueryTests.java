@@ -0,0 +1,78 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedQueryTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(Path folder, String mode, long cacheMaxBytes) throws Exception {
+        List<Person> rows = new ArrayList<>(Person.range(1, 2000));
+        Collections.shuffle(rows, new Random(1));
+        return TestDatabase.in(folder).with("storageMode", mode).with("cacheMaxBytes", cacheMaxBytes).create(Person.class).insert(rows).open();
+    }
+
+    private static List<Integer> ids(List<Person> rows) {
+        return rows.stream().map(Person::getId).toList();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "log"})
+    void pageSortedRows(String mode) throws Exception {
+        for (long cacheMaxBytes : new long[]{0, 1 << 26}) {
+            LocalDatabase db = open(Files.createDirectory(dir.resolve("cache" + cacheMaxBytes)), mode, cacheMaxBytes);
+            Predicate<Person> active = Person::isActive;
+            Comparator<Person> byAge = Comparator.comparing(Person::getAge);
+            List<Person> all = db.query(Person.class, active, byAge);
+            assertEquals(1000, all.size());
+            for (int[] page : new int[][]{{0, 20}, {20, 20}, {990, 50}, {995, 100}, {0, 5000}, {1000, 10}}) {
+                List<Person> expected = all.subList(Math.min(page[0], all.size()), Math.min(page[0] + page[1], all.size()));
+                assertEquals(ids(expected), ids(db.query(Person.class, active, byAge, page[0], page[1])));
+            }
+
+            // Without order the rows keep the order of the table
+            List<Person> unsorted = db.query(Person.class, active);
+            assertEquals(ids(unsorted.subList(40, 60)), ids(db.query(Person.class, active, null, 40, 20)));
+            assertEquals(0, db.query(Person.class, null, null, 0, 0).size());
+            assertThrows(IllegalArgumentException.class, () -> db.query(Person.class, null, null, -1, 2));
+            db.close();
+        }
+    }
+
+    @Test
+    void pageWithoutFillingTheCache() throws Exception {
+        LocalDatabase db = open(dir, "csv", 1 << 26);
+        List<Person> page = db.query(Person.class, null, Comparator.comparing(Person::getId), 0, 10);
+        assertEquals(IntStream.rangeClosed(1, 10).boxed().toList(), ids(page));
+
+        // The paged query decoded the rows lazily, the table is read again and cached by the next query
+        long hits = db.getCacheHits();
+        long misses = db.getCacheMisses();
+        assertEquals(2000, db.query(Person.class).size());
+        assertEquals(hits, db.getCacheHits());
+        assertEquals(misses + 1, db.getCacheMisses());
+
+        // Once cached, the pages are read from the cache and are copies of the cached rows
+        List<Person> cached = db.query(Person.class, null, null, 0, 5);
+        assertEquals(hits + 1, db.getCacheHits());
+        cached.get(0).setName("changed");
+        assertNotEquals("changed", db.query(Person.class, null, null, 0, 5).get(0).getName());
+        db.close();
+    }
+}
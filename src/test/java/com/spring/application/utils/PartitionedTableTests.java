@@ -0,0 +1,173 @@
+package com.spring.application.utils;
+
+import com.spring.application.annotations.Partitioned;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedTableTests {
+
+    @Data
+    @Table(name = "ORDERS")
+    @Partitioned(count = 4, column = "CUSTOMER")
+    static class Order {
+
+        @Id
+        @Column(name = "CUSTOMER")
+        private int customer;
+
+        @Id
+        @Column(name = "NUMBER")
+        private int number;
+
+        @Column(name = "AMOUNT")
+        private Integer amount;
+
+        static Order of(int customer, int number) {
+            Order order = new Order();
+            order.setCustomer(customer);
+            order.setNumber(number);
+            order.setAmount(customer * 100 + number);
+            return order;
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(String folders) throws Exception {
+        return TestDatabase.in(dir).with("partitionFolders", folders).open();
+    }
+
+    private static List<Order> orders() {
+        return IntStream.range(0, 400).mapToObj(i -> Order.of(i % 40, i)).toList();
+    }
+
+    @Test
+    void routeRowsByPartitionColumn() throws Exception {
+        LocalDatabase db = open("");
+        db.create(Order.class);
+        db.insert(orders());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(Files.exists(dir.resolve("ORDERS.part" + i + ".csv")));
+        }
+
+        // The rows of a customer are stored in a single partition
+        List<TableStorage<Order>> partitions = db.partitions(Order.class);
+        for (int customer = 0; customer < 40; customer++) {
+            TableStorage<Order> expected = LocalDatabase.partitionById(partitions, new Object[]{customer, 0});
+            for (TableStorage<Order> storage : partitions) {
+                long rows = TableStorage.countLines(storage.tablePath) - 1;
+                assertTrue(rows > 0);
+                int id = customer;
+                boolean stored = Files.readAllLines(storage.tablePath).stream().skip(1).anyMatch(line -> line.startsWith(id + ";"));
+                assertEquals(storage == expected, stored);
+            }
+        }
+        assertEquals(400, db.count(Order.class));
+        assertEquals(1252, db.findById(Order.class, 12, 52).orElseThrow().getAmount());
+        assertTrue(db.findById(Order.class, 13, 52).isEmpty());
+    }
+
+    @Test
+    void queryAndWriteEveryPartition() throws Exception {
+        LocalDatabase db = open("");
+        db.create(Order.class);
+        db.insert(orders());
+        List<Order> sorted = db.query(Order.class, order -> order.getNumber() >= 390, Comparator.comparing(Order::getNumber));
+        assertEquals(IntStream.range(390, 400).boxed().toList(), sorted.stream().map(Order::getNumber).toList());
+        assertEquals(List.of(5, 6, 7), db.query(Order.class, null, Comparator.comparing(Order::getNumber), 5, 3).stream().map(Order::getNumber).toList());
+        assertEquals(10, db.query(Order.class, Criteria.where("CUSTOMER").eq(3)).size());
+
+        Order updated = Order.of(3, 3);
+        updated.setAmount(-1);
+        db.update(updated);
+        db.delete(Order.class, order -> order.getCustomer() == 4);
+        db.delete(Order.of(5, 5));
+        assertEquals(389, db.count(Order.class));
+        assertEquals(-1, db.findById(Order.class, 3, 3).orElseThrow().getAmount());
+        db.close();
+
+        LocalDatabase reopened = open("");
+        assertEquals(389, reopened.query(Order.class).size());
+        reopened.close();
+    }
+
+    @Test
+    void spreadPartitionsAcrossFolders() throws Exception {
+        Path first = Files.createDirectory(dir.resolve("first"));
+        Path second = Files.createDirectory(dir.resolve("second"));
+        LocalDatabase db = open(first + "," + second);
+        db.create(Order.class);
+        db.insert(orders());
+        assertTrue(Files.exists(first.resolve("ORDERS.part0.csv")));
+        assertTrue(Files.exists(second.resolve("ORDERS.part1.csv")));
+        assertTrue(Files.exists(first.resolve("ORDERS.part2.csv")));
+        assertTrue(Files.exists(second.resolve("ORDERS.part3.csv")));
+        assertEquals(400, db.count(Order.class));
+        db.close();
+
+        LocalDatabase reopened = open(first + "," + second);
+        assertEquals(400, reopened.query(Order.class).size());
+        reopened.close();
+    }
+
+    @Test
+    void rejectTransactionAcrossFolders() throws Exception {
+        Path first = Files.createDirectory(dir.resolve("first"));
+        Path second = Files.createDirectory(dir.resolve("second"));
+        LocalDatabase db = open(first + "," + second);
+        db.create(Order.class);
+        db.insert(orders());
+
+        // Partitions 0 and 1 are in two folders, nothing is written
+        List<TableStorage<Order>> partitions = db.partitions(Order.class);
+        int[] customers = new int[2];
+        for (int customer = 100, found = 0; found < 2; customer++) {
+            int partition = partitions.indexOf(LocalDatabase.partitionById(partitions, new Object[]{customer, 0}));
+            if (partition < 2 && customers[partition] == 0) {
+                customers[partition] = customer;
+                found++;
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> db.transaction(tx -> tx.insert(List.of(Order.of(customers[0], 1), Order.of(customers[1], 1)))));
+        assertEquals(400, db.count(Order.class));
+        assertThrows(IllegalArgumentException.class, () -> db.load(Order.class, List.of(Order.of(customers[0], 1)).iterator()));
+        assertEquals(400, db.count(Order.class));
+
+        // Partitions 0 and 2 share the first folder
+        int other = customers[0] + 1;
+        while (partitions.indexOf(LocalDatabase.partitionById(partitions, new Object[]{other, 0})) != 2) other++;
+        int third = other;
+        db.transaction(tx -> tx.insert(List.of(Order.of(customers[0], 1), Order.of(third, 1))));
+        assertEquals(402, db.count(Order.class));
+        db.close();
+    }
+
+    @Test
+    void loadPartitionsOfOneFolder() throws Exception {
+        LocalDatabase db = open("");
+        db.create(Order.class);
+        db.insert(Order.of(0, 0));
+        assertEquals(399, db.load(Order.class, orders().stream().skip(1)));
+        assertEquals(400, db.count(Order.class));
+        assertEquals(399, db.query(Order.class, Criteria.where("NUMBER").gt(0)).size());
+
+        // A duplicated id in any partition fails the whole load
+        assertThrows(jakarta.persistence.NonUniqueResultException.class, () -> db.load(Order.class, List.of(Order.of(100, 1), Order.of(7, 7)).iterator()));
+        assertEquals(400, db.count(Order.class));
+        assertTrue(db.findById(Order.class, 100, 1).isEmpty());
+        db.close();
+    }
+}
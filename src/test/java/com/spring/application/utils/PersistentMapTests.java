@@ -0,0 +1,89 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentMapTests {
+
+    /**
+     * Key whose hash is chosen by the test, to build colliding keys
+     */
+    private record Key(String name, int hash) {
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    void deriveMapsWithoutChangingThePreviousOnes() {
+        Map<String, Long> expected = new HashMap<>();
+        PersistentMap<String, Long> map = PersistentMap.empty();
+        List<PersistentMap<String, Long>> versions = new ArrayList<>();
+        List<Map<String, Long>> contents = new ArrayList<>();
+        Random random = new Random(1);
+        for (int batch = 0; batch < 200; batch++) {
+            PersistentMap.Editor<String, Long> editor = map.edit();
+            for (int i = 0; i < 100; i++) {
+                String key = "id" + random.nextInt(5000);
+                if (random.nextInt(4) == 0) {
+                    editor.remove(key);
+                    expected.remove(key);
+                } else {
+                    editor.put(key, (long) batch);
+                    expected.put(key, (long) batch);
+                }
+            }
+            assertEquals(expected.size(), editor.size());
+            map = editor.build();
+            versions.add(map);
+            contents.add(new HashMap<>(expected));
+        }
+
+        // Every map keeps the entries it was built with
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(contents.get(i), versions.get(i));
+            assertEquals(contents.get(i).size(), versions.get(i).entrySet().stream().count());
+        }
+        assertTrue(map.containsKey(expected.keySet().iterator().next()));
+        assertNull(map.get("other"));
+        assertNull(map.get(null));
+        assertThrows(UnsupportedOperationException.class, () -> versions.get(0).put("a", 1L));
+    }
+
+    @Test
+    void holdKeysOfTheSameHash() {
+        PersistentMap.Editor<Key, Integer> editor = PersistentMap.<Key, Integer>empty().edit();
+        for (int i = 0; i < 10; i++) {
+            editor.put(new Key("a" + i, 7), i);
+            editor.put(new Key("b" + i, 7 + (1 << 30)), i);
+        }
+        PersistentMap<Key, Integer> full = editor.build();
+        editor.remove(new Key("a3", 7));
+        editor.put(new Key("b4", 7 + (1 << 30)), 40);
+        PersistentMap<Key, Integer> changed = editor.build();
+
+        assertEquals(20, full.size());
+        assertEquals(3, full.get(new Key("a3", 7)));
+        assertEquals(4, full.get(new Key("b4", 7 + (1 << 30))));
+        assertEquals(19, changed.size());
+        assertFalse(changed.containsKey(new Key("a3", 7)));
+        assertEquals(40, changed.get(new Key("b4", 7 + (1 << 30))));
+        assertNull(changed.get(new Key("c", 7)));
+
+        // Removing every key leaves an empty map
+        PersistentMap.Editor<Key, Integer> emptied = changed.edit();
+        changed.keySet().forEach(emptied::remove);
+        assertTrue(emptied.build().isEmpty());
+        assertEquals(19, changed.size());
+        assertEquals(PersistentMap.of(Map.of("a", 1)), Map.of("a", 1));
+    }
+}
@@ -0,0 +1,61 @@
+package com.spring.application.utils;
+
+import com.spring.application.annotations.Indexed;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Entity of the LocalDatabase tests
+ */
+@Data
+@Table(name = "PERSON")
+class Person {
+
+    @Id
+    @Column(name = "ID")
+    private int id;
+
+    @Indexed
+    @Column(name = "NAME")
+    private String name;
+
+    @Column(name = "CITY")
+    private String city;
+
+    @Indexed
+    @Column(name = "AGE")
+    private Integer age;
+
+    @Column(name = "BIRTH")
+    private LocalDateTime birth;
+
+    @Column(name = "ACTIVE")
+    private boolean active;
+
+    static Person of(int id) {
+        Person person = new Person();
+        person.setId(id);
+        person.setName("Name " + id);
+        person.setCity("City;" + id % 7);
+        person.setAge(id % 90);
+        person.setBirth(LocalDateTime.of(2000, 1, 1, 0, 0).plusDays(id % 1000));
+        person.setActive(id % 2 == 0);
+        return person;
+    }
+
+    static Person of(int id, String name) {
+        Person person = of(id);
+        person.setName(name);
+        return person;
+    }
+
+    static List<Person> range(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(Person::of).toList();
+    }
+}
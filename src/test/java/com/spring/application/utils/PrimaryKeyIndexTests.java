@@ -0,0 +1,174 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimaryKeyIndexTests {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, Long> entries(String... hashIds) {
+        Map<String, Long> entries = new LinkedHashMap<>();
+        for (int i = 0; i < hashIds.length; i++) {
+            entries.put(hashIds[i], i * 10L);
+        }
+        return entries;
+    }
+
+    private long markers() throws Exception {
+        return Files.readAllLines(dir.resolve("PERSON.pk.idx")).stream().filter(line -> line.startsWith("#")).count();
+    }
+
+    @Test
+    void loadWrittenBatches() throws Exception {
+        Path file = dir.resolve("A.pk.idx");
+        PrimaryKeyIndex index = new PrimaryKeyIndex(file);
+        index.rewrite(entries("a", "b"), "1");
+        Map<String, Long> changes = new LinkedHashMap<>();
+        changes.put("c", 30L);
+        changes.put("a", null);
+        index.append(changes, "2");
+
+        PrimaryKeyIndex loaded = new PrimaryKeyIndex(file);
+        assertTrue(loaded.load("2"));
+        assertTrue(loaded.isLoaded());
+        assertEquals(Map.of("b", 10L, "c", 30L), loaded.entries());
+        assertNull(loaded.get("a"));
+    }
+
+    @Test
+    void rejectOutdatedOrTornIndex() throws Exception {
+        Path file = dir.resolve("A.pk.idx");
+        PrimaryKeyIndex index = new PrimaryKeyIndex(file);
+        assertFalse(index.load("1"));
+        index.rewrite(entries("a", "b"), "1");
+        assertFalse(new PrimaryKeyIndex(file).load("2"));
+
+        // The last batch lost its marker
+        Files.writeString(file, "20;c\n", StandardOpenOption.APPEND);
+        PrimaryKeyIndex torn = new PrimaryKeyIndex(file);
+        assertFalse(torn.load("1"));
+        assertFalse(torn.isLoaded());
+        assertEquals(0, torn.size());
+
+        Files.writeString(file, "x;a\n#1\n");
+        assertFalse(new PrimaryKeyIndex(file).load("1"));
+    }
+
+    @Test
+    void findRowsById() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(100).open();
+        assertEquals(Person.of(42), db.findById(Person.class, 42).orElseThrow());
+        assertTrue(db.findById(Person.class, 101).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> db.findById(Person.class, 1, 2));
+
+        // The index follows the inserts, updates and deletes of the table
+        assertThrows(NonUniqueResultException.class, () -> db.insert(List.of(Person.of(101), Person.of(7))));
+        assertTrue(db.findById(Person.class, 101).isEmpty());
+        db.insert(Person.of(101));
+        db.update(List.of(Person.of(42, "renamed"), Person.of(102)));
+        db.delete(List.of(Person.of(1), Person.of(50)));
+        db.delete(Person.class, person -> person.getId() > 95 && person.getId() < 100);
+        assertEquals("renamed", db.findById(Person.class, 42).orElseThrow().getName());
+        assertEquals(Person.of(101), db.findById(Person.class, 101).orElseThrow());
+        assertEquals(Person.of(102), db.findById(Person.class, 102).orElseThrow());
+        assertEquals(Person.of(100), db.findById(Person.class, 100).orElseThrow());
+        for (int id : new int[]{1, 50, 96, 99}) {
+            assertTrue(db.findById(Person.class, id).isEmpty());
+        }
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals("renamed", reopened.findById(Person.class, 42).orElseThrow().getName());
+        assertEquals(Person.of(102), reopened.findById(Person.class, 102).orElseThrow());
+        assertTrue(reopened.findById(Person.class, 50).isEmpty());
+    }
+
+    @Test
+    void rebuildIndexOfAnotherVersion() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(100).open();
+
+        // The index covers an older version of the table file
+        Path file = dir.resolve("PERSON.pk.idx");
+        List<String> lines = new ArrayList<>(Files.readAllLines(file));
+        lines.set(lines.size() - 1, "#0");
+        Files.write(file, lines);
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals("Name 42", reopened.findById(Person.class, 42).orElseThrow().getName());
+        assertTrue(reopened.findById(Person.class, 101).isEmpty());
+        assertEquals(100, reopened.count(Person.class));
+        lines = Files.readAllLines(file);
+        assertNotEquals("#0", lines.get(lines.size() - 1));
+        assertEquals(1, markers());
+    }
+
+    @Test
+    void rebuildIndexOfAReplacedFile() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(100).open();
+
+        // Another table file of the same size, the rows 1 and 2 are swapped
+        Path file = dir.resolve("PERSON.csv");
+        List<String> lines = new ArrayList<>(Files.readAllLines(file));
+        lines.set(1, lines.set(2, lines.get(1)));
+        Path replacement = dir.resolve("replacement");
+        Files.write(replacement, lines);
+        long size = Files.size(file);
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(size, Files.size(file));
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals("Name 1", reopened.findById(Person.class, 1).orElseThrow().getName());
+        assertEquals("Name 2", reopened.findById(Person.class, 2).orElseThrow().getName());
+        assertEquals(1, markers());
+    }
+
+    @Test
+    void keepIndexWrittenByTransaction() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(10).open();
+        db.transaction(tx -> tx.insert(Person.of(11)));
+        db.close();
+
+        // The index covers the table files written by the transaction, it is loaded rather than rebuilt
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals("Name 11", reopened.findById(Person.class, 11).orElseThrow().getName());
+        assertTrue(markers() > 1);
+    }
+
+    @Test
+    void rebuildMissingIndexOnce() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(1000).open();
+        Files.delete(dir.resolve("PERSON.pk.idx"));
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Person>> lookups = new ArrayList<>();
+            for (int i = 1; i <= 16; i++) {
+                int id = i * 50;
+                lookups.add(() -> reopened.findById(Person.class, id).orElseThrow());
+            }
+            for (Future<Person> person : executor.invokeAll(lookups)) {
+                assertEquals(Person.of(person.get().getId()), person.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, markers());
+    }
+}
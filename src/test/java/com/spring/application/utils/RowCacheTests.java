@@ -0,0 +1,122 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowCacheTests {
+
+    @TempDir
+    Path dir;
+
+    private TestDatabase cached(long cacheMaxBytes) {
+        return TestDatabase.in(dir).with("cacheMaxBytes", cacheMaxBytes);
+    }
+
+    @Test
+    void evictLeastRecentlyUsedTables() {
+        RowCache cache = new RowCache(100);
+        cache.put("A", 1, List.of("a"), 40);
+        cache.put("B", 1, List.of("b"), 40);
+        assertEquals(List.of("a"), cache.get("A", 1));
+        cache.put("C", 1, List.of("c"), 40);
+        assertNull(cache.get("B", 1));
+        assertEquals(List.of("a"), cache.get("A", 1));
+        assertEquals(List.of("c"), cache.get("C", 1));
+
+        // A changed table is not read from the cache, a table larger than the cache is not cached
+        assertNull(cache.get("A", 2));
+        cache.put("D", 1, List.of("d"), 101);
+        assertNull(cache.get("D", 1));
+        assertFalse(cache.fits(101));
+        cache.invalidate("C");
+        assertNull(cache.get("C", 1));
+        assertEquals(3, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertFalse(new RowCache(0).isEnabled());
+    }
+
+    @Test
+    void readQueriesFromTheCache() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).with("cacheMaxBytes", 1L << 26).create(Person.class).persons(100).open();
+        assertEquals(100, db.query(Person.class).size());
+        assertEquals(50, db.query(Person.class, Person::isActive).size());
+        assertEquals(1, db.getCacheHits());
+        assertEquals(1, db.getCacheMisses());
+
+        // A write changes the version of the table, the cached rows are not read anymore
+        db.update(Person.of(1, "renamed"));
+        db.delete(Person.of(2));
+        assertEquals("renamed", db.query(Person.class, person -> person.getId() == 1).get(0).getName());
+        assertEquals(99, db.query(Person.class).size());
+        assertEquals(2, db.getCacheHits());
+        assertEquals(2, db.getCacheMisses());
+
+        // The cached rows are copies, changing them does not change the cache
+        db.query(Person.class).forEach(person -> person.setName("changed"));
+        assertEquals("renamed", db.query(Person.class, person -> person.getId() == 1).get(0).getName());
+        db.close();
+
+        LocalDatabase disabled = TestDatabase.in(dir).with("cacheMaxBytes", 0L).open();
+        assertEquals(99, disabled.query(Person.class).size());
+        assertEquals(99, disabled.query(Person.class).size());
+        assertEquals(0, disabled.getCacheHits());
+        disabled.close();
+    }
+
+    @Test
+    void estimateDecodedRows() throws Exception {
+        LocalDatabase db = cached(1L << 26).create(Person.class).persons(2000).open();
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        List<Person> rows = db.query(Person.class);
+
+        // Decoded rows use several times the size of their lines
+        long decoded = storage.decodedSize(rows, rows.size());
+        long file = Files.size(dir.resolve("PERSON.csv"));
+        assertTrue(decoded > 2 * file, decoded + " bytes decoded from " + file);
+        assertEquals(decoded / 2, storage.decodedSize(rows.subList(0, 1000), 1000), decoded / 20);
+        assertEquals(2000 * 8, storage.decodedSize(List.of(), 2000));
+        db.close();
+    }
+
+    @Test
+    void skipTablesLargerDecodedThanTheCache() throws Exception {
+        cached(1L << 26).create(Person.class).persons(2000).open().close();
+
+        // The table file fits in the cache but not its decoded rows
+        LocalDatabase small = cached(2 * Files.size(dir.resolve("PERSON.csv"))).open();
+        assertEquals(2000, small.query(Person.class).size());
+        assertEquals(2000, small.query(Person.class).size());
+        assertEquals(0, small.getCacheHits());
+        small.close();
+
+        LocalDatabase large = cached(1L << 26).open();
+        assertEquals(2000, large.query(Person.class).size());
+        assertEquals(2000, large.query(Person.class).size());
+        assertEquals(1, large.getCacheHits());
+        large.close();
+    }
+
+    @Test
+    void warmUpTablesFittingTheCache() throws Exception {
+        cached(1L << 26).create(Person.class).persons(12000).open().close();
+
+        LocalDatabase large = cached(1L << 26).open();
+        assertEquals(12000, large.warmUp(Person.class));
+        assertEquals(12000, large.query(Person.class).size());
+        assertEquals(1, large.getCacheHits());
+        large.close();
+
+        // Only a sample is decoded when the estimated rows do not fit
+        LocalDatabase small = cached(2 * Files.size(dir.resolve("PERSON.csv"))).open();
+        assertTrue(small.warmUp(Person.class) < 12000);
+        assertEquals(12000, small.query(Person.class).size());
+        assertEquals(0, small.getCacheHits());
+        small.close();
+    }
+}
@@ -0,0 +1,150 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecondaryIndexTests {
+
+    @TempDir
+    Path dir;
+
+    private SecondaryIndex open(Path file) {
+        return new SecondaryIndex("AGE", file, String::valueOf, Integer::valueOf);
+    }
+
+    private static List<Integer> ids(List<Person> rows) {
+        return rows.stream().map(Person::getId).sorted().toList();
+    }
+
+    private long markers(String column) throws Exception {
+        return Files.readAllLines(dir.resolve("PERSON." + column + ".idx")).stream().filter(line -> line.startsWith("#")).count();
+    }
+
+    @Test
+    void lookupRangesOfWrittenBatches() throws Exception {
+        Path file = dir.resolve("A.AGE.idx");
+        SecondaryIndex index = open(file);
+        index.rewrite(Map.of("a", 30, "b", 20, "c", 40), "1");
+        index.append(Map.of("a", 25, "d", 30), List.of("c"), "2");
+        assertEquals(Set.of("a", "d"), index.range(21, 30));
+        assertEquals(List.of("b", "a", "d"), new ArrayList<>(index.range(null, null)));
+        assertTrue(index.range(40, 10).isEmpty());
+
+        // Lookups of a table version fail once the entries have changed
+        long changes = index.changes();
+        assertEquals(Set.of("b"), index.range(null, 20, changes));
+        index.append(Map.of("e", 10), List.of(), "3");
+        assertNull(index.range(null, 20, changes));
+
+        SecondaryIndex loaded = open(file);
+        assertTrue(loaded.load("3"));
+        assertEquals(List.of("e", "b", "a", "d"), new ArrayList<>(loaded.range(null, null)));
+        assertThrows(IllegalArgumentException.class, () -> loaded.range("a", null));
+    }
+
+    @Test
+    void rejectOutdatedOrTornIndex() throws Exception {
+        Path file = dir.resolve("A.AGE.idx");
+        SecondaryIndex index = open(file);
+        assertFalse(index.load("1"));
+        index.rewrite(Map.of("a", 30), "1");
+        assertFalse(open(file).load("2"));
+
+        Files.writeString(file, "+20;b\n", StandardOpenOption.APPEND);
+        SecondaryIndex torn = open(file);
+        assertFalse(torn.load("1"));
+        assertTrue(torn.range(null, null).isEmpty());
+
+        Files.writeString(file, "+x;a\n#1\n");
+        assertFalse(open(file).load("1"));
+    }
+
+    @Test
+    void findRowsByIndexedColumns() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(200).open();
+        assertEquals(List.of(10, 100, 190), ids(db.findBy(Person.class, "AGE", 10)));
+        assertEquals(List.of(7), ids(db.findBy(Person.class, "NAME", "Name 7")));
+        assertEquals(List.of(9, 10, 11, 99, 100, 101, 189, 190, 191), ids(db.findBetween(Person.class, "AGE", 9, 11)));
+        assertEquals(List.of(89, 179), ids(db.findBetween(Person.class, "AGE", 89, null)));
+        assertEquals(List.of(90, 180), ids(db.findBetween(Person.class, "AGE", null, 0)));
+
+        // A column without index is scanned
+        assertEquals(List.of(4, 5, 6), ids(db.findBetween(Person.class, "ID", 4, 6)));
+        assertEquals(29, db.findBy(Person.class, "CITY", "City;3").size());
+        assertThrows(IllegalArgumentException.class, () -> db.findBy(Person.class, "MISSING", 1));
+        assertThrows(IllegalArgumentException.class, () -> db.findBy(Person.class, "AGE", null));
+
+        // The indexes follow the inserts, updates and deletes of the table
+        db.insert(Person.of(201));
+        db.update(List.of(Person.of(10, "renamed"), Person.of(202)));
+        db.delete(Person.of(100));
+        db.delete(Person.class, person -> person.getId() == 190);
+        assertEquals(List.of(10), ids(db.findBy(Person.class, "AGE", 10)));
+        assertEquals(List.of(22, 112, 202), ids(db.findBetween(Person.class, "AGE", 22, 22)));
+        assertEquals(List.of(10), ids(db.findBy(Person.class, "NAME", "renamed")));
+        assertTrue(db.findBy(Person.class, "NAME", "Name 10").isEmpty());
+        assertEquals(List.of(21, 111, 201), ids(db.findBy(Person.class, "AGE", 21)));
+        db.close();
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(List.of(10), ids(reopened.findBy(Person.class, "AGE", 10)));
+        assertEquals(List.of(10), ids(reopened.findBy(Person.class, "NAME", "renamed")));
+        assertEquals(List.of(22, 112, 202), ids(reopened.findBy(Person.class, "AGE", 22)));
+        reopened.close();
+    }
+
+    @Test
+    void rebuildIndexOfAnotherVersion() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(200).open();
+        assertEquals(3, db.findBy(Person.class, "AGE", 10).size());
+        db.close();
+
+        // The index covers an older version of the table file
+        Path file = dir.resolve("PERSON.AGE.idx");
+        List<String> lines = new ArrayList<>(Files.readAllLines(file));
+        lines.set(lines.size() - 1, "#0");
+        Files.write(file, lines);
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(List.of(10, 100, 190), ids(reopened.findBy(Person.class, "AGE", 10)));
+        lines = Files.readAllLines(file);
+        assertNotEquals("#0", lines.get(lines.size() - 1));
+        assertEquals(1, markers("AGE"));
+        reopened.close();
+    }
+
+    @Test
+    void buildMissingIndexOnce() throws Exception {
+        TestDatabase.in(dir).create(Person.class).persons(1000).open().close();
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<List<Person>>> lookups = new ArrayList<>();
+            for (int i = 1; i <= 16; i++) {
+                String name = "Name " + i * 50;
+                lookups.add(() -> reopened.findBy(Person.class, "NAME", name));
+            }
+            for (Future<List<Person>> persons : executor.invokeAll(lookups)) {
+                assertEquals(1, persons.get().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, markers("NAME"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,84 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamQueryTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(String format) throws Exception {
+        String setting = "columnar".equals(format) ? "tableFormat" : "storageMode";
+        return TestDatabase.in(dir).with(setting, format).create(Person.class).persons(500).open();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "log", "columnar"})
+    void streamRowsOfTheTable(String format) throws Exception {
+        LocalDatabase db = open(format);
+        try (Stream<Person> rows = db.stream(Person.class)) {
+            assertEquals(IntStream.rangeClosed(1, 500).boxed().toList(), rows.map(Person::getId).sorted().toList());
+        }
+        try (Stream<Person> rows = db.stream(Person.class, person -> person.getAge() == 10)) {
+            assertEquals(List.of(10, 100, 190, 280, 370, 460), rows.map(Person::getId).sorted().toList());
+        }
+        try (Stream<Person> rows = db.stream(Person.class)) {
+            assertEquals(3, rows.filter(Person::isActive).limit(3).count());
+        }
+
+        List<Person> visited = new ArrayList<>();
+        db.forEach(Person.class, person -> person.getCity().equals("City;3"), visited::add);
+        assertEquals(db.query(Person.class, person -> person.getCity().equals("City;3")).size(), visited.size());
+        assertTrue(visited.stream().allMatch(person -> person.getId() % 7 == 3));
+        db.close();
+    }
+
+    @Test
+    void streamTheVersionOpenedWithTheStream() throws Exception {
+        LocalDatabase db = open("csv");
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        TableSnapshot version = storage.acquire();
+        version.close();
+        Path file = version.files().get(0);
+
+        Stream<Person> rows = db.stream(Person.class);
+        Iterator<Person> iterator = rows.iterator();
+        assertTrue(iterator.hasNext());
+        db.insert(Person.of(501));
+        db.delete(Person.of(500));
+
+        // The rows written after the stream was opened are not read, its version stays open until it is closed
+        int count = 0;
+        boolean found = false;
+        while (iterator.hasNext()) {
+            found |= iterator.next().getId() == 500;
+            count++;
+        }
+        assertEquals(500, count);
+        assertTrue(found);
+        assertTrue(version.channel(file).isOpen());
+        rows.close();
+        assertFalse(version.channel(file).isOpen());
+        db.close();
+    }
+
+    @Test
+    void rejectStreamsOfUnknownTables() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).open();
+        assertThrows(IllegalArgumentException.class, () -> db.stream(Person.class));
+        assertThrows(IllegalArgumentException.class, () -> db.forEach(Person.class, null, person -> fail()));
+        db.close();
+    }
+}
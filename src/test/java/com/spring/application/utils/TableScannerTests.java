@@ -0,0 +1,90 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableScannerTests {
+
+    @TempDir
+    Path dir;
+
+    private FileChannel lines(int count) throws Exception {
+        Path file = Files.write(dir.resolve("lines.txt"), IntStream.rangeClosed(1, count).mapToObj(i -> "line " + i).toList());
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Test
+    void scanTheChunksInTheOrderOfTheFile() throws Exception {
+        try (TableScanner scanner = new TableScanner(4, 64); FileChannel channel = lines(1000)) {
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            List<Integer> numbers = scanner.scan(channel, channel.size(), line -> {
+                threads.add(Thread.currentThread().getName());
+                int number = Integer.parseInt(line.cell(0).substring(5));
+                return number % 3 == 0 ? null : number;
+            });
+            assertEquals(IntStream.rangeClosed(1, 1000).filter(i -> i % 3 != 0).boxed().toList(), numbers);
+            assertTrue(threads.stream().allMatch(name -> name.startsWith("local-database-scan-")), threads.toString());
+
+            // Every line is accumulated once
+            List<List<Integer>> chunks = scanner.fold(channel, channel.size(), ArrayList::new, (chunk, line) -> chunk.add(Integer.parseInt(line.text().substring(5))));
+            assertEquals(IntStream.rangeClosed(1, 1000).boxed().toList(), chunks.stream().flatMap(List::stream).toList());
+            assertEquals((channel.size() + 63) / 64, chunks.size());
+            assertEquals(List.of(List.of()), scanner.fold(channel, 0, ArrayList::new, (chunk, line) -> fail()));
+        }
+    }
+
+    @Test
+    void readSmallFilesOnTheCallingThread() throws Exception {
+        try (TableScanner scanner = new TableScanner(2, 1 << 20); FileChannel channel = lines(10)) {
+            Thread caller = Thread.currentThread();
+            assertEquals(10, scanner.scan(channel, channel.size(), line -> {
+                assertSame(caller, Thread.currentThread());
+                return line.text();
+            }).size());
+            assertEquals(List.of("a"), scanner.map(List.of("a", "b"), item -> item.equals("a") ? item : null));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TableScanner(1, 0));
+    }
+
+    @Test
+    void mapItemsAndRunTasksInParallel() throws Exception {
+        try (TableScanner scanner = new TableScanner(4, 64)) {
+            List<Integer> items = IntStream.range(0, 20000).boxed().toList();
+            assertEquals(items.stream().map(i -> i * 2).toList(), scanner.map(items, i -> i * 2));
+
+            // The tasks may run scans of their own in the same pool
+            assertEquals(List.of(4, 6, 8), scanner.invokeAll(List.of(1, 2, 3), item -> scanner.map(List.of(item, item), i -> i + 1).stream().mapToInt(i -> i).sum()));
+            IOException failure = assertThrows(IOException.class, () -> scanner.invokeAll(List.of(1, 2), item -> {
+                if (item == 2) throw new IOException("failed");
+                return item;
+            }));
+            assertEquals("failed", failure.getMessage());
+        }
+    }
+
+    @Test
+    void scanTablesByChunks() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).with("scanChunkSize", 4096L).create(Person.class).persons(5000).open();
+        assertEquals(IntStream.rangeClosed(1, 5000).boxed().toList(),
+                db.query(Person.class, (Predicate<Person>) null, Comparator.comparing(Person::getId)).stream().map(Person::getId).toList());
+        assertEquals(IntStream.rangeClosed(1, 5000).filter(i -> i % 90 == 10).boxed().collect(Collectors.toSet()),
+                db.query(Person.class, Criteria.where("AGE").eq(10)).stream().map(Person::getId).collect(Collectors.toSet()));
+        db.close();
+    }
+}
@@ -0,0 +1,141 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableSnapshotTests {
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open(String storageMode) throws Exception {
+        return TestDatabase.in(dir).with("storageMode", storageMode).create(Person.class).persons(100).open();
+    }
+
+    private static List<Integer> ids(List<Person> rows) {
+        return rows.stream().map(Person::getId).sorted().toList();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "log"})
+    void readTheVersionTakenBeforeTheWrites(String storageMode) throws Exception {
+        LocalDatabase db = open(storageMode);
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        TableSnapshot before = storage.acquire();
+        assertNotNull(before);
+
+        db.update(Person.of(1, "renamed"));
+        db.delete(Person.of(2));
+        db.insert(Person.of(101));
+
+        // The version taken before keeps the rows and the primary keys it was taken with
+        List<Person> rows = storage.read(before);
+        assertEquals(IntStream.rangeClosed(1, 100).boxed().toList(), ids(rows));
+        assertEquals("Name 1", storage.read(before, storage.hashId(Person.of(1))).orElseThrow().getName());
+        assertTrue(storage.read(before, storage.hashId(Person.of(2))).isPresent());
+        assertFalse(before.primaryKeys().containsKey(storage.hashId(Person.of(101))));
+
+        try (TableSnapshot after = storage.acquire()) {
+            assertNotSame(before, after);
+            assertEquals("renamed", storage.read(after, storage.hashId(Person.of(1))).orElseThrow().getName());
+            assertTrue(storage.read(after, storage.hashId(Person.of(2))).isEmpty());
+            assertEquals(100, storage.read(after).size());
+        }
+        before.close();
+        db.close();
+    }
+
+    @Test
+    void closeReleasedVersions() throws Exception {
+        LocalDatabase db = open("csv");
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        TableSnapshot first = storage.acquire();
+        TableSnapshot second = storage.acquire();
+        assertSame(first, second);
+        Path file = first.files().get(0);
+
+        // The replaced version stays open while it is read
+        db.insert(Person.of(101));
+        assertTrue(first.channel(file).isOpen());
+        first.close();
+        assertTrue(second.channel(file).isOpen());
+        second.close();
+        assertFalse(first.channel(file).isOpen());
+
+        // The current version is kept for the next readers
+        TableSnapshot current = storage.acquire();
+        current.close();
+        assertTrue(current.channel(file).isOpen());
+        assertSame(current, storage.acquire());
+        current.close();
+        db.close();
+    }
+
+    @Test
+    void keepTheVersionCurrentUntilTheWriteIsPublished() throws Exception {
+        LocalDatabase db = open("csv");
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        db.query(Person.class);
+        @SuppressWarnings("unchecked")
+        Map<String, ReadWriteLock> tableLocks = (Map<String, ReadWriteLock>) ReflectionTestUtils.getField(LocalDatabase.class, "tableLocks");
+        ReadWriteLock lock = tableLocks.get("PERSON");
+        lock.writeLock().lock();
+        try {
+            // The files and the primary key entries are written, the version is not published yet
+            storage.update(List.of(Person.of(1, "renamed")));
+            storage.delete(Set.of(storage.hashId(Person.of(2))));
+            CompletableFuture<Person> read = CompletableFuture.supplyAsync(() -> {
+                try {
+                    assertEquals(100, db.query(Person.class).size());
+                    return db.findById(Person.class, 1).orElseThrow();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertEquals("Name 1", read.get(10, TimeUnit.SECONDS).getName());
+            storage.changed();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        assertEquals("renamed", db.findById(Person.class, 1).orElseThrow().getName());
+        assertEquals(99, db.query(Person.class).size());
+        db.close();
+    }
+
+    @Test
+    void readWithoutWaitingForTheWriters() throws Exception {
+        LocalDatabase db = open("csv");
+        db.query(Person.class);
+        @SuppressWarnings("unchecked")
+        Map<String, ReadWriteLock> tableLocks = (Map<String, ReadWriteLock>) ReflectionTestUtils.getField(LocalDatabase.class, "tableLocks");
+        ReadWriteLock lock = tableLocks.get("PERSON");
+        lock.writeLock().lock();
+        try {
+            CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return db.query(Person.class).size() + db.findById(Person.class, 50).map(person -> 1).orElse(0);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertEquals(101, read.get(10, TimeUnit.SECONDS));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        db.close();
+    }
+}
@@ -0,0 +1,65 @@
+package com.spring.application.utils;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builder of the LocalDatabase instances of the tests
+ * The settings are set on the fields Spring would inject, then the tables are created and the rows inserted
+ */
+final class TestDatabase {
+
+    private final Path folder;
+    private final Map<String, Object> settings = new LinkedHashMap<>();
+    private final List<Class<?>> tables = new ArrayList<>();
+    private final List<List<?>> rows = new ArrayList<>();
+
+    private TestDatabase(Path folder) {
+        this.folder = folder;
+    }
+
+    static TestDatabase in(Path folder) {
+        return new TestDatabase(folder);
+    }
+
+    TestDatabase with(String setting, Object value) {
+        settings.put(setting, value);
+        return this;
+    }
+
+    TestDatabase create(Class<?> entity) {
+        tables.add(entity);
+        return this;
+    }
+
+    TestDatabase insert(List<?> entities) {
+        rows.add(entities);
+        return this;
+    }
+
+    TestDatabase persons(int count) {
+        return insert(Person.range(1, count));
+    }
+
+    static <T> TableStorage<T> storage(LocalDatabase db, Class<T> entity) {
+        return ReflectionTestUtils.invokeMethod(db, "getStorage", entity);
+    }
+
+    LocalDatabase open() throws IOException {
+        LocalDatabase db = new LocalDatabase(folder.toString());
+        settings.forEach((setting, value) -> ReflectionTestUtils.setField(db, setting, value));
+        for (Class<?> entity : tables) {
+            db.create(entity);
+        }
+        for (List<?> entities : rows) {
+            db.insert(entities);
+        }
+        return db;
+    }
+}
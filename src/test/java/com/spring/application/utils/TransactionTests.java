@@ -0,0 +1,165 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.NonUniqueResultException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Table;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTests {
+
+    @Data
+    @Table(name = "ACCOUNT")
+    static class Account {
+
+        @Id
+        @Column(name = "OWNER")
+        private int owner;
+
+        @Column(name = "BALANCE")
+        private double balance;
+
+        static Account of(int owner, double balance) {
+            Account account = new Account();
+            account.setOwner(owner);
+            account.setBalance(balance);
+            return account;
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    private LocalDatabase open() throws Exception {
+        return TestDatabase.in(dir)
+                .create(Person.class)
+                .create(Account.class)
+                .persons(20)
+                .insert(List.of(Account.of(1, 100), Account.of(2, 50)))
+                .open();
+    }
+
+    @Test
+    void commitTheWritesOfSeveralTables() throws Exception {
+        LocalDatabase db = open();
+        db.transaction(tx -> {
+            Account from = tx.findById(Account.class, 1).orElseThrow();
+            Account to = tx.findById(Account.class, 2).orElseThrow();
+            tx.update(Account.of(1, from.getBalance() - 30));
+            tx.update(Account.of(2, to.getBalance() + 30));
+            tx.insert(Person.of(21));
+            tx.delete(Person.of(1));
+            tx.delete(Person.class, person -> person.getId() > 18);
+
+            // The transaction reads its own writes, the other readers do not
+            assertEquals(70.0, tx.findById(Account.class, 1).orElseThrow().getBalance());
+            assertTrue(tx.findById(Person.class, 1).isEmpty());
+            assertEquals(17, tx.query(Person.class, null).size());
+            assertEquals(100.0, db.findById(Account.class, 1).orElseThrow().getBalance());
+            assertEquals(20, db.count(Person.class));
+        });
+        assertEquals(70.0, db.findById(Account.class, 1).orElseThrow().getBalance());
+        assertEquals(80.0, db.findById(Account.class, 2).orElseThrow().getBalance());
+        assertEquals(17, db.count(Person.class));
+        db.close();
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(IntStream.rangeClosed(2, 18).boxed().toList(), reopened.query(Person.class).stream().map(Person::getId).sorted().toList());
+        assertEquals(80.0, reopened.findById(Account.class, 2).orElseThrow().getBalance());
+        reopened.close();
+    }
+
+    @Test
+    void writeNothingWhenRolledBack() throws Exception {
+        LocalDatabase db = open();
+        assertThrows(IllegalStateException.class, () -> db.transaction(tx -> {
+            tx.insert(Person.of(21));
+            tx.update(Account.of(1, 0));
+            throw new IllegalStateException("failed");
+        }));
+        db.transaction(tx -> {
+            tx.delete(Person.of(2));
+            tx.rollback();
+        });
+        assertThrows(NonUniqueResultException.class, () -> db.transaction(tx -> {
+            tx.update(Account.of(2, 0));
+            tx.insert(Person.of(5));
+        }));
+        assertEquals(20, db.count(Person.class));
+        assertEquals(100.0, db.findById(Account.class, 1).orElseThrow().getBalance());
+        assertEquals(50.0, db.findById(Account.class, 2).orElseThrow().getBalance());
+        assertTrue(db.findById(Person.class, 2).isPresent());
+        db.close();
+    }
+
+    @Test
+    void rejectRowsChangedByAnotherWriter() throws Exception {
+        LocalDatabase db = open();
+
+        // A row read by the transaction has been changed
+        assertThrows(OptimisticLockException.class, () -> db.transaction(tx -> {
+            Account account = tx.findById(Account.class, 1).orElseThrow();
+            db.update(Account.of(1, 10));
+            tx.update(Account.of(1, account.getBalance() + 1));
+            tx.insert(Person.of(21));
+        }));
+        assertEquals(10.0, db.findById(Account.class, 1).orElseThrow().getBalance());
+        assertTrue(db.findById(Person.class, 21).isEmpty());
+
+        // A scanned table has been changed
+        assertThrows(OptimisticLockException.class, () -> db.transaction(tx -> {
+            tx.delete(Person.class, person -> person.getAge() == 3);
+            db.insert(Person.of(22));
+        }));
+        assertTrue(db.findById(Person.class, 3).isPresent());
+
+        // Other rows of the tables may be changed
+        db.transaction(tx -> {
+            tx.findById(Person.class, 4);
+            tx.update(Person.of(5, "changed"));
+            db.update(Person.of(6, "other"));
+            db.update(Account.of(2, 0));
+        });
+        assertEquals("changed", db.findById(Person.class, 5).orElseThrow().getName());
+        assertEquals("other", db.findById(Person.class, 6).orElseThrow().getName());
+        db.close();
+    }
+
+    @Test
+    void checkIdsWithTheVersionOfTheTransaction() throws Exception {
+        LocalDatabase db = open();
+        db.transaction(tx -> {
+            assertThrows(NonUniqueResultException.class, () -> tx.insert(Person.of(7)));
+            assertThrows(NonUniqueResultException.class, () -> tx.insert(List.of(Person.of(30), Person.of(30))));
+            tx.insert(Person.of(30));
+            assertThrows(NonUniqueResultException.class, () -> tx.insert(Person.of(30)));
+
+            // A row deleted by the transaction may be inserted again
+            tx.delete(Person.of(8));
+            tx.insert(Person.of(8, "again"));
+
+            // Checking an id does not read the row, another writer may change it
+            db.update(Person.of(7, "other"));
+        });
+        assertEquals("again", db.findById(Person.class, 8).orElseThrow().getName());
+        assertEquals("other", db.findById(Person.class, 7).orElseThrow().getName());
+        assertTrue(db.findById(Person.class, 30).isPresent());
+
+        // An id inserted by another writer since the version was taken is a conflict
+        assertThrows(OptimisticLockException.class, () -> db.transaction(tx -> {
+            tx.insert(Person.of(31));
+            db.insert(Person.of(31, "first"));
+        }));
+        assertEquals("first", db.findById(Person.class, 31).orElseThrow().getName());
+        db.close();
+    }
+}
@@ -0,0 +1,277 @@
+package com.spring.application.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTests {
+
+    @TempDir
+    Path dir;
+
+    private WriteAheadLog open(WriteAheadLog.Sync sync) throws Exception {
+        return new WriteAheadLog(dir, sync, 5, 1 << 20);
+    }
+
+    private byte[] log() throws Exception {
+        return Files.readAllBytes(dir.resolve(WriteAheadLog.FILE_NAME));
+    }
+
+    @Test
+    void replayCommittedChanges() throws Exception {
+        Path file = dir.resolve("A.csv");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        wal.append(file, "two\n".getBytes(StandardCharsets.UTF_8));
+        byte[] log = log();
+        wal.close();
+        assertEquals(0, Files.size(dir.resolve(WriteAheadLog.FILE_NAME)));
+
+        // The changes are lost but their records were written
+        Files.writeString(file, "one\n");
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), log);
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("one\ntwo\n", Files.readString(file));
+
+        // Replaying again the changes already applied keeps the file
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), log);
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("one\ntwo\n", Files.readString(file));
+    }
+
+    @Test
+    void ignoreTornRecord() throws Exception {
+        Path file = dir.resolve("A.csv");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        int first = log().length;
+        wal.append(file, "two\n".getBytes(StandardCharsets.UTF_8));
+        byte[] log = log();
+        wal.close();
+
+        // The second batch lost its commit record, then the end of its change record
+        for (int length : new int[]{log.length - 1, first + 12, first + 3}) {
+            Files.delete(file);
+            Files.write(dir.resolve(WriteAheadLog.FILE_NAME), Arrays.copyOf(log, length));
+            open(WriteAheadLog.Sync.OS).close();
+            assertEquals("one\n", Files.readString(file));
+        }
+
+        // Garbage written after the last record ends the log
+        Files.delete(file);
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), Arrays.copyOf(log, log.length + 9));
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("one\ntwo\n", Files.readString(file));
+    }
+
+    @Test
+    void ignoreCorruptedRecord() throws Exception {
+        Path file = dir.resolve("A.csv");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        int first = log().length;
+        wal.append(file, "two\n".getBytes(StandardCharsets.UTF_8));
+        wal.append(file, "six\n".getBytes(StandardCharsets.UTF_8));
+        byte[] log = log();
+        wal.close();
+
+        // A flipped byte in the second batch fails its checksum, the following batches are not replayed either
+        log[first + 20] ^= 1;
+        Files.delete(file);
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), log);
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("one\n", Files.readString(file));
+    }
+
+    @Test
+    void replayReplaceAndDelete() throws Exception {
+        Path file = dir.resolve("A.csv");
+        Path other = dir.resolve("B.csv");
+        Files.writeString(file, "old\n");
+        Files.writeString(other, "other\n");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        Path temporary = wal.temporary(file);
+        Files.writeString(temporary, "new\n");
+        wal.commit(List.of(new WriteAheadLog.Replace(file, temporary), new WriteAheadLog.Delete(other)));
+        assertEquals("new\n", Files.readString(file));
+        assertFalse(Files.exists(other));
+        byte[] log = log();
+        wal.close();
+
+        // Crash before the changes were applied: the temporary file is complete and the deleted file is still there
+        Files.writeString(temporary, "new\n");
+        Files.writeString(file, "old\n");
+        Files.writeString(other, "other\n");
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), log);
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("new\n", Files.readString(file));
+        assertFalse(Files.exists(other));
+        assertFalse(Files.exists(temporary));
+    }
+
+    @Test
+    void replaceMakesPreviousAppendsObsolete() throws Exception {
+        Path file = dir.resolve("A.csv");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        Path temporary = wal.temporary(file);
+        Files.writeString(temporary, "new\n");
+        wal.replace(file, temporary);
+        byte[] log = log();
+        wal.close();
+
+        // The append is not written again over the replaced file
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), log);
+        open(WriteAheadLog.Sync.OS).close();
+        assertEquals("new\n", Files.readString(file));
+    }
+
+    @Test
+    void dropUncommittedTemporaryFiles() throws Exception {
+        Files.writeString(dir.resolve("A.csv.123.tmp"), "partial");
+        Files.writeString(dir.resolve("A.csv"), "table\n");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        Path temporary = wal.temporary(dir.resolve("B.col"));
+        Files.writeString(temporary, "partial");
+        wal.close();
+
+        // Temporary files of other applications sharing the folder are kept
+        Files.writeString(dir.resolve("notes.tmp"), "notes");
+        Files.writeString(dir.resolve("A.csv.tmp"), "other");
+        Files.writeString(dir.resolve("A.txt.123.tmp"), "other");
+        open(WriteAheadLog.Sync.OS).close();
+        assertFalse(Files.exists(dir.resolve("A.csv.123.tmp")));
+        assertFalse(Files.exists(temporary));
+        assertTrue(Files.exists(dir.resolve("A.csv")));
+        assertTrue(Files.exists(dir.resolve("notes.tmp")));
+        assertTrue(Files.exists(dir.resolve("A.csv.tmp")));
+        assertTrue(Files.exists(dir.resolve("A.txt.123.tmp")));
+    }
+
+    @Test
+    void abortBatch() throws Exception {
+        Path file = dir.resolve("A.csv");
+        WriteAheadLog wal = open(WriteAheadLog.Sync.OS);
+        wal.beginBatch();
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        Path temporary = wal.temporary(dir.resolve("B.csv"));
+        Files.writeString(temporary, "b\n");
+        wal.replace(dir.resolve("B.csv"), temporary);
+        assertEquals(4, wal.size(file));
+        assertFalse(Files.exists(file));
+        assertThrows(IllegalStateException.class, wal::beginBatch);
+        wal.abortBatch();
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(temporary));
+        assertEquals(0, log().length);
+
+        wal.beginBatch();
+        wal.append(file, "one\n".getBytes(StandardCharsets.UTF_8));
+        wal.append(file, "two\n".getBytes(StandardCharsets.UTF_8));
+        wal.commitBatch();
+        assertEquals("one\ntwo\n", Files.readString(file));
+        assertThrows(IllegalStateException.class, wal::commitBatch);
+        wal.close();
+    }
+
+    @Test
+    void syncModes() throws Exception {
+        for (WriteAheadLog.Sync sync : WriteAheadLog.Sync.values()) {
+            Path file = dir.resolve(sync + ".csv");
+            WriteAheadLog wal = open(sync);
+            for (int i = 0; i < 20; i++) {
+                wal.append(file, (i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(20, TableStorage.countLines(file));
+            wal.checkpoint();
+            assertEquals(0, log().length);
+            wal.close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "log"})
+    void relativeDatabaseFolder(String mode) throws Exception {
+        Path folder = Path.of("").toAbsolutePath().relativize(dir);
+        LocalDatabase db = TestDatabase.in(folder).with("storageMode", mode).create(Person.class).persons(3).open();
+        db.update(Person.of(2));
+        db.delete(Person.of(3));
+        assertEquals(2, db.query(Person.class).size());
+        assertEquals(1, db.findBy(Person.class, "NAME", "Name 1").size());
+        db.close();
+
+        LocalDatabase reopened = TestDatabase.in(folder).with("storageMode", mode).open();
+        assertEquals(2, reopened.query(Person.class).size());
+        assertTrue(reopened.findById(Person.class, 3).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void shareLogBetweenInstances() throws Exception {
+        LocalDatabase first = TestDatabase.in(dir).create(Person.class).persons(1).open();
+        LocalDatabase second = TestDatabase.in(dir).open();
+        second.insert(Person.of(2));
+
+        // The log stays open for the instances still using the folder
+        first.close();
+        first.close();
+        second.insert(Person.of(3));
+        assertTrue(log().length > 0);
+        second.close();
+        assertEquals(0, log().length);
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(3, reopened.query(Person.class).size());
+        reopened.close();
+    }
+
+    @Test
+    void replayEveryFolderBeforeCheckingTables() throws Exception {
+        Path partitions = Files.createDirectories(dir.resolve("partitions"));
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(2).open();
+        byte[] table = Files.readAllBytes(dir.resolve("PERSON.csv"));
+        db.close();
+        Files.delete(dir.resolve("PERSON.csv"));
+
+        // The table files were lost after their changes were logged, in the database folder and a partition folder
+        for (Path folder : List.of(dir, partitions)) {
+            WriteAheadLog wal = new WriteAheadLog(folder, WriteAheadLog.Sync.OS, 5, 1 << 20);
+            wal.append(folder.resolve("PERSON.csv"), table);
+            byte[] log = Files.readAllBytes(folder.resolve(WriteAheadLog.FILE_NAME));
+            wal.close();
+            Files.delete(folder.resolve("PERSON.csv"));
+            Files.write(folder.resolve(WriteAheadLog.FILE_NAME), log);
+        }
+        LocalDatabase reopened = TestDatabase.in(dir).with("partitionFolders", partitions.toString()).open();
+        assertTrue(reopened.exists("PERSON"));
+        assertArrayEquals(table, Files.readAllBytes(partitions.resolve("PERSON.csv")));
+        assertEquals(2, reopened.query(Person.class).size());
+        reopened.close();
+    }
+
+    @Test
+    void replayTableWritesAfterCrash() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).insert(List.of(Person.of(1), Person.of(2))).open();
+        byte[] table = Files.readAllBytes(dir.resolve("PERSON.csv"));
+        db.insert(List.of(Person.of(3), Person.of(4)));
+        byte[] log = log();
+        db.close();
+
+        // The table file lost the last insert, the log holds it and a torn record
+        Files.write(dir.resolve("PERSON.csv"), table);
+        Files.write(dir.resolve(WriteAheadLog.FILE_NAME), Arrays.copyOf(log, log.length + 7));
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(4, reopened.query(Person.class).size());
+        assertEquals("Name 3", reopened.findById(Person.class, 3).orElseThrow().getName());
+        reopened.close();
+    }
+}
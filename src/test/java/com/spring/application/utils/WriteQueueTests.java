@@ -0,0 +1,147 @@
+package com.spring.application.utils;
+
+import jakarta.persistence.NonUniqueResultException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteQueueTests {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Submit operations from other threads while the lock is held, so that they are written as a single batch
+     */
+    private static List<CompletableFuture<Void>> batch(WriteQueue<Person> queue, ReentrantLock lock, ExecutorService executor, List<Object[]> operations) throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Object[] operation : operations) {
+                @SuppressWarnings("unchecked")
+                List<Person> rows = (List<Person>) operation[1];
+                Future<CompletableFuture<Void>> submitted = executor.submit(() -> queue.submit((WriteQueue.Kind) operation[0], rows));
+                while (lock.getQueueLength() < results.size() + 1) {
+                    Thread.sleep(1);
+                }
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return submitted.get();
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }).thenCompose(done -> done));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return results;
+    }
+
+    @Test
+    void writeOperationsAsOneBatch() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(10).open();
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        ChangeLog changeLog = new ChangeLog(100);
+        ReentrantLock lock = new ReentrantLock();
+        WriteQueue<Person> queue = new WriteQueue<>(storage, lock, changeLog, "PERSON");
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<CompletableFuture<Void>> results = batch(queue, lock, executor, List.of(
+                    new Object[]{WriteQueue.Kind.INSERT, List.of(Person.of(11), Person.of(12))},
+                    new Object[]{WriteQueue.Kind.INSERT, List.of(Person.of(12))},
+                    new Object[]{WriteQueue.Kind.DELETE, List.of(Person.of(1), Person.of(11))},
+                    new Object[]{WriteQueue.Kind.INSERT, List.of(Person.of(1))},
+                    new Object[]{WriteQueue.Kind.UPDATE, List.of(Person.of(2, "first"))},
+                    new Object[]{WriteQueue.Kind.UPDATE, List.of(Person.of(2, "second"))}));
+
+            // A rejected insert only fails its own caller
+            CompletionException rejected = assertThrows(CompletionException.class, () -> results.get(1).join());
+            assertInstanceOf(NonUniqueResultException.class, rejected.getCause());
+            for (int i : new int[]{0, 2, 3, 4, 5}) {
+                results.get(i).join();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 12), db.query(Person.class).stream().map(Person::getId).sorted().toList());
+        assertEquals("second", db.findById(Person.class, 2).orElseThrow().getName());
+
+        // The batch is published as the net change of every row
+        assertEquals(3, changeLog.sequence());
+        db.close();
+    }
+
+    @Test
+    void failTheWholeBatch() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).create(Person.class).persons(10).open();
+        TableStorage<Person> storage = TestDatabase.storage(db, Person.class);
+        storage.loadIndex();
+        ReentrantLock lock = new ReentrantLock();
+        WriteQueue<Person> queue = new WriteQueue<>(storage, lock, new ChangeLog(0), "PERSON");
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<CompletableFuture<Void>> results = batch(queue, lock, executor, List.of(
+                    new Object[]{WriteQueue.Kind.INSERT, List.of(Person.of(11))},
+                    new Object[]{WriteQueue.Kind.UPDATE, List.of(Person.of(2, "changed"))}));
+            results.forEach(CompletableFuture::join);
+            // The write-ahead log is closed before the batch is written
+            db.close();
+            List<CompletableFuture<Void>> failed = batch(queue, lock, executor, List.of(
+                    new Object[]{WriteQueue.Kind.INSERT, List.of(Person.of(12))},
+                    new Object[]{WriteQueue.Kind.DELETE, List.of(Person.of(3))}));
+            for (CompletableFuture<Void> result : failed) {
+                assertThrows(CompletionException.class, result::join);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        LocalDatabase reopened = TestDatabase.in(dir).open();
+        assertEquals(11, reopened.count(Person.class));
+        assertTrue(reopened.findById(Person.class, 3).isPresent());
+        assertTrue(reopened.findById(Person.class, 12).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void batchConcurrentWrites() throws Exception {
+        LocalDatabase db = TestDatabase.in(dir).with("writeBatching", true).create(Person.class).open();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> writes = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int first = thread * 100;
+                writes.add(executor.submit(() -> {
+                    for (int id = first + 1; id <= first + 100; id += 10) {
+                        db.insert(IntStream.range(id, id + 10).mapToObj(Person::of).toList());
+                    }
+                    db.update(Person.of(first + 1, "updated"));
+                    db.delete(Person.of(first + 2));
+                    return null;
+                }));
+            }
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(792, db.count(Person.class));
+        assertEquals(8, db.findBy(Person.class, "NAME", "updated").size());
+        assertThrows(NonUniqueResultException.class, () -> db.insert(Person.of(5)));
+        db.close();
+    }
+}